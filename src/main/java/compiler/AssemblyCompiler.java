@@ -7,30 +7,49 @@
 package compiler;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
 import compiler.component.*;
 import compiler.keyword.*;
 import compiler.util.CompileFlag;
+import compiler.util.CompileMetrics;
+import compiler.util.Diagnostic;
+import compiler.util.Diagnostics;
 import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
+import compiler.util.OptimizationLevel;
+import compiler.util.events.CompilePhaseEvent;
+import compiler.util.events.KeywordEvent;
+import compiler.util.optimizer.PassStatistics;
 
 public enum AssemblyCompiler implements IComponentManager
 {
     INSTANCE;
 
+    private static final Pattern BLOCK_START = Pattern.compile("^\\s*(if|while|guarded\\s+while|function|void\\s+function|main)\\b");
+    private static final Pattern BLOCK_END = Pattern.compile("^\\s*end\\b");
+
     // These are ordered by priority
-    private static final List<IKeyword> KEYWORDS = Arrays.asList(new KeywordCompile(), new KeywordMain(), new KeywordIf(), new KeywordElse(), new KeywordWhile(), new KeywordEnd(), new KeywordCall(), new KeywordFunction(), new KeywordReturn(), new KeywordRegisterExpression(), new KeywordVariable(), new KeywordVariableStore(), new KeywordComment());
+    private static final Pattern LOCAL_DECLARATION = Pattern.compile("^\\s*local\\b");
+    private static final List<IKeyword> KEYWORDS = Arrays.asList(new KeywordCompile(), new KeywordMain(), new KeywordIf(), new KeywordElse(), new KeywordWhile(), new KeywordEnd(), new KeywordCall(), new KeywordFunction(), new KeywordReturn(), new KeywordLocal(), new KeywordRegisterExpression(), new KeywordVariable(), new KeywordVariableStore(), new KeywordComment());
 
     private final Map<String, String> declaredConstants = new HashMap<>();
     private final Stack<IComponent> controlStack = new Stack<>();
     private final List<IComponent> componentsAlignedVars = new ArrayList<>();
     private final List<IComponent> componentsDefaultVars = new ArrayList<>();
     private final List<IComponent> componentsFunctions = new ArrayList<>();
+    private final Set<CompileFlag> flags = EnumSet.noneOf(CompileFlag.class);
+    private final Set<String> smallData = new HashSet<>();
+    private final Diagnostics diagnostics = new Diagnostics(AssemblyInterface.getLog());
+    private PassStatistics passStatistics;
+    private CompileMetrics metrics;
     private IComponent componentCompile;
     private IComponent componentMain;
     private IComponent componentCurrent;
     private String currentLine;
     private int currentLineNumber;
+    private int skipDepth;
+    private InvalidAssemblyException firstFatal;
     private boolean debug;
 
     public String compile(String input)
@@ -38,37 +57,98 @@ public enum AssemblyCompiler implements IComponentManager
         return compile(input, Collections.emptySet());
     }
 
+    /**
+     * @throws InvalidAssemblyException the first fatal error, if there were any. All of them are logged
+     */
     public String compile(String input, Set<CompileFlag> flags)
+    {
+        CompileResult result = compileAll(input, flags);
+        if (result.getException() != null)
+        {
+            throw result.getException();
+        }
+        return result.getOutput();
+    }
+
+    /**
+     * Compiles as much as possible: a line with a fatal error is skipped (or if it starts a block, everything up to the matching end), and the compile continues
+     *
+     * @return the output (which might be incomplete) and everything which was reported
+     */
+    public CompileResult compileAll(String input, Set<CompileFlag> flags)
     {
         // Reset compiler
         reset();
 
         // Set flags
+        this.flags.addAll(flags);
         debug = flags.contains(CompileFlag.DEBUG_MODE);
+        diagnostics.setLimit(flags.contains(CompileFlag.ALL_WARNINGS) ? 0 : Diagnostics.DEFAULT_LIMIT);
+        passStatistics = flags.contains(CompileFlag.TIME_PASSES) ? new PassStatistics() : null;
+        metrics = flags.contains(CompileFlag.STATS) || flags.contains(CompileFlag.STATS_JSON) ? new CompileMetrics() : null;
 
+        String output = null;
         try
         {
+            long[] start = startMetric();
+            CompilePhaseEvent event = new CompilePhaseEvent();
+            event.begin();
             List<String> inputLines = Helpers.getLinesUnformatted(input);
-            inputLines.forEach(this::compileLine);
+            commit(event, "normalize");
+            stopMetric("normalize", start);
+
+            start = startMetric();
+            event = new CompilePhaseEvent();
+            event.begin();
+            inputLines.forEach(this::compileLineOrRecover);
+            commit(event, "parse");
+            stopMetric("parse", start);
+
+            // Errors at this point have no line associated to them
+            currentLineNumber++;
+            currentLine = "";
+
+            start = startMetric();
+            event = new CompilePhaseEvent();
+            event.begin();
+            output = buildAssembly();
+            commit(event, "build");
+            stopMetric("build", start);
         }
         catch (InvalidAssemblyException e)
         {
             fatal(e);
-            throw e;
         }
         catch (Exception e)
         {
-            InvalidAssemblyException wrapper = new InvalidAssemblyException(e, "error.message.unknown_exception");
-            fatal(wrapper);
-            throw wrapper;
+            fatal(new InvalidAssemblyException(e, "error.message.unknown_exception"));
         }
-        finally
+        CompileResult result = new CompileResult(output, diagnostics.flush(), firstFatal);
+
+        if (passStatistics != null)
         {
-            // Errors at this point have no line associated to them
-            currentLineNumber++;
-            currentLine = "";
+            AssemblyInterface.getLog().log("command.message.time_passes", passStatistics.report());
         }
-        return buildAssembly();
+        if (metrics != null)
+        {
+            metrics.count("input_lines", currentLineNumber - 1);
+            metrics.count("functions", componentsFunctions.size());
+            metrics.count("variables", componentsAlignedVars.size() + componentsDefaultVars.size());
+            if (output != null)
+            {
+                metrics.count("output_lines", output.split("\n").length);
+                metrics.count("output_bytes", output.length());
+            }
+            if (hasFlag(CompileFlag.STATS))
+            {
+                AssemblyInterface.getLog().log("command.message.stats", metrics.report());
+            }
+            if (hasFlag(CompileFlag.STATS_JSON))
+            {
+                AssemblyInterface.getLog().raw(metrics.toJson() + "\n");
+            }
+        }
+        return result;
     }
 
     @Override
@@ -99,6 +179,11 @@ public enum AssemblyCompiler implements IComponentManager
                 componentsFunctions.add(component);
                 break;
             case CURRENT:
+                // Main and functions start here, and are attributed to their declaration
+                if (component != null && component.getFlag(IComponent.Flag.LINE).equals(""))
+                {
+                    component.setFlag(IComponent.Flag.LINE, String.valueOf(currentLineNumber));
+                }
                 this.componentCurrent = component;
                 break;
         }
@@ -138,9 +223,111 @@ public enum AssemblyCompiler implements IComponentManager
         declaredConstants.put(name, value);
     }
 
+    /**
+     * @return the function with a name, or null if there isn't one
+     */
+    public ComponentFunction getFunction(String name)
+    {
+        for (IComponent cmp : componentsFunctions)
+        {
+            if (cmp.getFlag(IComponent.Flag.FUNCTION_NAME).equals(name))
+            {
+                return (ComponentFunction) cmp;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the line of the source currently being compiled, starting at 1
+     */
+    public int getLineNumber()
+    {
+        return currentLineNumber;
+    }
+
+    public boolean hasFlag(CompileFlag flag)
+    {
+        return flags.contains(flag);
+    }
+
+    /**
+     * @return the number of copies of the body of each counted loop, or 1 if loops aren't unrolled. If more than one is set, the largest is used
+     */
+    public int getUnrollFactor()
+    {
+        return hasFlag(CompileFlag.UNROLL_8) ? 8 : hasFlag(CompileFlag.UNROLL_4) ? 4 : hasFlag(CompileFlag.UNROLL_2) ? 2 : 1;
+    }
+
+    /**
+     * @return the optimization level for the whole program, which functions can override
+     */
+    public OptimizationLevel getOptimizationLevel()
+    {
+        return OptimizationLevel.get(flags);
+    }
+
+    /**
+     * @return the statistics of the optimizer passes from the last compile, or null if -time-passes wasn't set
+     */
+    public PassStatistics getPassStatistics()
+    {
+        return passStatistics;
+    }
+
+    /**
+     * @return where warnings and errors are reported, which is written asynchronously and flushed at the end of each compile
+     */
+    public Diagnostics getDiagnostics()
+    {
+        return diagnostics;
+    }
+
+    /**
+     * @return the timers and counters from the last compile, or null if -stats wasn't set
+     */
+    public CompileMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Starts timing a phase, if -stats is set
+     *
+     * @return the start, to pass to {@link #stopMetric(String, long[])}, or null if metrics are disabled
+     */
+    public long[] startMetric()
+    {
+        return metrics == null ? null : metrics.start();
+    }
+
+    public void stopMetric(String name, long[] start)
+    {
+        if (start != null)
+        {
+            metrics.stop(name, start);
+        }
+    }
+
+    /**
+     * @return the variables which are addressed relative to the global pointer (gp), see {@link #layoutSmallData()}
+     */
+    public Set<String> getSmallData()
+    {
+        return smallData;
+    }
+
     public void fatal(InvalidAssemblyException e)
     {
-        AssemblyInterface.getLog().log("error.level.fatal", e.getMessage(), currentLineNumber, currentLine);
+        if (firstFatal == null)
+        {
+            firstFatal = e;
+        }
+        if (metrics != null)
+        {
+            metrics.count("errors", 1);
+        }
+        diagnostics.report(Diagnostic.Severity.FATAL, currentLineNumber, currentLine, e.getKey(), e.getArgs());
         if (debug)
         {
             e.printStackTrace();
@@ -149,12 +336,29 @@ public enum AssemblyCompiler implements IComponentManager
 
     public void error(String message, Object... args)
     {
-        AssemblyInterface.getLog().log("error.level.error", AssemblyInterface.getLog().format(message, args), currentLineNumber, currentLine);
+        if (metrics != null)
+        {
+            metrics.count("errors", 1);
+        }
+        diagnostics.report(Diagnostic.Severity.ERROR, currentLineNumber, currentLine, message, args);
     }
 
     public void warn(String message, Object... args)
     {
-        AssemblyInterface.getLog().log("error.level.warn", AssemblyInterface.getLog().format(message, args), currentLineNumber, currentLine);
+        if (metrics != null)
+        {
+            metrics.count("warnings", 1);
+        }
+        diagnostics.report(Diagnostic.Severity.WARNING, currentLineNumber, currentLine, message, args);
+    }
+
+    private void commit(CompilePhaseEvent event, String phase)
+    {
+        if (event.shouldCommit())
+        {
+            event.phase = phase;
+            event.commit();
+        }
     }
 
     private void reset()
@@ -164,17 +368,59 @@ public enum AssemblyCompiler implements IComponentManager
         this.componentsFunctions.clear();
         this.componentsAlignedVars.clear();
         this.componentsDefaultVars.clear();
+        this.flags.clear();
+        this.smallData.clear();
         this.componentCompile = null;
         this.componentMain = null;
         this.currentLine = "";
         this.currentLineNumber = 0;
+        this.skipDepth = 0;
+        this.firstFatal = null;
 
         KEYWORDS.forEach(IKeyword::reset);
     }
 
+    private void compileLineOrRecover(String line)
+    {
+        if (skipDepth > 0)
+        {
+            // Skipping the contents of a block which couldn't be started
+            this.currentLine = line;
+            this.currentLineNumber++;
+            skipDepth += BLOCK_START.matcher(line).find() ? 1 : (BLOCK_END.matcher(line).find() ? -1 : 0);
+            return;
+        }
+
+        int controlStackSize = controlStack.size();
+        IComponent current = componentCurrent;
+        try
+        {
+            compileLine(line);
+        }
+        catch (InvalidAssemblyException e)
+        {
+            fatal(e);
+            recover(line, controlStackSize, current);
+        }
+        catch (Exception e)
+        {
+            fatal(new InvalidAssemblyException(e, "error.message.unknown_exception"));
+            recover(line, controlStackSize, current);
+        }
+    }
+
+    private void recover(String line, int controlStackSize, IComponent current)
+    {
+        // If a block wasn't started, its contents and end would only cause more errors
+        if (BLOCK_START.matcher(line).find() && controlStack.size() == controlStackSize && componentCurrent == current)
+        {
+            skipDepth = 1;
+        }
+    }
+
     private void compileLine(String line)
     {
-        StringBuilder inputBuilder = new StringBuilder(line);
+        StringBuilder inputBuilder = new StringBuilder(replaceLocals(line));
         StringBuilder keywordBuilder = new StringBuilder();
 
         this.currentLine = line;
@@ -198,7 +444,20 @@ public enum AssemblyCompiler implements IComponentManager
             {
                 if (keywordMatcher.matches(keyword, inputBuilder))
                 {
+                    long[] start = startMetric();
+                    KeywordEvent event = new KeywordEvent();
+                    event.begin();
                     keywordMatcher.apply(keyword, inputBuilder, this);
+                    if (event.shouldCommit())
+                    {
+                        event.keyword = keywordMatcher.getClass().getSimpleName();
+                        event.line = currentLineNumber;
+                        event.commit();
+                    }
+                    if (start != null)
+                    {
+                        metrics.stop("keyword." + keywordMatcher.getClass().getSimpleName(), start);
+                    }
 
                     // Reset keyword and input
                     keywordBuilder = new StringBuilder();
@@ -219,6 +478,98 @@ public enum AssemblyCompiler implements IComponentManager
         }
     }
 
+    /**
+     * Replaces the name of each local in the current function with its virtual register, see {@link KeywordLocal}
+     * Names inside quotes or comments, after a call, or in the declaration of a local aren't replaced
+     */
+    private String replaceLocals(String line)
+    {
+        if (LOCAL_DECLARATION.matcher(line).find())
+        {
+            return line;
+        }
+        Map<String, String> locals = componentCurrent instanceof ComponentFunction ? ((ComponentFunction) componentCurrent).getLocals() : Collections.emptyMap();
+        StringBuilder result = new StringBuilder();
+        String previous = "";
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quote != 0)
+            {
+                // Inside a character or string literal
+                result.append(c);
+                if (c == '\\' && i + 1 < line.length())
+                {
+                    result.append(line.charAt(++i));
+                }
+                else if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"')
+            {
+                quote = c;
+                result.append(c);
+            }
+            else if (c == '#')
+            {
+                result.append(line, i, line.length());
+                break;
+            }
+            else if (Character.isLetterOrDigit(c) || c == '_')
+            {
+                int end = i;
+                while (end < line.length() && (Character.isLetterOrDigit(line.charAt(end)) || line.charAt(end) == '_'))
+                {
+                    end++;
+                }
+                String word = line.substring(i, end);
+                if (Helpers.isVirtualRegister(word))
+                {
+                    throw new InvalidAssemblyException("error.message.unknown_register", word);
+                }
+                result.append(locals.containsKey(word) && !previous.equals("call") ? locals.get(word) : word);
+                previous = word;
+                i = end - 1;
+            }
+            else
+            {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Optimizes every function before main, with each function after the functions it calls, so they can be inlined
+     */
+    private void optimizeFunctions()
+    {
+        Set<String> visited = new HashSet<>();
+        for (IComponent cmp : componentsFunctions)
+        {
+            optimizeFunction((ComponentFunction) cmp, visited);
+        }
+    }
+
+    private void optimizeFunction(ComponentFunction function, Set<String> visited)
+    {
+        if (visited.add(function.getFlag(IComponent.Flag.FUNCTION_NAME)))
+        {
+            for (String callee : function.getCallees())
+            {
+                ComponentFunction next = getFunction(callee);
+                if (next != null)
+                {
+                    optimizeFunction(next, visited);
+                }
+            }
+            function.optimize();
+        }
+    }
+
     private String buildAssembly()
     {
         StringBuilder outputBuilder = new StringBuilder();
@@ -246,6 +597,13 @@ public enum AssemblyCompiler implements IComponentManager
             error("error.message.missing_main");
             componentMain = new ComponentMain();
         }
+
+        // The data layout must be known before any functions are compiled
+        if (hasFlag(CompileFlag.GLOBAL_POINTER))
+        {
+            layoutSmallData();
+        }
+        optimizeFunctions();
         outputBuilder.append(componentMain.compile());
 
         if (!componentsFunctions.isEmpty())
@@ -266,6 +624,11 @@ public enum AssemblyCompiler implements IComponentManager
             }
         }
 
+        if (!smallData.isEmpty())
+        {
+            outputBuilder.append("\n# Global Pointer\n_gp:\n");
+        }
+
         if (!componentsDefaultVars.isEmpty())
         {
             outputBuilder.append("\n# Random Variables\n\n");
@@ -279,4 +642,49 @@ public enum AssemblyCompiler implements IComponentManager
         // Replace tabs with spaces - not optional ;)
         return outputBuilder.toString().replace("\t", "    ");
     }
+
+    /**
+     * Places the global pointer between the word aligned and the other variables
+     * Each side is sorted so the smallest variables are closest to it, and any variable within +/- 32 KB of it is small data
+     * Variables of an unknown size are placed last, and anything after the first of them is not small data
+     */
+    private void layoutSmallData()
+    {
+        Comparator<IComponent> bySize = Comparator.comparingInt(cmp -> {
+            int size = ((ComponentVariable) cmp).getSize();
+            return size == -1 ? Integer.MAX_VALUE : size;
+        });
+        componentsAlignedVars.sort(bySize.reversed());
+        componentsDefaultVars.sort(bySize);
+
+        // Aligned variables are below the global pointer
+        int offset = 0;
+        for (int i = componentsAlignedVars.size() - 1; i >= 0; i--)
+        {
+            ComponentVariable var = (ComponentVariable) componentsAlignedVars.get(i);
+            offset -= var.getSize();
+            if (offset < -32768)
+            {
+                break;
+            }
+            smallData.add(var.getName());
+        }
+
+        // Other variables are above the global pointer
+        offset = 0;
+        for (IComponent cmp : componentsDefaultVars)
+        {
+            ComponentVariable var = (ComponentVariable) cmp;
+            if (offset > 32767)
+            {
+                break;
+            }
+            smallData.add(var.getName());
+            if (var.getSize() == -1)
+            {
+                break;
+            }
+            offset += var.getSize();
+        }
+    }
 }
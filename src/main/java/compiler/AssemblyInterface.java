@@ -11,6 +11,9 @@ import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Set;
 
+import compiler.simulator.CostModel;
+import compiler.simulator.Profiler;
+import compiler.simulator.Simulator;
 import compiler.util.CompileFlag;
 import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
@@ -65,6 +68,10 @@ public final class AssemblyInterface
             case "compilef":
                 executeCompile(commandID, source);
                 break;
+            case "simulate":
+            case "profile":
+                executeSimulate(commandID, source);
+                break;
             case "help":
                 LOG.log("command.message.help");
                 break;
@@ -96,24 +103,8 @@ public final class AssemblyInterface
         }
         try
         {
-            Set<CompileFlag> extraArgs = new HashSet<>();
-            while (source.length() > 0)
-            {
-                source.deleteCharAt(0);
-                String extraArg = PATTERN.apply(source).getString();
-                CompileFlag flag = CompileFlag.get(extraArg);
-                if (!"".equals(extraArg) && flag != null)
-                {
-                    extraArgs.add(flag);
-                }
-                else
-                {
-                    LOG.log("command.error.unknown_argument", extraArg);
-                }
-            }
-
             String input = Helpers.loadFile(arg1);
-            String output = AssemblyCompiler.INSTANCE.compile(input, extraArgs);
+            String output = AssemblyCompiler.INSTANCE.compile(input, parseFlags(source));
 
             if (commandArg.equals("compilef"))
             {
@@ -130,4 +121,83 @@ public final class AssemblyInterface
             LOG.log("command.message.compile_failed");
         }
     }
-}
+
+    private static void executeSimulate(String commandArg, StringBuilder source)
+    {
+        String arg1 = PATTERN.apply(source).getString();
+        if ("".equals(arg1))
+        {
+            LOG.log("command.error.missing_argument", "input");
+            return;
+        }
+
+        // Profiling takes an optional cost model as the second argument
+        String costModel = "";
+        if (commandArg.equals("profile") && source.length() > 0)
+        {
+            StringBuilder next = new StringBuilder(source).deleteCharAt(0);
+            String arg2 = PATTERN.apply(next).getString();
+            if (!arg2.startsWith("-"))
+            {
+                costModel = arg2;
+                source = next;
+            }
+        }
+
+        String input, output;
+        try
+        {
+            input = Helpers.loadFile(arg1);
+            Set<CompileFlag> flags = parseFlags(source);
+            if (commandArg.equals("profile"))
+            {
+                flags.add(CompileFlag.LINE_INFO);
+            }
+            output = AssemblyCompiler.INSTANCE.compile(input, flags);
+        }
+        catch (InvalidAssemblyException e)
+        {
+            LOG.log("command.message.compile_failed");
+            return;
+        }
+        try
+        {
+            Simulator simulator = new Simulator(output);
+            if (commandArg.equals("profile"))
+            {
+                Profiler profiler = new Profiler(simulator, costModel.equals("") ? CostModel.getDefault() : CostModel.load(Helpers.loadFile(costModel)));
+                simulator.run();
+                LOG.log("command.message.profile_view", simulator.isHalted() ? "" : String.format("Stopped after %d instructions\n", simulator.getSteps()), profiler.report(input));
+            }
+            else
+            {
+                simulator.run();
+                LOG.log("command.message.simulate_view", simulator.report());
+            }
+        }
+        catch (InvalidAssemblyException e)
+        {
+            LOG.log("command.message.simulate_failed", e.getMessage());
+        }
+    }
+
+    private static Set<CompileFlag> parseFlags(StringBuilder source)
+    {
+        Set<CompileFlag> extraArgs = new HashSet<>();
+        while (source.length() > 0)
+        {
+            source.deleteCharAt(0);
+            String extraArg = PATTERN.apply(source).getString();
+            CompileFlag flag = CompileFlag.get(extraArg);
+            if (flag != null)
+            {
+                extraArgs.add(flag);
+            }
+            else if (!"".equals(extraArg))
+            {
+                LOG.log("command.error.unknown_argument", extraArg);
+            }
+        }
+        return extraArgs;
+    }
+}
\ No newline at end of file
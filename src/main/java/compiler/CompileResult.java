@@ -0,0 +1,59 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler;
+
+import java.util.Collections;
+import java.util.List;
+
+import compiler.util.Diagnostic;
+import compiler.util.InvalidAssemblyException;
+
+/**
+ * Everything from a single compile, see {@link AssemblyCompiler#compileAll(String, java.util.Set)}
+ */
+public final class CompileResult
+{
+    private final String output;
+    private final List<Diagnostic> diagnostics;
+    private final InvalidAssemblyException exception;
+
+    CompileResult(String output, List<Diagnostic> diagnostics, InvalidAssemblyException exception)
+    {
+        this.output = output;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        this.exception = exception;
+    }
+
+    /**
+     * @return the assembly, which is incomplete if there were fatal errors, or null if it couldn't be built at all
+     */
+    public String getOutput()
+    {
+        return output;
+    }
+
+    /**
+     * @return every warning and error, in the order they were reported
+     */
+    public List<Diagnostic> getDiagnostics()
+    {
+        return diagnostics;
+    }
+
+    /**
+     * @return the first fatal error, or null if there weren't any
+     */
+    public InvalidAssemblyException getException()
+    {
+        return exception;
+    }
+
+    public boolean hasErrors()
+    {
+        return diagnostics.stream().anyMatch(diagnostic -> diagnostic.getSeverity() != Diagnostic.Severity.WARNING);
+    }
+}
@@ -11,6 +11,9 @@ import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
+import compiler.AssemblyCompiler;
+import compiler.util.CompileFlag;
+
 public abstract class AbstractComponent implements IComponent
 {
     final List<IComponent> components;
@@ -22,9 +25,25 @@ public abstract class AbstractComponent implements IComponent
         this.flags = new EnumMap<>(Flag.class);
     }
 
+    /**
+     * @return a "# line N" comment before the instructions from a new source line, if line info is enabled
+     */
+    static String lineMarker(String line, String previous)
+    {
+        if (AssemblyCompiler.INSTANCE.hasFlag(CompileFlag.LINE_INFO) && !line.equals("") && !line.equals(previous))
+        {
+            return "\t# line " + line + "\n";
+        }
+        return "";
+    }
+
     @Override
     public void add(IComponent sub)
     {
+        if (sub.getFlag(Flag.LINE).equals(""))
+        {
+            sub.setFlag(Flag.LINE, String.valueOf(AssemblyCompiler.INSTANCE.getLineNumber()));
+        }
         components.add(sub);
     }
 
@@ -40,4 +59,10 @@ public abstract class AbstractComponent implements IComponent
         flags.put(type, flag);
         return this;
     }
+
+    IComponent copyFlags(AbstractComponent copy)
+    {
+        copy.flags.putAll(flags);
+        return copy;
+    }
 }
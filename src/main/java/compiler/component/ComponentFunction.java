@@ -6,24 +6,35 @@
 
 package compiler.component;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
+import compiler.AssemblyCompiler;
 import compiler.util.Helpers;
+import compiler.util.OptimizationLevel;
 import compiler.util.Optimizer;
+import compiler.util.literal.InstructionResult;
+import compiler.util.optimizer.Liveness;
+import compiler.util.optimizer.RegisterAllocator;
 
 public class ComponentFunction extends AbstractComponent
 {
     private final String functionName;
     private final String functionPrefix;
     private final boolean noReturnValue;
+    private final OptimizationLevel optimizationLevel;
+    private final Map<String, String> locals = new LinkedHashMap<>();
+    private boolean optimized;
+    private int stackSlots;
 
-    public ComponentFunction(String functionName, String functionPrefix, boolean noReturnValue)
+    /**
+     * @param optimizationLevel the level from the declaration, or null to use the level of the program
+     */
+    public ComponentFunction(String functionName, String functionPrefix, boolean noReturnValue, OptimizationLevel optimizationLevel)
     {
         this.functionName = functionName;
         this.functionPrefix = functionPrefix;
         this.noReturnValue = noReturnValue;
+        this.optimizationLevel = optimizationLevel;
 
         setFlag(Flag.FUNCTION_NAME, functionName);
         setFlag(Flag.FUNCTION_PREFIX, functionPrefix);
@@ -36,43 +47,152 @@ public class ComponentFunction extends AbstractComponent
         return Type.FUNCTION;
     }
 
+    /**
+     * Optimizes the body of the function, if it hasn't been already. Functions are optimized before main, so they can be inlined (see {@link compiler.util.optimizer.Inliner})
+     * Any locals are given registers first, see {@link RegisterAllocator}
+     */
+    public void optimize()
+    {
+        if (!optimized)
+        {
+            // Allocating registers looks at the functions this calls, which might call this
+            optimized = true;
+            if (!locals.isEmpty())
+            {
+                Set<ComponentFunction> visiting = new HashSet<>();
+                visiting.add(this);
+                stackSlots = RegisterAllocator.accept(components, withCallArguments(visiting, getArguments(new HashSet<>())), Liveness.functionExit(!noReturnValue), !noReturnValue);
+            }
+            Optimizer.accept(functionName, functionPrefix, components, getOptimizationLevel(), Liveness.functionExit(!noReturnValue));
+        }
+    }
+
+    /**
+     * Declares a local, see {@link compiler.keyword.KeywordLocal}
+     *
+     * @return the virtual register which the local is replaced with, until registers are allocated
+     */
+    public String addLocal(String name)
+    {
+        String reg = "r" + (32 + locals.size());
+        locals.put(name, reg);
+        return reg;
+    }
+
+    /**
+     * @return the virtual register of each local, by name
+     */
+    public Map<String, String> getLocals()
+    {
+        return Collections.unmodifiableMap(locals);
+    }
+
+    public boolean isOptimized()
+    {
+        return optimized;
+    }
+
+    /**
+     * @return the body of the function, without the saving and restoring of registers or the return
+     */
+    public List<IComponent> getBody()
+    {
+        return Collections.unmodifiableList(components);
+    }
+
+    /**
+     * @return the names of every function this calls
+     */
+    public Set<String> getCallees()
+    {
+        Set<String> callees = new LinkedHashSet<>();
+        for (IComponent cmp : components)
+        {
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (instruction.getOpcode().equals("call"))
+            {
+                callees.add(instruction.getArg(0));
+            }
+        }
+        return callees;
+    }
+
+    public boolean hasReturnValue()
+    {
+        return !noReturnValue;
+    }
+
+    public OptimizationLevel getOptimizationLevel()
+    {
+        return optimizationLevel != null ? optimizationLevel : AssemblyCompiler.INSTANCE.getOptimizationLevel();
+    }
+
     @Override
     public String compile()
     {
-        // Optimize!
-        Optimizer.accept(components);
+        optimize();
 
         final StringBuilder output = new StringBuilder();
         boolean returnFlag = false;
         output.append(String.format("\n# ========== %s ==========\n", functionName));
         output.append(functionName).append(":\n");
+        output.append(lineMarker(getFlag(Flag.LINE), ""));
+
+        // Calls directly before the end of the function are tail calls, which don't need to save ra
+        Set<IComponent> tailCalls = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (!Arrays.asList(getOptimizationLevel().getIgnoreFlags()).contains("tail_calls"))
+        {
+            for (int i = 0; i < components.size(); i++)
+            {
+                if (isTailPosition(i))
+                {
+                    tailCalls.add(components.get(i));
+                }
+            }
+        }
 
         // Get the list of all register writes
         List<String> registerWrites = new ArrayList<>();
         for (IComponent cmp : components)
         {
             String flag = cmp.getFlag(Flag.WRITE_REGISTER);
-            if (Helpers.REGISTERS.contains(flag) && (!flag.equals("r2") || noReturnValue))
+            if (Helpers.REGISTERS.contains(flag) && (!flag.equals("r2") || noReturnValue) && !tailCalls.contains(cmp))
             {
                 if (!registerWrites.contains(flag))
                 {
                     registerWrites.add(flag);
                 }
             }
-            if (!cmp.getFlag(Flag.NEED_RETURN).equals(""))
+        }
+
+        // Any call which can't jump straight to the callee still needs ra to be saved
+        tailCalls.removeIf(cmp -> !canTailCall(cmp, registerWrites));
+        for (IComponent cmp : components)
+        {
+            String flag = cmp.getFlag(Flag.WRITE_REGISTER);
+            if (flag.equals("ra") && !tailCalls.contains(cmp) && !registerWrites.contains(flag))
             {
-                returnFlag = true;
+                registerWrites.add(flag);
             }
-            else if (flag.equals("return"))
+
+            // A void function keeps r2, even if it calls a function which returns a value
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (noReturnValue && instruction.getOpcode().equals("call") && !tailCalls.contains(cmp) && !registerWrites.contains("r2"))
             {
-                returnFlag = true;
+                ComponentFunction callee = AssemblyCompiler.INSTANCE.getFunction(instruction.getArg(0));
+                if (callee == null || callee.hasReturnValue())
+                {
+                    registerWrites.add("r2");
+                }
             }
         }
         Collections.sort(registerWrites);
-        int maxSize = registerWrites.size() * 4;
+
+        // Spilled locals are stored below the saved registers
+        int maxSize = (registerWrites.size() + stackSlots) * 4;
 
         // Add the subi / stw commands at the header
-        if (!registerWrites.isEmpty())
+        if (maxSize > 0)
         {
             int size = maxSize;
             output.append(IComponent.format("subi", "sp, sp, " + maxSize + "\n"));
@@ -85,21 +205,69 @@ public class ComponentFunction extends AbstractComponent
         }
 
         // Add the body of the function
+        String line = getFlag(Flag.LINE);
+        boolean afterTailCall = false;
         for (IComponent cmp : components)
         {
-            output.append(cmp.compile());
+            if (afterTailCall && isReturn(cmp))
+            {
+                // A return directly after a tail call can't be reached
+                continue;
+            }
+            String text = cmp.compile();
+            if (text.startsWith("\t") && !text.startsWith("\t#"))
+            {
+                // Only instructions are marked, not labels or comments
+                output.append(lineMarker(cmp.getFlag(Flag.LINE), line));
+                line = cmp.getFlag(Flag.LINE).equals("") ? line : cmp.getFlag(Flag.LINE);
+            }
+            if (tailCalls.contains(cmp))
+            {
+                // Restore the registers, and the callee returns straight to the caller of this function
+                appendRestore(output, registerWrites, maxSize);
+                output.append(IComponent.format("jmpi", new InstructionResult(cmp).getArg(0) + "\n"));
+                afterTailCall = true;
+                continue;
+            }
+            if (!cmp.getFlag(Flag.NEED_RETURN).equals("") || cmp.getFlag(Flag.WRITE_REGISTER).equals("return"))
+            {
+                returnFlag = true;
+            }
+            output.append(text);
+            afterTailCall = false;
+        }
+
+        // If the function ends with a tail call, and nothing branches to the return, the end can't be reached
+        if (afterTailCall && !returnFlag)
+        {
+            return output.toString();
         }
 
+        // The return is attributed to the function declaration
+        output.append(lineMarker(getFlag(Flag.LINE), line));
+
         // If necessary, add a return label
         if (returnFlag)
         {
             output.append(functionPrefix).append("_ret:\n");
         }
 
-        // Add the addi / ldw commands at the footer
-        if (!registerWrites.isEmpty())
+        // Add the ldw / addi commands at the footer
+        if (maxSize > 0)
         {
             output.append("\n");
+            appendRestore(output, registerWrites, maxSize);
+        }
+
+        // Add the return command
+        output.append("\tret\n");
+        return output.toString();
+    }
+
+    private void appendRestore(StringBuilder output, List<String> registerWrites, int maxSize)
+    {
+        if (maxSize > 0)
+        {
             int size = maxSize;
             for (String write : registerWrites)
             {
@@ -108,9 +276,114 @@ public class ComponentFunction extends AbstractComponent
             }
             output.append(IComponent.format("addi", "sp, sp, " + maxSize + "\n"));
         }
+    }
 
-        // Add the return command
-        output.append("\tret\n");
-        return output.toString();
+    /**
+     * @return true if the component is a call, followed only by labels, comments or a return
+     */
+    private boolean isTailPosition(int index)
+    {
+        if (!new InstructionResult(components.get(index)).getOpcode().equals("call"))
+        {
+            return false;
+        }
+        for (int i = index + 1; i < components.size(); i++)
+        {
+            IComponent cmp = components.get(i);
+            String text = cmp.compile().trim();
+            if (isReturn(cmp))
+            {
+                return true;
+            }
+            if (new InstructionResult(cmp).isInstruction() || text.contains("\n"))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isReturn(IComponent cmp)
+    {
+        return !cmp.getFlag(Flag.NEED_RETURN).equals("") && new InstructionResult(cmp).getOpcode().equals("br");
+    }
+
+    /**
+     * A tail call restores the registers of this function before the callee runs, so the callee can't read any of them as arguments
+     * If this function keeps r2, the callee has to as well
+     */
+    private boolean canTailCall(IComponent call, List<String> registerWrites)
+    {
+        ComponentFunction callee = AssemblyCompiler.INSTANCE.getFunction(new InstructionResult(call).getArg(0));
+        if (callee == null || (noReturnValue && callee.hasReturnValue()))
+        {
+            return false;
+        }
+        Set<String> liveIn = callee.getArguments(new HashSet<>());
+        for (String write : registerWrites)
+        {
+            if (!Liveness.isGeneral(write) || liveIn.contains(write))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the registers this function reads before writing them. A call reads the arguments of the callee, or every register if it is part of a cycle (other than calling itself) or unknown
+     */
+    private Set<String> getArguments(Set<ComponentFunction> visiting)
+    {
+        optimize();
+        if (components.isEmpty())
+        {
+            return Collections.emptySet();
+        }
+
+        // Calls to this function read the arguments found so far, until nothing changes
+        visiting.add(this);
+        Set<String> arguments = new HashSet<>(), previous;
+        do
+        {
+            previous = arguments;
+            arguments = new HashSet<>(new Liveness(withCallArguments(visiting, previous), Liveness.functionExit(!noReturnValue)).getLiveIn(0));
+            arguments.removeIf(reg -> !Helpers.REGISTERS.contains(reg));
+        } while (!arguments.equals(previous));
+        visiting.remove(this);
+        return arguments;
+    }
+
+    /**
+     * @param arguments the arguments of this function, for calls to itself
+     * @return a copy of the body, where each call reads only the arguments of the callee
+     */
+    private List<IComponent> withCallArguments(Set<ComponentFunction> visiting, Set<String> arguments)
+    {
+        List<IComponent> body = new ArrayList<>();
+        for (IComponent cmp : components)
+        {
+            InstructionResult instruction = new InstructionResult(cmp);
+            ComponentFunction callee = instruction.getOpcode().equals("call") ? AssemblyCompiler.INSTANCE.getFunction(instruction.getArg(0)) : null;
+            IComponent copy = callee != null && (callee == this || !visiting.contains(callee)) ? cmp.copy() : null;
+            if (copy != null)
+            {
+                Set<String> reads = new TreeSet<>(callee == this ? arguments : callee.getArguments(visiting));
+                for (String reg : Helpers.REGISTERS)
+                {
+                    if (!Liveness.isGeneral(reg))
+                    {
+                        reads.add(reg);
+                    }
+                }
+                copy.setFlag(Flag.READ_REGISTERS, String.join(",", reads));
+                body.add(copy);
+            }
+            else
+            {
+                body.add(cmp);
+            }
+        }
+        return body;
     }
 }
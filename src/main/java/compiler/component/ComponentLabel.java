@@ -27,4 +27,10 @@ public class ComponentLabel extends AbstractComponent
     {
         return String.format(formatString, getFlag(Flag.LABEL));
     }
+
+    @Override
+    public IComponent copy()
+    {
+        return copyFlags(new ComponentLabel(formatString, getFlag(Flag.LABEL)));
+    }
 }
@@ -6,7 +6,9 @@
 
 package compiler.component;
 
+import compiler.AssemblyCompiler;
 import compiler.util.Optimizer;
+import compiler.util.optimizer.Liveness;
 
 public class ComponentMain extends AbstractComponent
 {
@@ -26,13 +28,25 @@ public class ComponentMain extends AbstractComponent
     public String compile()
     {
         // Optimizer!
-        Optimizer.accept(components);
+        Optimizer.accept("main", "main", components, AssemblyCompiler.INSTANCE.getOptimizationLevel(), Liveness.mainExit());
 
         StringBuilder output = new StringBuilder();
-        output.append("# Entry point\n").append("_start:\n").append(IComponent.format("movia", "sp, LAST_RAM_WORD\n"));
+        output.append("# Entry point\n").append("_start:\n").append(lineMarker(getFlag(Flag.LINE), "")).append(IComponent.format("movia", "sp, LAST_RAM_WORD\n"));
+        if (!AssemblyCompiler.INSTANCE.getSmallData().isEmpty())
+        {
+            output.append(IComponent.format("movia", "gp, _gp\n"));
+        }
+        String line = getFlag(Flag.LINE);
         for (IComponent cmp : components)
         {
-            output.append(cmp.compile());
+            String text = cmp.compile();
+            if (text.startsWith("\t") && !text.startsWith("\t#"))
+            {
+                // Only instructions are marked, not labels or comments
+                output.append(lineMarker(cmp.getFlag(Flag.LINE), line));
+                line = cmp.getFlag(Flag.LINE).equals("") ? line : cmp.getFlag(Flag.LINE);
+            }
+            output.append(text);
         }
         output.append("_end:\n").append(IComponent.format("br", "_end\n"));
         return output.toString();
@@ -28,4 +28,10 @@ public class ComponentStatic extends AbstractComponent
     {
         return result;
     }
+
+    @Override
+    public IComponent copy()
+    {
+        return copyFlags(new ComponentStatic(result));
+    }
 }
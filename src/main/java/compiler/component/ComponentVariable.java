@@ -8,13 +8,25 @@ package compiler.component;
 
 public class ComponentVariable extends AbstractComponent
 {
+    private final String name;
     private final String result;
     private final boolean isWordAligned;
+    private final int size;
 
-    public ComponentVariable(String result, boolean isWordAligned)
+    /**
+     * @param size the size of the variable in bytes, or -1 if it isn't known (i.e. it uses a constant)
+     */
+    public ComponentVariable(String name, String result, boolean isWordAligned, int size)
     {
+        this.name = name;
         this.result = result;
         this.isWordAligned = isWordAligned;
+        this.size = size;
+    }
+
+    public String getName()
+    {
+        return name;
     }
 
     public boolean isWordAligned()
@@ -22,6 +34,11 @@ public class ComponentVariable extends AbstractComponent
         return isWordAligned;
     }
 
+    public int getSize()
+    {
+        return size;
+    }
+
     @Override
     public Type getType()
     {
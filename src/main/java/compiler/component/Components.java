@@ -6,11 +6,19 @@
 
 package compiler.component;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.StringJoiner;
 
+import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
+import compiler.util.optimizer.Instructions;
 
+import static compiler.component.IComponent.Flag.LINE;
+import static compiler.component.IComponent.Flag.READ_REGISTERS;
 import static compiler.component.IComponent.Flag.TYPE;
 import static compiler.component.IComponent.Flag.WRITE_REGISTER;
 
@@ -30,6 +38,7 @@ public final class Components
         EXPRESSIONS.put("*", "mul");
         EXPRESSIONS.put("/", "div");
         EXPRESSIONS.put("?/", "divu"); // Unsigned Division
+        EXPRESSIONS.put("?%", ""); // Unsigned Modulo (only with immediate values, see Components#divi)
         EXPRESSIONS.put("|", "or");
         EXPRESSIONS.put("&", "and");
         EXPRESSIONS.put("^", "xor");
@@ -74,7 +83,8 @@ public final class Components
 
     public static IComponent call(String label)
     {
-        return new ComponentStatic(IComponent.format("call", label + "\n")).setFlag(WRITE_REGISTER, "ra");
+        // Any register could be an argument
+        return reads(new ComponentStatic(IComponent.format("call", label + "\n")).setFlag(WRITE_REGISTER, "ra"), Helpers.REGISTERS.toArray(new String[0]));
     }
 
     public static IComponent brOp(String rX, String op, String rY, String label)
@@ -83,7 +93,76 @@ public final class Components
         {
             throw new InvalidAssemblyException("error.message.unknown_operator", op);
         }
-        return new ComponentLabel(IComponent.format(COMPARISONS.get(op), String.format("%s, %s, %s\n", rX, rY, "%s")), label).setFlag(TYPE, "break_conditional");
+        return reads(new ComponentLabel(IComponent.format(COMPARISONS.get(op), String.format("%s, %s, %s\n", rX, rY, "%s")), label).setFlag(TYPE, "break_conditional"), rX, rY);
+    }
+
+    public static IComponent mov(String rX, String rY)
+    {
+        return instruction("mov", rX, rY);
+    }
+
+    public static IComponent movi(String rX, String imm)
+    {
+        return instruction("movi", rX, imm);
+    }
+
+    /**
+     * Creates a single instruction which writes to a register, i.e. opcode rX, args...
+     */
+    public static IComponent instruction(String opcode, String rX, String... args)
+    {
+        StringBuilder builder = new StringBuilder(rX);
+        for (String arg : args)
+        {
+            builder.append(", ").append(arg);
+        }
+        return reads(new ComponentStatic(IComponent.format(opcode, builder.append("\n").toString())).setFlag(WRITE_REGISTER, rX), args);
+    }
+
+    /**
+     * Sets the registers read by a component, see {@link IComponent.Flag#READ_REGISTERS}
+     * Memory operands (OFF(rY)) read their base register, and anything else which isn't a register (i.e. an immediate) is ignored
+     */
+    public static IComponent reads(IComponent component, String... args)
+    {
+        StringJoiner registers = new StringJoiner(",");
+        for (String arg : args)
+        {
+            int index = arg.lastIndexOf('(');
+            String reg = index != -1 && arg.endsWith(")") ? arg.substring(index + 1, arg.length() - 1) : arg;
+            if (Helpers.isRegister(reg))
+            {
+                registers.add(reg);
+            }
+        }
+        return component.setFlag(READ_REGISTERS, registers.toString());
+    }
+
+    private static String immediateOpcode(String op)
+    {
+        if (!EXPRESSIONS.containsKey(op))
+        {
+            throw new InvalidAssemblyException("error.message.unknown_operator", op);
+        }
+        if (op.equals("/") || op.equals("?/"))
+        {
+            throw new InvalidAssemblyException("error.message.operator_div_immediate");
+        }
+        return EXPRESSIONS.get(op) + "i";
+    }
+
+    /**
+     * Copies the source line of a component onto the one which replaces it, see {@link IComponent.Flag#LINE}
+     */
+    public static IComponent inherit(IComponent original, IComponent replacement)
+    {
+        return replacement.setFlag(LINE, original.getFlag(LINE));
+    }
+
+    public static List<IComponent> inherit(IComponent original, List<IComponent> replacement)
+    {
+        replacement.forEach(cmp -> cmp.setFlag(LINE, original.getFlag(LINE)));
+        return replacement;
     }
 
     public static IComponent noop()
@@ -101,20 +180,260 @@ public final class Components
         {
             throw new InvalidAssemblyException("error.message.operator_hi_immediate");
         }
-        return new ComponentStatic(IComponent.format(EXPRESSIONS.get(op), String.format("%s, %s, %s\n", rX, rY, rZ))).setFlag(WRITE_REGISTER, rX);
+        if (op.equals("?%"))
+        {
+            throw new InvalidAssemblyException("error.message.operator_mod_immediate");
+        }
+        return reads(new ComponentStatic(IComponent.format(EXPRESSIONS.get(op), String.format("%s, %s, %s\n", rX, rY, rZ))).setFlag(WRITE_REGISTER, rX), rY, rZ);
     }
 
     public static IComponent opi(String rX, String rY, String op, String imm)
     {
-        if (!EXPRESSIONS.containsKey(op))
+        return reads(new ComponentStatic(IComponent.format(immediateOpcode(op), String.format("%s, %s, %s\n", rX, rY, imm))).setFlag(WRITE_REGISTER, rX), rY);
+    }
+
+    /**
+     * rX = rY OP value, using the cheapest legal encoding for the value
+     * See {@link #immediate(String, String, String, String, int)}
+     */
+    public static List<IComponent> opi(String rX, String rY, String op, String imm, int value)
+    {
+        List<IComponent> result = immediate(immediateOpcode(op), rX, rY, imm, value);
+        if (result.isEmpty())
         {
-            throw new InvalidAssemblyException("error.message.unknown_operator", op);
+            throw new InvalidAssemblyException("error.message.immediate_out_of_range", imm, op);
         }
-        if (op.equals("/"))
+        return result;
+    }
+
+    /**
+     * Loads a constant, using the shortest sequence for its value
+     * rX = value
+     *
+     * @param imm the immediate value as written in the source (i.e. a constant name)
+     */
+    public static List<IComponent> constant(String rX, String imm, int value)
+    {
+        if (Instructions.isSigned16(value))
         {
-            throw new InvalidAssemblyException("error.message.operator_div_immediate");
+            return Collections.singletonList(movi(rX, imm));
+        }
+        if (Instructions.isUnsigned16(value))
+        {
+            return Collections.singletonList(instruction("movui", rX, imm));
+        }
+
+        List<IComponent> result = new ArrayList<>();
+        result.add(instruction("movhi", rX, String.valueOf(value >>> 16)));
+        if ((value & 0xFFFF) != 0)
+        {
+            result.add(instruction("ori", rX, rX, String.valueOf(value & 0xFFFF)));
+        }
+        return result;
+    }
+
+    /**
+     * An immediate instruction, using the cheapest legal encoding for the value
+     * Values which don't fit in the instruction are split (i.e. ori + orhi), or loaded into rX first
+     * opi rX, rY, value
+     *
+     * @param imm the immediate value as written in the source (i.e. a constant name)
+     * @return the instruction sequence, or an empty list if the value can't be used without an extra register
+     */
+    public static List<IComponent> immediate(String opi, String rX, String rY, String imm, int value)
+    {
+        if (Instructions.fitsImmediate(opi, value))
+        {
+            return Collections.singletonList(instruction(opi, rX, rY, imm));
+        }
+
+        List<IComponent> result = new ArrayList<>();
+        int high = value >>> 16, low = value & 0xFFFF;
+        switch (opi)
+        {
+            case "slli":
+            case "srai":
+            case "srli":
+                // Shifts only use the lower five bits
+                return Collections.singletonList(instruction(opi, rX, rY, String.valueOf(value & 31)));
+            case "subi":
+                return immediate("addi", rX, rY, String.valueOf(-value), -value);
+            case "addi":
+                if (value >= -65536 && value <= 65534)
+                {
+                    int first = value < 0 ? -32768 : 32767;
+                    result.add(instruction("addi", rX, rY, String.valueOf(first)));
+                    result.add(instruction("addi", rX, rX, String.valueOf(value - first)));
+                    return result;
+                }
+                break;
+            case "ori":
+            case "xori":
+                if (low != 0)
+                {
+                    result.add(instruction(opi, rX, rY, String.valueOf(low)));
+                }
+                result.add(instruction(opi.replace("i", "hi"), rX, low != 0 ? rX : rY, String.valueOf(high)));
+                return result;
+            case "andi":
+                if (low == 0)
+                {
+                    return Collections.singletonList(instruction("andhi", rX, rY, String.valueOf(high)));
+                }
+                if (value == -1)
+                {
+                    return Collections.singletonList(mov(rX, rY));
+                }
+                // Masks which only clear the lowest or highest bits
+                int trailing = Integer.numberOfTrailingZeros(value), leading = Integer.numberOfLeadingZeros(value);
+                if (value == -1 << trailing)
+                {
+                    result.add(instruction("srli", rX, rY, String.valueOf(trailing)));
+                    result.add(instruction("slli", rX, rX, String.valueOf(trailing)));
+                    return result;
+                }
+                if (value == -1 >>> leading)
+                {
+                    result.add(instruction("slli", rX, rY, String.valueOf(leading)));
+                    result.add(instruction("srli", rX, rX, String.valueOf(leading)));
+                    return result;
+                }
+                break;
+        }
+
+        String op = Instructions.registerForm(opi);
+        if (op != null && !rX.equals(rY) && !rX.equals("r0"))
+        {
+            result.addAll(constant(rX, imm, value));
+            result.add(instruction(op, rX, rY, rX));
+        }
+        return result;
+    }
+
+    /**
+     * Multiplication by a constant, using shifts and adds where it is cheaper
+     * rX = rY * value
+     *
+     * @return the instruction sequence, which is a single muli if there is nothing cheaper
+     */
+    public static List<IComponent> muli(String rX, String rY, int value)
+    {
+        if (value == 0)
+        {
+            return Collections.singletonList(movi(rX, "0"));
+        }
+        if (value == 1)
+        {
+            return Collections.singletonList(mov(rX, rY));
+        }
+        if (value == -1)
+        {
+            return Collections.singletonList(op(rX, "r0", "-", rY));
+        }
+
+        // value = odd * 2 ^ shift
+        int shift = Integer.numberOfTrailingZeros(value), odd = value >> shift;
+        List<IComponent> result = new ArrayList<>();
+        if (odd == 1 || odd == -1)
+        {
+            result.add(instruction("slli", rX, rY, String.valueOf(shift)));
+            if (odd == -1)
+            {
+                result.add(op(rX, "r0", "-", rX));
+            }
+            return result;
+        }
+        if (!rX.equals(rY) && odd > 0 && (Integer.bitCount(odd - 1) == 1 || Integer.bitCount(odd + 1) == 1))
+        {
+            // odd = 2 ^ n +/- 1
+            boolean plus = Integer.bitCount(odd - 1) == 1;
+            result.add(instruction("slli", rX, rY, String.valueOf(Integer.numberOfTrailingZeros(plus ? odd - 1 : odd + 1))));
+            result.add(op(rX, rX, plus ? "+" : "-", rY));
+            if (shift > 0)
+            {
+                result.add(instruction("slli", rX, rX, String.valueOf(shift)));
+            }
+            return result;
+        }
+        return Collections.singletonList(instruction("muli", rX, rY, String.valueOf(value)));
+    }
+
+    /**
+     * Division or unsigned modulo by a constant, using shifts where possible
+     * rX = rY OP value, for OP = / (signed division), ?/ (unsigned division) or ?% (unsigned modulo)
+     * Anything other than a power of two uses rX to hold the divisor, so it can't also be the dividend
+     *
+     * @param imm the immediate value as written in the source (i.e. a constant name)
+     * @return the instruction sequence, or an empty list if it can't be done without an extra register
+     */
+    public static List<IComponent> divi(String rX, String rY, String op, String imm, int value)
+    {
+        boolean powerOfTwo = Integer.bitCount(value) == 1;
+        int shift = Integer.numberOfTrailingZeros(value);
+        List<IComponent> result = new ArrayList<>();
+        switch (op)
+        {
+            case "?/":
+                if (powerOfTwo)
+                {
+                    return Collections.singletonList(shift == 0 ? mov(rX, rY) : instruction("srli", rX, rY, String.valueOf(shift)));
+                }
+                break;
+            case "?%":
+                if (powerOfTwo)
+                {
+                    if (shift == 0)
+                    {
+                        return Collections.singletonList(movi(rX, "0"));
+                    }
+                    if (shift <= 16)
+                    {
+                        return Collections.singletonList(instruction("andi", rX, rY, String.valueOf(value - 1)));
+                    }
+                    result.add(instruction("slli", rX, rY, String.valueOf(32 - shift)));
+                    result.add(instruction("srli", rX, rX, String.valueOf(32 - shift)));
+                    return result;
+                }
+                break;
+            case "/":
+                if (value == 1)
+                {
+                    return Collections.singletonList(mov(rX, rY));
+                }
+                if (value == -1)
+                {
+                    return Collections.singletonList(op(rX, "r0", "-", rY));
+                }
+                if (powerOfTwo && value > 0 && !rX.equals(rY))
+                {
+                    // Round towards zero: add (2 ^ shift - 1) to negative values before shifting
+                    if (shift > 1)
+                    {
+                        result.add(instruction("srai", rX, rY, "31"));
+                    }
+                    result.add(instruction("srli", rX, shift > 1 ? rX : rY, String.valueOf(32 - shift)));
+                    result.add(op(rX, rX, "+", rY));
+                    result.add(instruction("srai", rX, rX, String.valueOf(shift)));
+                    return result;
+                }
+                break;
+            default:
+                throw new InvalidAssemblyException("error.message.unknown_operator", op);
+        }
+
+        // rY % C needs C again after the division, as a muli
+        if (!rX.equals(rY) && (!op.equals("?%") || Instructions.fitsImmediate("muli", value)))
+        {
+            result.add(movi(rX, imm));
+            result.add(op(rX, rY, op.equals("/") ? "/" : "?/", rX));
+            if (op.equals("?%"))
+            {
+                // rY % C = rY - (rY / C) * C
+                result.add(instruction("muli", rX, rX, imm));
+                result.add(op(rX, rY, "-", rX));
+            }
         }
-        return new ComponentStatic(IComponent.format(EXPRESSIONS.get(op) + "i", String.format("%s, %s, %s\n", rX, rY, imm))).setFlag(WRITE_REGISTER, rX);
+        return result;
     }
 
     private Components() {}
@@ -53,6 +53,16 @@ public interface IComponent
      */
     IComponent setFlag(Flag type, String flag);
 
+    /**
+     * Copies this component and its flags, i.e. to inline the body of a function in more than one place
+     *
+     * @return a copy, or null if this component can't be copied
+     */
+    default IComponent copy()
+    {
+        return null;
+    }
+
     enum Type
     {
         COMPILE,
@@ -71,6 +81,8 @@ public interface IComponent
         FUNCTION_PREFIX,
         LABEL,
         WRITE_REGISTER,
-        NEED_RETURN
+        READ_REGISTERS, // The registers read, separated by commas. If not set, they are found from the compiled instruction
+        NEED_RETURN,
+        LINE // The source line this was compiled from
     }
 }
@@ -8,6 +8,7 @@ package compiler.keyword;
 
 import java.util.Stack;
 
+import compiler.component.Components;
 import compiler.component.IComponent;
 import compiler.component.IComponentManager;
 import compiler.util.InvalidAssemblyException;
@@ -36,7 +37,10 @@ public class KeywordEnd implements IKeyword
             IComponent cmp = controlStack.pop();
             if (cmp instanceof IConditional)
             {
-                ((IConditional) cmp).build().forEach(parent::add);
+                // Loop condition: the true branch jumps back to the top, the false branch exits the loop here
+                IConditional condition = (IConditional) cmp;
+                condition.build().forEach(parent::add);
+                parent.add(Components.label(condition.getName() + "_f"));
             }
             else
             {
@@ -14,6 +14,7 @@ import compiler.component.IComponent;
 import compiler.component.IComponentManager;
 import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
+import compiler.util.OptimizationLevel;
 import compiler.util.pattern.Patterns;
 
 public class KeywordFunction implements IKeyword
@@ -30,6 +31,21 @@ public class KeywordFunction implements IKeyword
     public void apply(String keyword, StringBuilder inputBuilder, IComponentManager compiler)
     {
         StringBuilder source = Patterns.END_COLON.andThen(Patterns.TRIM_SPACE_ALL).apply(inputBuilder).get();
+
+        // An optimization level can follow the name, i.e. function Name -O2:
+        OptimizationLevel level = null;
+        int levelIndex = source.indexOf("-");
+        if (levelIndex != -1)
+        {
+            int levelEnd = source.indexOf(":") > levelIndex ? source.indexOf(":") : source.length();
+            String levelName = source.substring(levelIndex, levelEnd);
+            level = OptimizationLevel.get(levelName);
+            if (level == null)
+            {
+                throw new InvalidAssemblyException("error.message.invalid_optimization_level", levelName);
+            }
+            source.delete(levelIndex, levelEnd);
+        }
         if (!Helpers.isValidName(source.toString()))
         {
             throw new InvalidAssemblyException("error.message.invalid_function_name", source);
@@ -43,7 +59,7 @@ public class KeywordFunction implements IKeyword
         String shortName = name.replaceAll("[a-z0-9]", "").toLowerCase();
         if (shortName.length() <= 1)
         {
-            shortName = name.toLowerCase().substring(0, 3);
+            shortName = name.toLowerCase().substring(0, Math.min(3, name.length()));
         }
         String prefix = shortName;
         int index = 0;
@@ -52,7 +68,7 @@ public class KeywordFunction implements IKeyword
             prefix = shortName + (++index);
         }
         functionNames.put(name, prefix);
-        compiler.addComponent(IComponent.Type.CURRENT, new ComponentFunction(name, prefix, keyword.startsWith("void")));
+        compiler.addComponent(IComponent.Type.CURRENT, new ComponentFunction(name, prefix, keyword.startsWith("void"), level));
     }
 
     @Override
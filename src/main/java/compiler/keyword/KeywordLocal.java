@@ -0,0 +1,59 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.keyword;
+
+import java.util.Set;
+
+import compiler.component.ComponentFunction;
+import compiler.component.IComponent;
+import compiler.component.IComponentManager;
+import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
+import compiler.util.pattern.Patterns;
+
+/**
+ * Declares named locals in a function, which can be used anywhere a register can:
+ *
+ * local NAME[, NAME...]
+ *
+ * Each local is replaced with a virtual register for the rest of the function, which is given a physical register once the function is complete, see {@link compiler.util.optimizer.RegisterAllocator}
+ */
+public class KeywordLocal implements IKeyword
+{
+    private static final Set<String> RESERVED = Set.of("if", "else", "while", "end", "call", "return", "function", "void", "main", "compile", "local", "var", "int", "byte", "string", "const", "and", "or", "not", "guarded");
+
+    @Override
+    public boolean matches(String keyword, StringBuilder inputBuilder)
+    {
+        return IKeyword.matchKeyword(keyword, inputBuilder, "local");
+    }
+
+    @Override
+    public void apply(String keyword, StringBuilder inputBuilder, IComponentManager compiler)
+    {
+        StringBuilder source = Patterns.END_OF_LINE.andThen(Patterns.TRIM_SPACE_ALL).apply(inputBuilder).get();
+        IComponent parent = compiler.getComponent(IComponent.Type.CURRENT);
+        if (parent == null || parent.getType() != IComponent.Type.FUNCTION)
+        {
+            throw new InvalidAssemblyException("error.message.local_outside_function");
+        }
+
+        ComponentFunction function = (ComponentFunction) parent;
+        for (String name : source.toString().split(","))
+        {
+            if (!name.matches("^[a-zA-Z_][a-zA-Z0-9_]*$") || Helpers.isRegister(name) || name.matches("^r[0-9]+$") || RESERVED.contains(name))
+            {
+                throw new InvalidAssemblyException("error.message.invalid_local_name", name);
+            }
+            if (function.getLocals().containsKey(name))
+            {
+                throw new InvalidAssemblyException("error.message.duplicate_local", name);
+            }
+            function.addLocal(name);
+        }
+    }
+}
@@ -6,6 +6,8 @@
 
 package compiler.keyword;
 
+import java.util.List;
+
 import compiler.component.ComponentStatic;
 import compiler.component.Components;
 import compiler.component.IComponent;
@@ -23,13 +25,13 @@ import static compiler.component.IComponent.Flag.WRITE_REGISTER;
  * Each expression must be one of the following forms:
  *
  * rX = rY              ->      mov rX, rY
- * rX = IMM             ->      movi rX, IMM
+ * rX = IMM             ->      movi rX, IMM (or movui / movhi + ori for values outside 16 bits)
  * rX = &VAR            ->      movia rX, VAR
  * rX = (literal) VAR      ->      ld(w/b)(io/) rX, VAR(r0)
  * rX = (literal) &rY      ->      ld(w/b)(io/) rX, 0(rY)
  * rX = (literal) &rY[OFF] ->      ld(w/b)(io/) rX, OFF(rY)
  * rX = rY OP rZ        ->      OP rX, rY, rZ
- * rX = rY OP IMM       ->      OPi rX, rY, IMM
+ * rX = rY OP IMM       ->      OPi rX, rY, IMM (division and modulo use shifts, see Components#divi)
  * rX OP= rY            ->      OP rX, rX, rY
  * rX OP= IMM           ->      OPi rX, rX, IMM
  * rX UOP               ->      OPi rX, rX, 1 (for ++ / --)
@@ -50,7 +52,7 @@ public class KeywordRegisterExpression implements IKeyword
                 return true;
             }
         }
-        return false;
+        return Helpers.isVirtualRegister(keyword) && IKeyword.matchKeyword(keyword, inputBuilder, keyword);
     }
 
     @Override
@@ -69,7 +71,7 @@ public class KeywordRegisterExpression implements IKeyword
             source.deleteCharAt(0);
             String lhs = Patterns.END_DELIMITER.andThen(Patterns.IGNORE_FIRST_MINUS).andThen(Patterns.IGNORE_SINGLE_QUOTE).apply(source).getString();
 
-            if (Helpers.REGISTERS.contains(lhs))
+            if (Helpers.isRegister(lhs))
             {
                 // Cases: rX = rY OP rz / rX = rY OP IMM / rX = rY
                 String op = Patterns.NEXT_OPERATOR.apply(source).getString();
@@ -78,10 +80,9 @@ public class KeywordRegisterExpression implements IKeyword
                 if (op.equals(""))
                 {
                     // Case: rX = rY
-                    String result = IComponent.format("mov", keyword + ", " + lhs + "\n");
-                    parent.add(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword));
+                    parent.add(Components.mov(keyword, lhs));
                 }
-                else if (Helpers.REGISTERS.contains(rhs))
+                else if (Helpers.isRegister(rhs))
                 {
                     // Case: rX = rY OP rZ
                     parent.add(Components.op(keyword, lhs, op, rhs));
@@ -89,7 +90,7 @@ public class KeywordRegisterExpression implements IKeyword
                 else
                 {
                     // Case: rX = rY OP IMM
-                    parent.add(Components.opi(keyword, lhs, op, rhs));
+                    addImmediateOperation(parent, keyword, lhs, op, rhs, compiler);
                 }
             }
             else
@@ -104,7 +105,7 @@ public class KeywordRegisterExpression implements IKeyword
                     // Remove the '&' or '*'
                     source.deleteCharAt(0);
                     String rhs = Patterns.END_DELIMITER.apply(source).getString();
-                    if (Helpers.REGISTERS.contains(rhs))
+                    if (Helpers.isRegister(rhs))
                     {
                         String offset = "0";
 
@@ -120,7 +121,7 @@ public class KeywordRegisterExpression implements IKeyword
                         // Case rX = (literal) &rY / rX = (literal) &rY[OFF]
                         String cmd = cast.makeLoad();
                         String result = IComponent.format(cmd, String.format("%s, %s(%s)\n", keyword, offset, rhs));
-                        parent.add(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword));
+                        parent.add(Components.reads(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword), rhs));
                     }
                     else
                     {
@@ -135,8 +136,7 @@ public class KeywordRegisterExpression implements IKeyword
                     if (intResult.validLiteral())
                     {
                         // Case rX = IMM
-                        String result = IComponent.format("movi", keyword + ", " + lhs + "\n");
-                        parent.add(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword));
+                        Components.constant(keyword, lhs, intResult.getValue()).forEach(parent::add);
                     }
                     else
                     {
@@ -147,7 +147,7 @@ public class KeywordRegisterExpression implements IKeyword
                             throw new InvalidAssemblyException("error.message.invalid_variable_name", lhs);
                         }
                         String result = IComponent.format(cmd, keyword + ", " + lhs + "(r0)\n");
-                        parent.add(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword));
+                        parent.add(Components.reads(new ComponentStatic(result).setFlag(WRITE_REGISTER, keyword), "r0"));
                     }
                 }
             }
@@ -170,7 +170,7 @@ public class KeywordRegisterExpression implements IKeyword
             source.deleteCharAt(0);
 
             String rhs = Patterns.END_DELIMITER.andThen(Patterns.IGNORE_FIRST_MINUS).apply(source).getString();
-            if (Helpers.REGISTERS.contains(rhs))
+            if (Helpers.isRegister(rhs))
             {
                 // Case: rX OP= rY
                 parent.add(Components.op(keyword, keyword, op, rhs));
@@ -178,11 +178,45 @@ public class KeywordRegisterExpression implements IKeyword
             else
             {
                 // Case: rX OP= IMM
-                parent.add(Components.opi(keyword, keyword, op, rhs));
+                addImmediateOperation(parent, keyword, keyword, op, rhs, compiler);
             }
         }
 
         //System.out.println("Reached the end with + " + source);
         if (source.length() > 0) throw new InvalidAssemblyException("HAHAHAHAH");
     }
+
+    /**
+     * Immediate values which don't fit in a single instruction are split, see {@link Components#immediate(String, String, String, String, int)}
+     * Division and modulo don't have immediate instructions, so they are replaced with shifts or a division by rX, see {@link Components#divi(String, String, String, String, int)}
+     */
+    private void addImmediateOperation(IComponent parent, String rX, String rY, String op, String imm, IComponentManager compiler)
+    {
+        if (op.equals("/") || op.equals("?/") || op.equals("?%"))
+        {
+            IntResult value = new IntResult(imm, compiler);
+            if (!value.validLiteral())
+            {
+                throw new InvalidAssemblyException("error.message.invalid_literal");
+            }
+            List<IComponent> result = Components.divi(rX, rY, op, imm, value.getValue());
+            if (result.isEmpty())
+            {
+                throw new InvalidAssemblyException("error.message.operator_div_immediate");
+            }
+            result.forEach(parent::add);
+        }
+        else
+        {
+            IntResult value = new IntResult(imm, compiler);
+            if (value.validLiteral())
+            {
+                Components.opi(rX, rY, op, imm, value.getValue()).forEach(parent::add);
+            }
+            else
+            {
+                parent.add(Components.opi(rX, rY, op, imm));
+            }
+        }
+    }
 }
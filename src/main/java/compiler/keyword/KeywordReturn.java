@@ -7,6 +7,7 @@
 package compiler.keyword;
 
 import compiler.component.ComponentStatic;
+import compiler.component.Components;
 import compiler.component.IComponent;
 import compiler.component.IComponentManager;
 import compiler.util.Helpers;
@@ -35,14 +36,14 @@ public class KeywordReturn implements IKeyword
         if (source.length() != 0)
         {
             String reg = source.toString();
-            if (!Helpers.REGISTERS.contains(reg))
+            if (!Helpers.isRegister(reg))
             {
                 throw new InvalidAssemblyException("error.message.unknown_register", reg);
             }
 
             // Add the quick move flag
             String result = IComponent.format("mov", "r2, " + reg + "\n");
-            parent.add(new ComponentStatic(result).setFlag(WRITE_REGISTER, "r2"));
+            parent.add(Components.reads(new ComponentStatic(result).setFlag(WRITE_REGISTER, "r2"), reg));
         }
 
         // Add a default return
@@ -76,7 +76,7 @@ public class KeywordVariable implements IKeyword
             }
 
             // Declaration with no assignment
-            compiler.addComponent(new ComponentVariable(varName + ":\n" + IComponent.format(".skip", size + "\n"), !isByte));
+            compiler.addComponent(new ComponentVariable(varName, varName + ":\n" + IComponent.format(".skip", size + "\n"), !isByte, size));
         }
         else if (source.charAt(0) == '[')
         {
@@ -107,19 +107,20 @@ public class KeywordVariable implements IKeyword
                 throw new InvalidAssemblyException("error.message.extra_keyword", source);
             }
 
-            compiler.addComponent(new ComponentVariable(varName + ":\n" + IComponent.format(".skip", (size * cast.getValue()) + "\n"), !isByte));
+            compiler.addComponent(new ComponentVariable(varName, varName + ":\n" + IComponent.format(".skip", (size * cast.getValue()) + "\n"), !isByte, size * cast.getValue()));
         }
         else if (source.charAt(0) == '=')
         {
             source.deleteCharAt(0);
             String vars = source.toString().replace(",", ", ");
+            int count = source.toString().split(",").length;
             if (isByte)
             {
-                compiler.addComponent(new ComponentVariable(varName + ":\n" + IComponent.format(".byte", vars + "\n"), false));
+                compiler.addComponent(new ComponentVariable(varName, varName + ":\n" + IComponent.format(".byte", vars + "\n"), false, count));
             }
             else
             {
-                compiler.addComponent(new ComponentVariable(varName + ":\n" + IComponent.format(".word", vars + "\n"), true));
+                compiler.addComponent(new ComponentVariable(varName, varName + ":\n" + IComponent.format(".word", vars + "\n"), true, 4 * count));
             }
         }
     }
@@ -144,8 +145,8 @@ public class KeywordVariable implements IKeyword
         }
 
         String varValue = Patterns.END_OF_LINE.andThen(Patterns.IGNORE_DOUBLE_QUOTE).andThen(Patterns.TRIM_DOUBLE_QUOTE).apply(source).getString();
-        compiler.addComponent(new ComponentVariable(varName + ":\n" +
-                IComponent.format(".asciz", "\"" + varValue + "\"\n"), false));
+        compiler.addComponent(new ComponentVariable(varName, varName + ":\n" +
+                IComponent.format(".asciz", "\"" + varValue + "\"\n"), false, stringSize(varValue)));
     }
 
     private void applyVariable(StringBuilder source, IComponentManager compiler)
@@ -173,8 +174,30 @@ public class KeywordVariable implements IKeyword
             throw new InvalidAssemblyException("error.message.extra_keyword", source);
         }
 
-        compiler.addComponent(new ComponentVariable(rhs + ":\n" +
-                IComponent.format(".skip", varSize + "\n"), false));
+        IntResult size = new IntResult(varSize, compiler);
+        compiler.addComponent(new ComponentVariable(rhs, rhs + ":\n" +
+                IComponent.format(".skip", varSize + "\n"), false, size.validLiteral() ? size.getValue() : -1));
+    }
+
+    /**
+     * @return the size in bytes of a string literal, including escape sequences and the terminating null
+     */
+    private int stringSize(String value)
+    {
+        int size = 1;
+        for (int i = 0; i < value.length(); i++, size++)
+        {
+            if (value.charAt(i) == '\\' && i + 1 < value.length())
+            {
+                // Escape sequences, including octal escapes of up to three digits
+                i++;
+                for (int digits = 1; digits < 3 && Character.isDigit(value.charAt(i)) && i + 1 < value.length() && Character.isDigit(value.charAt(i + 1)); digits++)
+                {
+                    i++;
+                }
+            }
+        }
+        return size;
     }
 
     private void applyConstant(StringBuilder source, IComponentManager compiler)
@@ -7,6 +7,7 @@
 package compiler.keyword;
 
 import compiler.component.ComponentStatic;
+import compiler.component.Components;
 import compiler.component.IComponent;
 import compiler.component.IComponentManager;
 import compiler.util.Helpers;
@@ -30,7 +31,7 @@ public class KeywordVariableStore implements IKeyword
     @Override
     public boolean matches(String keyword, StringBuilder inputBuilder)
     {
-        return (keyword.endsWith("=") && !Helpers.REGISTERS.contains(keyword.substring(0, keyword.length() - 1))) || keyword.equals("*") || keyword.equals("&");
+        return (keyword.endsWith("=") && !Helpers.isRegister(keyword.substring(0, keyword.length() - 1))) || keyword.equals("*") || keyword.equals("&");
     }
 
     @Override
@@ -46,7 +47,7 @@ public class KeywordVariableStore implements IKeyword
         if (keyword.equals("*") || keyword.equals("&"))
         {
             String lhs = Patterns.END_DELIMITER.apply(source).getString();
-            if (!Helpers.REGISTERS.contains(lhs))
+            if (!Helpers.isRegister(lhs))
             {
                 throw new InvalidAssemblyException("error.message.unknown_register", lhs);
             }
@@ -71,13 +72,13 @@ public class KeywordVariableStore implements IKeyword
             CastResult cast = new CastResult(rhs);
             rhs = cast.getResult();
 
-            if (!Helpers.REGISTERS.contains(rhs))
+            if (!Helpers.isRegister(rhs))
             {
                 throw new InvalidAssemblyException("error.message.unknown_register", rhs);
             }
             String cmd = cast.makeStore();
             String result = IComponent.format(cmd, String.format("%s, %s(%s)\n", rhs, offset, lhs));
-            parent.add(new ComponentStatic(result));
+            parent.add(Components.reads(new ComponentStatic(result), rhs, lhs));
 
         }
         else
@@ -89,7 +90,7 @@ public class KeywordVariableStore implements IKeyword
 
             // variable = rX
             String cmd = cast.makeStore();
-            parent.add(new ComponentStatic(IComponent.format(cmd, rhs + ", " + varName + "(r0)\n")));
+            parent.add(Components.reads(new ComponentStatic(IComponent.format(cmd, rhs + ", " + varName + "(r0)\n")), rhs, "r0"));
         }
     }
 }
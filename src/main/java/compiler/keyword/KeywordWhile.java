@@ -18,6 +18,7 @@ import compiler.util.conditional.IConditional;
 import compiler.util.pattern.Patterns;
 
 import static compiler.component.IComponent.Flag.FUNCTION_PREFIX;
+import static compiler.component.IComponent.Flag.LABEL;
 
 public class KeywordWhile implements IKeyword
 {
@@ -26,7 +27,7 @@ public class KeywordWhile implements IKeyword
     @Override
     public boolean matches(String keyword, StringBuilder inputBuilder)
     {
-        return IKeyword.matchKeyword(keyword, inputBuilder, "while");
+        return IKeyword.matchKeyword(keyword, inputBuilder, "while") || IKeyword.matchKeyword(keyword, inputBuilder, "guarded while");
     }
 
     @Override
@@ -62,9 +63,31 @@ public class KeywordWhile implements IKeyword
         int value = counter.getOrDefault(functionName, 1);
 
         String label = functionName + "_while" + value;
-        IConditional condition = new IConditional.Builder(label).build(source);
-        parent.add(Components.label(label + "_a_t"));
-        controlStack.add(condition);
+        IConditional.Builder builder = new IConditional.Builder(label);
+        if (keyword.startsWith("guarded"))
+        {
+            // Pre-tested loop: a guard which skips the loop entirely, followed by the rotated (bottom-tested) loop
+            // The guard and loop share the same exit label, so this is equivalent to 'if <condition>: while <condition>:'
+            IConditional guard = builder.build(new StringBuilder(source));
+            IConditional condition = builder.build(source);
+            for (IComponent cmp : guard.build())
+            {
+                if (cmp.getFlag(LABEL).equals(guard.getName() + "_f"))
+                {
+                    cmp.setFlag(LABEL, condition.getName() + "_f");
+                }
+                parent.add(cmp);
+            }
+            parent.add(Components.label(guard.getName() + "_t"));
+            parent.add(Components.label(condition.getName() + "_t"));
+            controlStack.add(condition);
+        }
+        else
+        {
+            IConditional condition = builder.build(source);
+            parent.add(Components.label(condition.getName() + "_t"));
+            controlStack.add(condition);
+        }
 
         // Increment the counter in the map
         counter.put(functionName, value + 1);
@@ -0,0 +1,967 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import compiler.util.InvalidAssemblyException;
+
+/**
+ * A two pass assembler for the subset of Nios-II assembly that the compiler emits
+ * The first pass assigns addresses to labels, the second writes data to memory and decodes instructions
+ *
+ * Supported directives: .equ, .org, .align, .word, .hword, .byte, .ascii, .asciz, .skip, .global, .text, .data, .end
+ * Supported operand expressions: integer and character literals, symbols, + - * / << >> & | ^ ~, parentheses, and %lo, %hi, %hiadj, %gprel
+ * Comments of the form "# line N" (see {@link compiler.util.CompileFlag#LINE_INFO}) set the source line of the following instructions
+ */
+final class Assembler
+{
+    private static final Map<String, Integer> REGISTERS = new HashMap<>();
+    private static final Map<String, Consumer<Line>> DECODERS = new HashMap<>();
+    private static final Pattern LINE_MARKER = Pattern.compile("#\\s*line\\s+(\\d+)");
+
+    static
+    {
+        for (int i = 0; i < 32; i++)
+        {
+            REGISTERS.put("r" + i, i);
+        }
+        REGISTERS.put("zero", 0);
+        REGISTERS.put("at", 1);
+        REGISTERS.put("et", 24);
+        REGISTERS.put("bt", 25);
+        REGISTERS.put("gp", 26);
+        REGISTERS.put("sp", 27);
+        REGISTERS.put("fp", 28);
+        REGISTERS.put("ea", 29);
+        REGISTERS.put("ba", 30);
+        REGISTERS.put("sstatus", 30);
+        REGISTERS.put("ra", 31);
+
+        // Arithmetic and logical
+        DECODERS.put("add", line -> line.registerOp(Opcode.ADD, "add", false));
+        DECODERS.put("sub", line -> line.registerOp(Opcode.SUB, "sub", false));
+        DECODERS.put("mul", line -> line.registerOp(Opcode.MUL, "mul", false));
+        DECODERS.put("mulxss", line -> line.registerOp(Opcode.MULXSS, "mulxss", false));
+        DECODERS.put("mulxuu", line -> line.registerOp(Opcode.MULXUU, "mulxuu", false));
+        DECODERS.put("mulxsu", line -> line.registerOp(Opcode.MULXSU, "mulxsu", false));
+        DECODERS.put("div", line -> line.registerOp(Opcode.DIV, "div", false));
+        DECODERS.put("divu", line -> line.registerOp(Opcode.DIVU, "divu", false));
+        DECODERS.put("and", line -> line.registerOp(Opcode.AND, "and", false));
+        DECODERS.put("or", line -> line.registerOp(Opcode.OR, "or", false));
+        DECODERS.put("xor", line -> line.registerOp(Opcode.XOR, "xor", false));
+        DECODERS.put("nor", line -> line.registerOp(Opcode.NOR, "nor", false));
+        DECODERS.put("sll", line -> line.registerOp(Opcode.SLL, "sll", false));
+        DECODERS.put("sra", line -> line.registerOp(Opcode.SRA, "sra", false));
+        DECODERS.put("srl", line -> line.registerOp(Opcode.SRL, "srl", false));
+        DECODERS.put("rol", line -> line.registerOp(Opcode.ROL, "rol", false));
+        DECODERS.put("ror", line -> line.registerOp(Opcode.ROR, "ror", false));
+        DECODERS.put("addi", line -> line.immediateOp(Opcode.ADDI, "addi", "SIGNED", "%s"));
+        DECODERS.put("subi", line -> line.immediateOp(Opcode.ADDI, "addi", "SIGNED", "-(%s)"));
+        DECODERS.put("muli", line -> line.immediateOp(Opcode.MULI, "muli", "SIGNED", "%s"));
+        DECODERS.put("andi", line -> line.immediateOp(Opcode.ANDI, "andi", "UNSIGNED", "%s"));
+        DECODERS.put("ori", line -> line.immediateOp(Opcode.ORI, "ori", "UNSIGNED", "%s"));
+        DECODERS.put("xori", line -> line.immediateOp(Opcode.XORI, "xori", "UNSIGNED", "%s"));
+        DECODERS.put("andhi", line -> line.immediateOp(Opcode.ANDI, "andhi", "HIGH", "%s"));
+        DECODERS.put("orhi", line -> line.immediateOp(Opcode.ORI, "orhi", "HIGH", "%s"));
+        DECODERS.put("xorhi", line -> line.immediateOp(Opcode.XORI, "xorhi", "HIGH", "%s"));
+        DECODERS.put("slli", line -> line.immediateOp(Opcode.SLLI, "slli", "SHIFT", "%s"));
+        DECODERS.put("srai", line -> line.immediateOp(Opcode.SRAI, "srai", "SHIFT", "%s"));
+        DECODERS.put("srli", line -> line.immediateOp(Opcode.SRLI, "srli", "SHIFT", "%s"));
+        DECODERS.put("roli", line -> line.immediateOp(Opcode.ROLI, "roli", "SHIFT", "%s"));
+
+        // Comparisons, including the pseudo instructions which swap operands or adjust the immediate
+        DECODERS.put("cmpeq", line -> line.registerOp(Opcode.CMPEQ, "cmpeq", false));
+        DECODERS.put("cmpne", line -> line.registerOp(Opcode.CMPNE, "cmpne", false));
+        DECODERS.put("cmplt", line -> line.registerOp(Opcode.CMPLT, "cmplt", false));
+        DECODERS.put("cmpge", line -> line.registerOp(Opcode.CMPGE, "cmpge", false));
+        DECODERS.put("cmpltu", line -> line.registerOp(Opcode.CMPLTU, "cmpltu", false));
+        DECODERS.put("cmpgeu", line -> line.registerOp(Opcode.CMPGEU, "cmpgeu", false));
+        DECODERS.put("cmpgt", line -> line.registerOp(Opcode.CMPLT, "cmplt", true));
+        DECODERS.put("cmple", line -> line.registerOp(Opcode.CMPGE, "cmpge", true));
+        DECODERS.put("cmpgtu", line -> line.registerOp(Opcode.CMPLTU, "cmpltu", true));
+        DECODERS.put("cmpleu", line -> line.registerOp(Opcode.CMPGEU, "cmpgeu", true));
+        DECODERS.put("cmpeqi", line -> line.immediateOp(Opcode.CMPEQI, "cmpeqi", "SIGNED", "%s"));
+        DECODERS.put("cmpnei", line -> line.immediateOp(Opcode.CMPNEI, "cmpnei", "SIGNED", "%s"));
+        DECODERS.put("cmplti", line -> line.immediateOp(Opcode.CMPLTI, "cmplti", "SIGNED", "%s"));
+        DECODERS.put("cmpgei", line -> line.immediateOp(Opcode.CMPGEI, "cmpgei", "SIGNED", "%s"));
+        DECODERS.put("cmpltui", line -> line.immediateOp(Opcode.CMPLTUI, "cmpltui", "UNSIGNED", "%s"));
+        DECODERS.put("cmpgeui", line -> line.immediateOp(Opcode.CMPGEUI, "cmpgeui", "UNSIGNED", "%s"));
+        DECODERS.put("cmpgti", line -> line.immediateOp(Opcode.CMPGEI, "cmpgei", "SIGNED", "(%s)+1"));
+        DECODERS.put("cmplei", line -> line.immediateOp(Opcode.CMPLTI, "cmplti", "SIGNED", "(%s)+1"));
+        DECODERS.put("cmpgtui", line -> line.immediateOp(Opcode.CMPGEUI, "cmpgeui", "UNSIGNED", "(%s)+1"));
+        DECODERS.put("cmpleui", line -> line.immediateOp(Opcode.CMPLTUI, "cmpltui", "UNSIGNED", "(%s)+1"));
+
+        // Moves (pseudo instructions)
+        DECODERS.put("mov", line -> line.move(Opcode.ADD, "add", ""));
+        DECODERS.put("movi", line -> line.move(Opcode.ADDI, "addi", "SIGNED"));
+        DECODERS.put("movui", line -> line.move(Opcode.ORI, "ori", "UNSIGNED"));
+        DECODERS.put("movhi", line -> line.move(Opcode.ORI, "orhi", "HIGH"));
+        DECODERS.put("movia", Line::moveAddress);
+        DECODERS.put("nop", line -> line.none(Opcode.ADD, 0));
+
+        // Memory
+        DECODERS.put("ldw", line -> line.memoryOp(Opcode.LDW));
+        DECODERS.put("ldwu", line -> line.memoryOp(Opcode.LDW)); // Emitted by unsigned word loads, which are the same as ldw
+        DECODERS.put("ldh", line -> line.memoryOp(Opcode.LDH));
+        DECODERS.put("ldhu", line -> line.memoryOp(Opcode.LDHU));
+        DECODERS.put("ldb", line -> line.memoryOp(Opcode.LDB));
+        DECODERS.put("ldbu", line -> line.memoryOp(Opcode.LDBU));
+        DECODERS.put("stw", line -> line.memoryOp(Opcode.STW));
+        DECODERS.put("sth", line -> line.memoryOp(Opcode.STH));
+        DECODERS.put("stb", line -> line.memoryOp(Opcode.STB));
+
+        // Control flow
+        DECODERS.put("beq", line -> line.branchOp(Opcode.BEQ, "beq", false));
+        DECODERS.put("bne", line -> line.branchOp(Opcode.BNE, "bne", false));
+        DECODERS.put("blt", line -> line.branchOp(Opcode.BLT, "blt", false));
+        DECODERS.put("bge", line -> line.branchOp(Opcode.BGE, "bge", false));
+        DECODERS.put("bltu", line -> line.branchOp(Opcode.BLTU, "bltu", false));
+        DECODERS.put("bgeu", line -> line.branchOp(Opcode.BGEU, "bgeu", false));
+        DECODERS.put("bgt", line -> line.branchOp(Opcode.BLT, "blt", true));
+        DECODERS.put("ble", line -> line.branchOp(Opcode.BGE, "bge", true));
+        DECODERS.put("bgtu", line -> line.branchOp(Opcode.BLTU, "bltu", true));
+        DECODERS.put("bleu", line -> line.branchOp(Opcode.BGEU, "bgeu", true));
+        DECODERS.put("br", line -> line.jump(Opcode.BR, false));
+        DECODERS.put("call", line -> line.jump(Opcode.CALL, false));
+        DECODERS.put("jmpi", line -> line.jump(Opcode.JMPI, false));
+        DECODERS.put("callr", line -> line.jump(Opcode.CALLR, true));
+        DECODERS.put("jmp", line -> line.jump(Opcode.JMP, true));
+        DECODERS.put("ret", line -> line.none(Opcode.RET, 31));
+        DECODERS.put("break", line -> line.none(Opcode.BREAK, 0));
+    }
+
+    /**
+     * Finds the name of a register, for reporting
+     */
+    static String registerName(int register)
+    {
+        switch (register)
+        {
+            case 26:
+                return "gp";
+            case 27:
+                return "sp";
+            case 28:
+                return "fp";
+            case 31:
+                return "ra";
+            default:
+                return "r" + register;
+        }
+    }
+
+    private final Map<String, Integer> labels = new LinkedHashMap<>();
+    private final Map<String, String> equates = new HashMap<>();
+    private final Set<String> evaluating = new HashSet<>();
+    private final List<Line> lines = new ArrayList<>();
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final Memory memory;
+    private int sourceLine = -1;
+
+    Assembler(String source, Memory memory)
+    {
+        this.memory = memory;
+
+        // First pass: split lines, and assign addresses to labels
+        String[] input = source.split("\n", -1);
+        int address = 0;
+        for (int i = 0; i < input.length; i++)
+        {
+            Line line = new Line(i + 1, input[i]);
+            try
+            {
+                address = line.layout(address);
+            }
+            catch (InvalidAssemblyException e)
+            {
+                throw new InvalidAssemblyException(e, "simulator.error.assembly", line.number, line.text.trim(), e.getMessage());
+            }
+            lines.add(line);
+            if (line.op.equals(".end"))
+            {
+                break;
+            }
+        }
+
+        // Second pass: write data and decode instructions
+        for (Line line : lines)
+        {
+            try
+            {
+                line.assemble();
+            }
+            catch (InvalidAssemblyException e)
+            {
+                throw new InvalidAssemblyException(e, "simulator.error.assembly", line.number, line.text.trim(), e.getMessage());
+            }
+        }
+    }
+
+    Map<String, Integer> getLabels()
+    {
+        return labels;
+    }
+
+    List<Instruction> getInstructions()
+    {
+        return instructions;
+    }
+
+    static int register(String name)
+    {
+        Integer register = REGISTERS.get(name.trim());
+        if (register == null)
+        {
+            throw new InvalidAssemblyException("simulator.error.unknown_register", name);
+        }
+        return register;
+    }
+
+    private int symbol(String name)
+    {
+        Integer label = labels.get(name);
+        if (label != null)
+        {
+            return label;
+        }
+        String equate = equates.get(name);
+        if (equate == null || !evaluating.add(name))
+        {
+            throw new InvalidAssemblyException("simulator.error.unknown_symbol", name);
+        }
+        try
+        {
+            return (int) evaluate(equate);
+        }
+        finally
+        {
+            evaluating.remove(name);
+        }
+    }
+
+    private long evaluate(String expression)
+    {
+        ExpressionParser parser = new ExpressionParser(expression);
+        long value = parser.parseOr();
+        if (parser.index < expression.length())
+        {
+            throw new InvalidAssemblyException("simulator.error.invalid_expression", expression);
+        }
+        return value;
+    }
+
+    /**
+     * Evaluates a 16 bit immediate field, and sign / zero extends or shifts it as the instruction would
+     *
+     * @param kind one of SIGNED, UNSIGNED, HIGH (i.e. orhi) or SHIFT
+     */
+    private int immediate(String text, String kind)
+    {
+        text = text.trim();
+        long value;
+        if (text.startsWith("%"))
+        {
+            // Relocation operators give the 16 bit field directly
+            int open = text.indexOf('(');
+            if (open == -1 || !text.endsWith(")"))
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_expression", text);
+            }
+            long inner = evaluate(text.substring(open + 1, text.length() - 1));
+            switch (text.substring(1, open))
+            {
+                case "lo":
+                    value = inner & 0xFFFF;
+                    break;
+                case "hi":
+                    value = (inner >>> 16) & 0xFFFF;
+                    break;
+                case "hiadj":
+                    value = ((inner >>> 16) + ((inner >> 15) & 1)) & 0xFFFF;
+                    break;
+                case "gprel":
+                    value = inner - symbol("_gp");
+                    if (value < -32768 || value > 32767)
+                    {
+                        throw new InvalidAssemblyException("simulator.error.immediate_out_of_range", text);
+                    }
+                    value &= 0xFFFF;
+                    break;
+                default:
+                    throw new InvalidAssemblyException("simulator.error.invalid_expression", text);
+            }
+            switch (kind)
+            {
+                case "SIGNED":
+                    return (short) value;
+                case "HIGH":
+                    return (int) value << 16;
+                default:
+                    return (int) value;
+            }
+        }
+
+        value = evaluate(text);
+        boolean valid;
+        switch (kind)
+        {
+            case "SIGNED":
+                valid = value >= -32768 && value <= 32767;
+                break;
+            case "SHIFT":
+                valid = value >= 0 && value <= 31;
+                break;
+            default:
+                valid = value >= 0 && value <= 65535;
+        }
+        if (!valid)
+        {
+            throw new InvalidAssemblyException("simulator.error.immediate_out_of_range", text);
+        }
+        return kind.equals("HIGH") ? (int) value << 16 : (int) value;
+    }
+
+    /**
+     * Splits arguments on commas, ignoring any inside quotes or brackets
+     */
+    private static List<String> split(String args)
+    {
+        List<String> result = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inQuote = false;
+        int depth = 0;
+        for (int i = 0; i < args.length(); i++)
+        {
+            char c = args.charAt(i);
+            if (c == '\\' && inQuote && i + 1 < args.length())
+            {
+                arg.append(c).append(args.charAt(++i));
+                continue;
+            }
+            if (c == '"' || c == '\'')
+            {
+                inQuote = !inQuote;
+            }
+            else if (!inQuote && c == '(')
+            {
+                depth++;
+            }
+            else if (!inQuote && c == ')')
+            {
+                depth--;
+            }
+            if (c == ',' && !inQuote && depth == 0)
+            {
+                result.add(arg.toString().trim());
+                arg = new StringBuilder();
+            }
+            else
+            {
+                arg.append(c);
+            }
+        }
+        if (arg.toString().trim().length() > 0 || !result.isEmpty())
+        {
+            result.add(arg.toString().trim());
+        }
+        return result;
+    }
+
+    /**
+     * @return the bytes of a string literal, with escape sequences replaced
+     */
+    private static List<Integer> string(String literal)
+    {
+        literal = literal.trim();
+        if (literal.length() < 2 || !literal.startsWith("\"") || !literal.endsWith("\""))
+        {
+            throw new InvalidAssemblyException("simulator.error.invalid_expression", literal);
+        }
+        List<Integer> bytes = new ArrayList<>();
+        for (int i = 1; i < literal.length() - 1; i++)
+        {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < literal.length() - 1)
+            {
+                c = literal.charAt(++i);
+                if (c >= '0' && c <= '7')
+                {
+                    // Octal escape, up to three digits
+                    int value = c - '0';
+                    for (int digits = 1; digits < 3 && i + 1 < literal.length() - 1 && literal.charAt(i + 1) >= '0' && literal.charAt(i + 1) <= '7'; digits++)
+                    {
+                        value = value * 8 + literal.charAt(++i) - '0';
+                    }
+                    bytes.add(value & 0xFF);
+                    continue;
+                }
+                c = escape(c);
+            }
+            bytes.add(c & 0xFF);
+        }
+        return bytes;
+    }
+
+    private static char escape(char c)
+    {
+        switch (c)
+        {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            default:
+                return c;
+        }
+    }
+
+    private static String stripComment(String text)
+    {
+        boolean inQuote = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == '\\' && inQuote)
+            {
+                i++;
+            }
+            else if (c == '"' || c == '\'')
+            {
+                inQuote = !inQuote;
+            }
+            else if (c == '#' && !inQuote)
+            {
+                return text.substring(0, i);
+            }
+        }
+        return text;
+    }
+
+    /**
+     * A single line of assembly, which may have a label, and either a directive or an instruction
+     */
+    private final class Line
+    {
+        private final int number;
+        private final String text;
+        private String op = "";
+        private List<String> args = Collections.emptyList();
+        private int address;
+        private int emitted;
+        private int sourceLine;
+
+        Line(int number, String text)
+        {
+            this.number = number;
+            this.text = text;
+        }
+
+        /**
+         * Parses the line and assigns labels
+         *
+         * @return the address after this line
+         */
+        int layout(int address)
+        {
+            Matcher marker = LINE_MARKER.matcher(text.trim());
+            if (marker.matches())
+            {
+                Assembler.this.sourceLine = Integer.parseInt(marker.group(1));
+            }
+            sourceLine = Assembler.this.sourceLine;
+
+            String line = stripComment(text).trim();
+
+            // Labels, i.e. name: or name: instruction
+            int colon = line.indexOf(':');
+            while (colon > 0 && line.substring(0, colon).matches("[A-Za-z_.$][\\w.$]*"))
+            {
+                String label = line.substring(0, colon);
+                if (labels.containsKey(label) || equates.containsKey(label))
+                {
+                    throw new InvalidAssemblyException("simulator.error.duplicate_symbol", label);
+                }
+                labels.put(label, address);
+                line = line.substring(colon + 1).trim();
+                colon = line.indexOf(':');
+            }
+            if (line.isEmpty())
+            {
+                this.address = address;
+                return address;
+            }
+
+            int space = line.indexOf(' ');
+            op = (space == -1 ? line : line.substring(0, space)).toLowerCase();
+            args = space == -1 ? Collections.emptyList() : split(line.substring(space + 1));
+
+            switch (op)
+            {
+                case ".equ":
+                case ".set":
+                    if (args.size() != 2)
+                    {
+                        throw new InvalidAssemblyException("simulator.error.invalid_arguments", op);
+                    }
+                    if (labels.containsKey(args.get(0)) || equates.containsKey(args.get(0)))
+                    {
+                        throw new InvalidAssemblyException("simulator.error.duplicate_symbol", args.get(0));
+                    }
+                    equates.put(args.get(0), args.get(1));
+                    break;
+                case ".org":
+                    int org = (int) evaluate(args.get(0));
+                    if (org < address)
+                    {
+                        throw new InvalidAssemblyException("simulator.error.org_backwards", args.get(0));
+                    }
+                    address = org;
+                    break;
+                case ".align":
+                    int alignment = 1 << (int) evaluate(args.get(0));
+                    address = (address + alignment - 1) & -alignment;
+                    break;
+            }
+            this.address = address;
+            return address + size();
+        }
+
+        private int size()
+        {
+            switch (op)
+            {
+                case ".word":
+                    return 4 * args.size();
+                case ".hword":
+                    return 2 * args.size();
+                case ".byte":
+                    return args.size();
+                case ".ascii":
+                case ".asciz":
+                case ".string":
+                    int size = 0;
+                    for (String arg : args)
+                    {
+                        size += string(arg).size() + (op.equals(".ascii") ? 0 : 1);
+                    }
+                    return size;
+                case ".skip":
+                case ".space":
+                    return (int) evaluate(args.get(0));
+                case "movia":
+                    return 8;
+                default:
+                    return op.startsWith(".") ? 0 : 4;
+            }
+        }
+
+        void assemble()
+        {
+            int address = this.address;
+            switch (op)
+            {
+                case "":
+                case ".equ":
+                case ".set":
+                case ".org":
+                case ".align":
+                case ".global":
+                case ".globl":
+                case ".text":
+                case ".data":
+                case ".section":
+                case ".end":
+                case ".skip":
+                case ".space":
+                    return;
+                case ".word":
+                    for (String arg : args)
+                    {
+                        memory.initialize(address, 4, (int) evaluate(arg));
+                        address += 4;
+                    }
+                    return;
+                case ".hword":
+                    for (String arg : args)
+                    {
+                        memory.initialize(address, 2, (int) evaluate(arg));
+                        address += 2;
+                    }
+                    return;
+                case ".byte":
+                    for (String arg : args)
+                    {
+                        memory.initialize(address++, 1, (int) evaluate(arg));
+                    }
+                    return;
+                case ".ascii":
+                case ".asciz":
+                case ".string":
+                    for (String arg : args)
+                    {
+                        for (int c : string(arg))
+                        {
+                            memory.initialize(address++, 1, c);
+                        }
+                        if (!op.equals(".ascii"))
+                        {
+                            memory.initialize(address++, 1, 0);
+                        }
+                    }
+                    return;
+                default:
+                    if (op.startsWith("."))
+                    {
+                        throw new InvalidAssemblyException("simulator.error.unknown_directive", op);
+                    }
+                    if ((address & 3) != 0)
+                    {
+                        throw new InvalidAssemblyException("simulator.error.misaligned_instruction", address);
+                    }
+                    decode();
+            }
+        }
+
+        private String arg(int index)
+        {
+            if (index >= args.size())
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_arguments", op);
+            }
+            return args.get(index);
+        }
+
+        private void expect(int count)
+        {
+            if (args.size() != count)
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_arguments", op);
+            }
+        }
+
+        private void add(Opcode opcode, String name, int d, int s, int t, int imm)
+        {
+            instructions.add(new Instruction(opcode, name, d, s, t, imm, address + 4 * emitted++, number, sourceLine, text.trim()));
+        }
+
+        private void registerOp(Opcode opcode, String name, boolean swap)
+        {
+            expect(3);
+            int d = register(arg(0)), s = register(arg(1)), t = register(arg(2));
+            add(opcode, name, d, swap ? t : s, swap ? s : t, 0);
+        }
+
+        /**
+         * @param format the immediate value, from the argument, i.e. pseudo instructions like subi use -(%s)
+         */
+        private void immediateOp(Opcode opcode, String name, String kind, String format)
+        {
+            expect(3);
+            add(opcode, name, register(arg(0)), register(arg(1)), 0, immediate(String.format(format, arg(2)), kind));
+        }
+
+        private void memoryOp(Opcode opcode)
+        {
+            expect(2);
+            String mem = arg(1);
+            int open = mem.lastIndexOf('(');
+            if (open == -1 || !mem.endsWith(")"))
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_arguments", op);
+            }
+            String offset = mem.substring(0, open).trim();
+            int base = register(mem.substring(open + 1, mem.length() - 1));
+            int imm = offset.isEmpty() ? 0 : immediate(offset, "SIGNED");
+            int rB = register(arg(0));
+            if (opcode.isStore())
+            {
+                add(opcode, op, 0, base, rB, imm);
+            }
+            else
+            {
+                add(opcode, op, rB, base, 0, imm);
+            }
+        }
+
+        private void branchOp(Opcode opcode, String name, boolean swap)
+        {
+            expect(3);
+            int s = register(arg(0)), t = register(arg(1));
+            add(opcode, name, 0, swap ? t : s, swap ? s : t, 0);
+            last().target = (int) evaluate(arg(2));
+        }
+
+        private Instruction last()
+        {
+            return instructions.get(instructions.size() - 1);
+        }
+
+        private void decode()
+        {
+            // Strip io variants, which have the same behaviour without a cache
+            String name = op.endsWith("io") && (op.startsWith("ld") || op.startsWith("st")) ? op.substring(0, op.length() - 2) : op;
+            Consumer<Line> decoder = DECODERS.get(name);
+            if (decoder == null)
+            {
+                throw new InvalidAssemblyException("simulator.error.unknown_instruction", op);
+            }
+            decoder.accept(this);
+        }
+
+        private void move(Opcode opcode, String name, String kind)
+        {
+            // mov rX, rY -> add rX, rY, r0 / movi rX, IMM -> addi rX, r0, IMM
+            expect(2);
+            if (kind.isEmpty())
+            {
+                add(opcode, name, register(arg(0)), register(arg(1)), 0, 0);
+            }
+            else
+            {
+                add(opcode, name, register(arg(0)), 0, 0, immediate(arg(1), kind));
+            }
+        }
+
+        private void moveAddress()
+        {
+            // movia rX, VALUE -> orhi rX, r0, %hiadj(VALUE); addi rX, rX, %lo(VALUE)
+            expect(2);
+            int rX = register(arg(0));
+            add(Opcode.ORI, "orhi", rX, 0, 0, immediate("%hiadj(" + arg(1) + ")", "HIGH"));
+            add(Opcode.ADDI, "addi", rX, rX, 0, immediate("%lo(" + arg(1) + ")", "SIGNED"));
+        }
+
+        private void jump(Opcode opcode, boolean register)
+        {
+            expect(1);
+            add(opcode, op, 0, register ? register(arg(0)) : 0, 0, 0);
+            if (!register)
+            {
+                last().target = (int) evaluate(arg(0));
+            }
+        }
+
+        private void none(Opcode opcode, int s)
+        {
+            expect(0);
+            add(opcode, op, 0, s, 0, 0);
+        }
+    }
+
+    /**
+     * A recursive descent parser for operand expressions, with C style precedence
+     */
+    private final class ExpressionParser
+    {
+        private final String input;
+        private int index;
+
+        ExpressionParser(String input)
+        {
+            this.input = input;
+        }
+
+        long parseOr()
+        {
+            long value = parseXor();
+            while (consume("|"))
+            {
+                value |= parseXor();
+            }
+            return value;
+        }
+
+        private long parseXor()
+        {
+            long value = parseAnd();
+            while (consume("^"))
+            {
+                value ^= parseAnd();
+            }
+            return value;
+        }
+
+        private long parseAnd()
+        {
+            long value = parseShift();
+            while (consume("&"))
+            {
+                value &= parseShift();
+            }
+            return value;
+        }
+
+        private long parseShift()
+        {
+            long value = parseSum();
+            while (true)
+            {
+                if (consume("<<"))
+                {
+                    value <<= parseSum();
+                }
+                else if (consume(">>"))
+                {
+                    value >>= parseSum();
+                }
+                else
+                {
+                    return value;
+                }
+            }
+        }
+
+        private long parseSum()
+        {
+            long value = parseProduct();
+            while (true)
+            {
+                if (consume("+"))
+                {
+                    value += parseProduct();
+                }
+                else if (consume("-"))
+                {
+                    value -= parseProduct();
+                }
+                else
+                {
+                    return value;
+                }
+            }
+        }
+
+        private long parseProduct()
+        {
+            long value = parseUnary();
+            while (true)
+            {
+                if (consume("*"))
+                {
+                    value *= parseUnary();
+                }
+                else if (consume("/"))
+                {
+                    long divisor = parseUnary();
+                    if (divisor == 0)
+                    {
+                        throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+                    }
+                    value /= divisor;
+                }
+                else
+                {
+                    return value;
+                }
+            }
+        }
+
+        private long parseUnary()
+        {
+            if (consume("-"))
+            {
+                return -parseUnary();
+            }
+            if (consume("+"))
+            {
+                return parseUnary();
+            }
+            if (consume("~"))
+            {
+                return ~parseUnary();
+            }
+            if (consume("("))
+            {
+                long value = parseOr();
+                if (!consume(")"))
+                {
+                    throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+                }
+                return value;
+            }
+            return parseAtom();
+        }
+
+        private long parseAtom()
+        {
+            skipSpaces();
+            if (index >= input.length())
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+            }
+            char c = input.charAt(index);
+            if (c == '\'')
+            {
+                // Character literal, i.e. 'a' or '\n'
+                int end = input.indexOf('\'', index + (input.startsWith("\\", index + 1) ? 3 : 2));
+                if (end == -1)
+                {
+                    throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+                }
+                String literal = input.substring(index + 1, end);
+                index = end + 1;
+                return literal.startsWith("\\") && literal.length() > 1 ? escape(literal.charAt(1)) : literal.charAt(0);
+            }
+
+            int start = index;
+            while (index < input.length() && (Character.isLetterOrDigit(input.charAt(index)) || input.charAt(index) == '_' || input.charAt(index) == '.' || input.charAt(index) == '$'))
+            {
+                index++;
+            }
+            String atom = input.substring(start, index);
+            if (atom.isEmpty())
+            {
+                throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+            }
+            if (Character.isDigit(atom.charAt(0)))
+            {
+                try
+                {
+                    if (atom.startsWith("0b") || atom.startsWith("0B"))
+                    {
+                        return Long.parseLong(atom.substring(2), 2);
+                    }
+                    return Long.decode(atom);
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new InvalidAssemblyException("simulator.error.invalid_expression", input);
+                }
+            }
+            return symbol(atom);
+        }
+
+        private boolean consume(String token)
+        {
+            skipSpaces();
+            if (input.startsWith(token, index))
+            {
+                index += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces()
+        {
+            while (index < input.length() && Character.isWhitespace(input.charAt(index)))
+            {
+                index++;
+            }
+        }
+    }
+}
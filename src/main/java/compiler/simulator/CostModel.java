@@ -0,0 +1,149 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
+
+/**
+ * A per-instruction cycle model, used by the {@link Profiler}. This is loaded from json, with the following fields:
+ * - default: the cycles taken by any instruction not in cycles
+ * - cycles: instruction name -> cycles taken, i.e. "div": 35
+ * - latency: instruction name -> extra cycles before the result can be used. An instruction which reads it any sooner will stall (i.e. load-use stalls)
+ * - taken_branch_penalty: the extra cycles taken by any branch, jump, call or return which doesn't fall through
+ *
+ * Instruction names are after pseudo instructions are replaced (i.e. movi is addi), high immediate variants are the same as the low ones (orhi is ori), and io variants are the same as the cached ones
+ * The default (assets/cost_model.json) is approximately a Nios-II/f core with hardware multiply and divide
+ */
+public final class CostModel
+{
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Map<String, String> PSEUDO = new HashMap<>();
+
+    static
+    {
+        // The same as the opcodes they are assembled to (see Assembler)
+        PSEUDO.put("mov", "add");
+        PSEUDO.put("nop", "add");
+        PSEUDO.put("movi", "addi");
+        PSEUDO.put("subi", "addi");
+        PSEUDO.put("movui", "ori");
+        PSEUDO.put("movhi", "ori");
+        PSEUDO.put("orhi", "ori");
+        PSEUDO.put("andhi", "andi");
+        PSEUDO.put("xorhi", "xori");
+        PSEUDO.put("ldwu", "ldw");
+        PSEUDO.put("cmpgt", "cmplt");
+        PSEUDO.put("cmple", "cmpge");
+        PSEUDO.put("cmpgtu", "cmpltu");
+        PSEUDO.put("cmpleu", "cmpgeu");
+        PSEUDO.put("cmpgti", "cmpgei");
+        PSEUDO.put("cmplei", "cmplti");
+        PSEUDO.put("cmpgtui", "cmpgeui");
+        PSEUDO.put("cmpleui", "cmpltui");
+    }
+    private static CostModel defaultModel;
+
+    public static CostModel getDefault()
+    {
+        if (defaultModel == null)
+        {
+            defaultModel = load(Helpers.loadResource("assets/cost_model.json"));
+        }
+        return defaultModel;
+    }
+
+    public static CostModel load(String json)
+    {
+        try
+        {
+            CostModel model = GSON.fromJson(json, CostModel.class);
+            if (model == null)
+            {
+                throw new InvalidAssemblyException("simulator.error.cost_model", "empty");
+            }
+            model.build();
+            return model;
+        }
+        catch (JsonParseException e)
+        {
+            throw new InvalidAssemblyException(e, "simulator.error.cost_model", e.getMessage());
+        }
+    }
+
+    @SerializedName("default")
+    private int defaultCycles = 1;
+    private Map<String, Integer> cycles = Collections.emptyMap();
+    private Map<String, Integer> latency = Collections.emptyMap();
+    @SerializedName("taken_branch_penalty")
+    private int takenBranchPenalty;
+
+    // Resolved by opcode, so there's no lookups while profiling
+    private transient int[] opcodeCycles, opcodeLatency;
+
+    private CostModel() {}
+
+    public int getTakenBranchPenalty()
+    {
+        return takenBranchPenalty;
+    }
+
+    /**
+     * Used by the compiler, before instructions are assembled, so pseudo instructions are resolved by name (i.e. movi is addi)
+     *
+     * @return the cycles taken by an instruction, by name
+     */
+    public int getCycles(String name)
+    {
+        return cycles == null ? defaultCycles : cycles.getOrDefault(resolve(name), defaultCycles);
+    }
+
+    /**
+     * @return the extra cycles before the result of an instruction can be used, by name, see {@link #getCycles(String)}
+     */
+    public int getLatency(String name)
+    {
+        return latency == null ? 0 : latency.getOrDefault(resolve(name), 0);
+    }
+
+    int getCycles(Instruction instruction)
+    {
+        return opcodeCycles[instruction.opcode.ordinal()];
+    }
+
+    int getLatency(Instruction instruction)
+    {
+        return opcodeLatency[instruction.opcode.ordinal()];
+    }
+
+    private String resolve(String name)
+    {
+        String real = name.endsWith("io") ? name.substring(0, name.length() - 2) : name;
+        return PSEUDO.getOrDefault(real, real);
+    }
+
+    private void build()
+    {
+        Opcode[] opcodes = Opcode.values();
+        opcodeCycles = new int[opcodes.length];
+        opcodeLatency = new int[opcodes.length];
+        for (Opcode opcode : opcodes)
+        {
+            String name = opcode.name().toLowerCase();
+            opcodeCycles[opcode.ordinal()] = cycles == null ? defaultCycles : cycles.getOrDefault(name, defaultCycles);
+            opcodeLatency[opcode.ordinal()] = latency == null ? 0 : latency.getOrDefault(name, 0);
+        }
+    }
+}
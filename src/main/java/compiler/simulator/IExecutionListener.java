@@ -0,0 +1,22 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+/**
+ * Used to observe execution in the {@link Simulator}, i.e. for profiling
+ */
+@FunctionalInterface
+public interface IExecutionListener
+{
+    /**
+     * Called after each instruction is executed
+     *
+     * @param instruction the instruction
+     * @param next        the address of the next instruction. For a taken branch this is the target
+     */
+    void onExecute(Instruction instruction, int next);
+}
@@ -0,0 +1,153 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+/**
+ * A single decoded instruction
+ * Register operands are indexes, i.e. add rD, rS, rT / addi rD, rS, IMM / ldw rD, IMM(rS) / stw rT, IMM(rS) / beq rS, rT, TARGET
+ */
+public final class Instruction
+{
+    final Opcode opcode;
+    final String name;
+    final int d, s, t;
+    final int imm;
+    final int address;
+    final int line;
+    final int sourceLine;
+    final String source;
+    int target;
+
+    Instruction(Opcode opcode, String name, int d, int s, int t, int imm, int address, int line, int sourceLine, String source)
+    {
+        this.opcode = opcode;
+        this.name = name;
+        this.d = d;
+        this.s = s;
+        this.t = t;
+        this.imm = imm;
+        this.address = address;
+        this.line = line;
+        this.sourceLine = sourceLine;
+        this.source = source;
+    }
+
+    /**
+     * @return the instruction name, after any pseudo instructions are replaced, i.e. movi -> addi
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getAddress()
+    {
+        return address;
+    }
+
+    /**
+     * @return the line in the assembly source that this instruction came from (starting at 1)
+     */
+    public int getLine()
+    {
+        return line;
+    }
+
+    /**
+     * @return the line in the Reduced Assembly source that this instruction was compiled from, or -1 if unknown
+     */
+    public int getSourceLine()
+    {
+        return sourceLine;
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public boolean isLoad()
+    {
+        return opcode.isLoad();
+    }
+
+    public boolean isStore()
+    {
+        return opcode.isStore();
+    }
+
+    /**
+     * @return true if this is any branch, jump, call or return
+     */
+    public boolean isBranch()
+    {
+        return opcode.ordinal() >= Opcode.BR.ordinal() && opcode != Opcode.BREAK;
+    }
+
+    public boolean isCall()
+    {
+        return opcode == Opcode.CALL || opcode == Opcode.CALLR;
+    }
+
+    /**
+     * @return the register written by this instruction, or 0 if none
+     */
+    public int getWrite()
+    {
+        if (opcode.isStore() || opcode.isConditionalBranch())
+        {
+            return 0;
+        }
+        switch (opcode)
+        {
+            case CALL:
+            case CALLR:
+                return 31;
+            case BR:
+            case RET:
+            case JMP:
+            case JMPI:
+            case BREAK:
+                return 0;
+            default:
+                return d;
+        }
+    }
+
+    /**
+     * @return true if this instruction reads the given register
+     */
+    public boolean reads(int register)
+    {
+        if (register == 0)
+        {
+            return false;
+        }
+        switch (opcode)
+        {
+            case RET:
+                return register == 31;
+            case CALLR:
+            case JMP:
+                return register == s;
+            case BR:
+            case CALL:
+            case JMPI:
+            case BREAK:
+                return false;
+            default:
+                // Immediate operations have an unused rT of zero
+                return register == s || register == t;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return source;
+    }
+}
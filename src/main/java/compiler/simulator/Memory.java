@@ -0,0 +1,87 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import compiler.util.InvalidAssemblyException;
+
+/**
+ * A flat, little endian memory. The DE0 SDRAM (the first 8 MB) is stored as an array of words
+ * Accesses outside of it (i.e. to memory mapped devices) are kept separately, and read back whatever was last written
+ */
+public final class Memory
+{
+    public static final int SIZE = 0x00800000;
+
+    private final int[] words = new int[SIZE >> 2];
+    private final Map<Integer, Integer> devices = new HashMap<>();
+
+    /**
+     * @param size the access size in bytes, either 1, 2 or 4
+     * @param signed if the value should be sign extended
+     */
+    public int load(int address, int size, boolean signed)
+    {
+        checkAlignment(address, size);
+        int word = address >= 0 && address < SIZE ? words[address >>> 2] : devices.getOrDefault(address & ~3, 0);
+        if (size == 4)
+        {
+            return word;
+        }
+        int value = word >>> ((address & 3) << 3);
+        if (size == 2)
+        {
+            return signed ? (short) value : value & 0xFFFF;
+        }
+        return signed ? (byte) value : value & 0xFF;
+    }
+
+    public void store(int address, int size, int value)
+    {
+        checkAlignment(address, size);
+        if (size == 4)
+        {
+            write(address, value);
+            return;
+        }
+        int shift = (address & 3) << 3, mask = (size == 2 ? 0xFFFF : 0xFF) << shift;
+        write(address & ~3, (load(address & ~3, 4, false) & ~mask) | ((value << shift) & mask));
+    }
+
+    /**
+     * Writes data from the assembly source, which doesn't need to be aligned
+     */
+    void initialize(int address, int size, int value)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            store(address + i, 1, value >>> (i << 3));
+        }
+    }
+
+    private void write(int address, int value)
+    {
+        if (address >= 0 && address < SIZE)
+        {
+            words[address >>> 2] = value;
+        }
+        else
+        {
+            devices.put(address & ~3, value);
+        }
+    }
+
+    private void checkAlignment(int address, int size)
+    {
+        if ((address & (size - 1)) != 0)
+        {
+            throw new InvalidAssemblyException("simulator.error.misaligned_access", address);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+/**
+ * The operations executed by the simulator
+ * Immediate operations (suffixed with I) use an already sign / zero extended and shifted immediate value, so i.e. ori, orhi, movui and movhi are all ORI
+ * Pseudo instructions are replaced with the equivalent real instruction(s) by the {@link Assembler}
+ */
+enum Opcode
+{
+    ADD, ADDI, SUB, MUL, MULI, MULXSS, MULXUU, MULXSU, DIV, DIVU,
+    AND, ANDI, OR, ORI, XOR, XORI, NOR,
+    SLL, SLLI, SRA, SRAI, SRL, SRLI, ROL, ROLI, ROR,
+    CMPEQ, CMPEQI, CMPNE, CMPNEI, CMPLT, CMPLTI, CMPGE, CMPGEI, CMPLTU, CMPLTUI, CMPGEU, CMPGEUI,
+    LDW, LDH, LDHU, LDB, LDBU, STW, STH, STB,
+    BR, BEQ, BNE, BLT, BGE, BLTU, BGEU, CALL, CALLR, RET, JMP, JMPI, BREAK;
+
+    boolean isLoad()
+    {
+        return this == LDW || this == LDH || this == LDHU || this == LDB || this == LDBU;
+    }
+
+    boolean isStore()
+    {
+        return this == STW || this == STH || this == STB;
+    }
+
+    boolean isConditionalBranch()
+    {
+        return this == BEQ || this == BNE || this == BLT || this == BGE || this == BLTU || this == BGEU;
+    }
+}
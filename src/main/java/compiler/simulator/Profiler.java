@@ -0,0 +1,185 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.*;
+
+/**
+ * Counts cycles (using a {@link CostModel}), instructions and calls while a program runs in the {@link Simulator}
+ * Functions are tracked with a shadow call stack: call pushes the label at the target, and ret pops it. Everything else is attributed to main
+ * Source lines are taken from "# line N" comments, which the compiler adds with the -g flag
+ */
+public final class Profiler implements IExecutionListener
+{
+    private final CostModel model;
+    private final Map<Integer, String> functionNames = new HashMap<>();
+    private final Map<String, Entry> functions = new LinkedHashMap<>();
+    private final Map<Integer, Entry> lines = new TreeMap<>();
+    private final Deque<Entry> callStack = new ArrayDeque<>();
+    private final long[] ready = new long[32];
+    private long cycles, instructions, stallCycles, branchCycles;
+
+    public Profiler(Simulator simulator, CostModel model)
+    {
+        this.model = model;
+        for (Map.Entry<String, Integer> label : simulator.getLabels().entrySet())
+        {
+            functionNames.putIfAbsent(label.getValue(), label.getKey());
+        }
+        Entry main = getOrCreate("main");
+        main.calls = 1;
+        callStack.push(main);
+        simulator.setListener(this);
+    }
+
+    @Override
+    public void onExecute(Instruction instruction, int next)
+    {
+        // Wait for the operands, then issue
+        long stall = Math.max(0, Math.max(ready[instruction.s], ready[instruction.t]) - cycles);
+        long cost = stall + model.getCycles(instruction);
+        if (instruction.isBranch() && next != instruction.address + 4)
+        {
+            cost += model.getTakenBranchPenalty();
+            branchCycles += model.getTakenBranchPenalty();
+        }
+        cycles += cost;
+        stallCycles += stall;
+        instructions++;
+
+        int write = instruction.getWrite();
+        if (write != 0)
+        {
+            ready[write] = cycles + model.getLatency(instruction);
+        }
+
+        callStack.peek().add(cost);
+        if (instruction.sourceLine != -1)
+        {
+            lines.computeIfAbsent(instruction.sourceLine, key -> new Entry()).add(cost);
+        }
+
+        if (instruction.isCall())
+        {
+            Entry callee = getOrCreate(functionNames.getOrDefault(next, String.format("0x%08X", next)));
+            callee.calls++;
+            callStack.push(callee);
+        }
+        else if (instruction.opcode == Opcode.JMPI && functionNames.containsKey(next) && callStack.size() > 1)
+        {
+            // A tail call replaces the caller, and returns straight to the caller's caller
+            Entry callee = getOrCreate(functionNames.get(next));
+            callee.calls++;
+            callStack.pop();
+            callStack.push(callee);
+        }
+        else if (instruction.opcode == Opcode.RET && callStack.size() > 1)
+        {
+            callStack.pop();
+        }
+    }
+
+    public long getCycles()
+    {
+        return cycles;
+    }
+
+    public long getInstructions()
+    {
+        return instructions;
+    }
+
+    /**
+     * @return the profile of a function (by label, or main), or null if it was never called
+     */
+    public Entry getFunction(String name)
+    {
+        return functions.get(name);
+    }
+
+    /**
+     * @return the profile of a source line, or null if nothing was executed from it
+     */
+    public Entry getLine(int line)
+    {
+        return lines.get(line);
+    }
+
+    public String report()
+    {
+        return report(null);
+    }
+
+    /**
+     * @param source the Reduced Assembly source, to show each line next to its profile (optional)
+     */
+    public String report(String source)
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Total: %d cycles, %d instructions (%.2f cycles per instruction)\n", cycles, instructions, instructions == 0 ? 0 : (double) cycles / instructions));
+        builder.append(String.format("Stalls: %d cycles, Taken Branches: %d cycles\n", stallCycles, branchCycles));
+
+        builder.append(String.format("\nFunctions:\n\t%-24s%10s%14s%14s%10s\n", "Name", "Calls", "Instructions", "Cycles", "% Cycles"));
+        for (Map.Entry<String, Entry> function : functions.entrySet())
+        {
+            Entry entry = function.getValue();
+            builder.append(String.format("\t%-24s%10d%14d%14d%9.1f%%\n", function.getKey(), entry.calls, entry.instructions, entry.cycles, percent(entry.cycles)));
+        }
+
+        if (!lines.isEmpty())
+        {
+            String[] sourceLines = source == null ? new String[0] : source.split("\n", -1);
+            builder.append(String.format("\nLines:\n\t%-8s%14s%14s%10s    %s\n", "Line", "Instructions", "Cycles", "% Cycles", "Source"));
+            for (Map.Entry<Integer, Entry> line : lines.entrySet())
+            {
+                Entry entry = line.getValue();
+                String text = line.getKey() <= sourceLines.length ? sourceLines[line.getKey() - 1].trim() : "";
+                builder.append(String.format("\t%-8d%14d%14d%9.1f%%    %s\n", line.getKey(), entry.instructions, entry.cycles, percent(entry.cycles), text));
+            }
+        }
+        return builder.toString();
+    }
+
+    private Entry getOrCreate(String function)
+    {
+        return functions.computeIfAbsent(function, key -> new Entry());
+    }
+
+    private double percent(long value)
+    {
+        return cycles == 0 ? 0 : 100.0 * value / cycles;
+    }
+
+    /**
+     * The profile of a single function or source line. For functions, this only counts instructions in the function itself, not any that it calls
+     */
+    public static final class Entry
+    {
+        private long calls, instructions, cycles;
+
+        public long getCalls()
+        {
+            return calls;
+        }
+
+        public long getInstructions()
+        {
+            return instructions;
+        }
+
+        public long getCycles()
+        {
+            return cycles;
+        }
+
+        private void add(long cost)
+        {
+            instructions++;
+            cycles += cost;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import compiler.util.InvalidAssemblyException;
+
+/**
+ * An instruction set simulator for the subset of Nios-II that the compiler emits
+ * This is used to validate the semantics of compiled programs, and to measure the cost of the generated code
+ *
+ * Execution starts at _start (or address zero), and stops when it reaches a branch to itself (i.e. _end: br _end), a break, or the step limit
+ */
+public final class Simulator
+{
+    public static final long DEFAULT_STEP_LIMIT = 10_000_000;
+
+    private final Memory memory = new Memory();
+    private final int[] registers = new int[32];
+    private final Instruction[] code;
+    private final Map<String, Integer> labels;
+    private IExecutionListener listener;
+    private int pc;
+    private long steps;
+    private boolean halted;
+
+    public Simulator(String assembly)
+    {
+        Assembler assembler = new Assembler(assembly, memory);
+        List<Instruction> instructions = assembler.getInstructions();
+
+        int size = 0;
+        for (Instruction instruction : instructions)
+        {
+            size = Math.max(size, (instruction.address >>> 2) + 1);
+        }
+        code = new Instruction[size];
+        for (Instruction instruction : instructions)
+        {
+            code[instruction.address >>> 2] = instruction;
+        }
+
+        labels = assembler.getLabels();
+        pc = labels.getOrDefault("_start", 0);
+    }
+
+    /**
+     * Runs until the program halts, or the default step limit
+     *
+     * @return true if the program halted
+     */
+    public boolean run()
+    {
+        return run(DEFAULT_STEP_LIMIT);
+    }
+
+    /**
+     * @param limit the maximum number of instructions to execute
+     * @return true if the program halted
+     */
+    public boolean run(long limit)
+    {
+        final int[] r = registers;
+        final long end = steps + limit;
+        while (!halted && steps < end)
+        {
+            Instruction ins = fetch(pc);
+            int next = pc + 4;
+            steps++;
+            try
+            {
+                switch (ins.opcode)
+                {
+                    case ADD:
+                        r[ins.d] = r[ins.s] + r[ins.t];
+                        break;
+                    case ADDI:
+                        r[ins.d] = r[ins.s] + ins.imm;
+                        break;
+                    case SUB:
+                        r[ins.d] = r[ins.s] - r[ins.t];
+                        break;
+                    case MUL:
+                        r[ins.d] = r[ins.s] * r[ins.t];
+                        break;
+                    case MULI:
+                        r[ins.d] = r[ins.s] * ins.imm;
+                        break;
+                    case MULXSS:
+                        r[ins.d] = (int) (((long) r[ins.s] * r[ins.t]) >> 32);
+                        break;
+                    case MULXUU:
+                        r[ins.d] = (int) (((r[ins.s] & 0xFFFFFFFFL) * (r[ins.t] & 0xFFFFFFFFL)) >>> 32);
+                        break;
+                    case MULXSU:
+                        r[ins.d] = (int) (((long) r[ins.s] * (r[ins.t] & 0xFFFFFFFFL)) >> 32);
+                        break;
+                    case DIV:
+                        r[ins.d] = r[ins.s] / divisor(r[ins.t]);
+                        break;
+                    case DIVU:
+                        r[ins.d] = Integer.divideUnsigned(r[ins.s], divisor(r[ins.t]));
+                        break;
+                    case AND:
+                        r[ins.d] = r[ins.s] & r[ins.t];
+                        break;
+                    case ANDI:
+                        r[ins.d] = r[ins.s] & ins.imm;
+                        break;
+                    case OR:
+                        r[ins.d] = r[ins.s] | r[ins.t];
+                        break;
+                    case ORI:
+                        r[ins.d] = r[ins.s] | ins.imm;
+                        break;
+                    case XOR:
+                        r[ins.d] = r[ins.s] ^ r[ins.t];
+                        break;
+                    case XORI:
+                        r[ins.d] = r[ins.s] ^ ins.imm;
+                        break;
+                    case NOR:
+                        r[ins.d] = ~(r[ins.s] | r[ins.t]);
+                        break;
+                    case SLL:
+                        r[ins.d] = r[ins.s] << r[ins.t];
+                        break;
+                    case SLLI:
+                        r[ins.d] = r[ins.s] << ins.imm;
+                        break;
+                    case SRA:
+                        r[ins.d] = r[ins.s] >> r[ins.t];
+                        break;
+                    case SRAI:
+                        r[ins.d] = r[ins.s] >> ins.imm;
+                        break;
+                    case SRL:
+                        r[ins.d] = r[ins.s] >>> r[ins.t];
+                        break;
+                    case SRLI:
+                        r[ins.d] = r[ins.s] >>> ins.imm;
+                        break;
+                    case ROL:
+                        r[ins.d] = Integer.rotateLeft(r[ins.s], r[ins.t]);
+                        break;
+                    case ROLI:
+                        r[ins.d] = Integer.rotateLeft(r[ins.s], ins.imm);
+                        break;
+                    case ROR:
+                        r[ins.d] = Integer.rotateRight(r[ins.s], r[ins.t]);
+                        break;
+                    case CMPEQ:
+                        r[ins.d] = r[ins.s] == r[ins.t] ? 1 : 0;
+                        break;
+                    case CMPEQI:
+                        r[ins.d] = r[ins.s] == ins.imm ? 1 : 0;
+                        break;
+                    case CMPNE:
+                        r[ins.d] = r[ins.s] != r[ins.t] ? 1 : 0;
+                        break;
+                    case CMPNEI:
+                        r[ins.d] = r[ins.s] != ins.imm ? 1 : 0;
+                        break;
+                    case CMPLT:
+                        r[ins.d] = r[ins.s] < r[ins.t] ? 1 : 0;
+                        break;
+                    case CMPLTI:
+                        r[ins.d] = r[ins.s] < ins.imm ? 1 : 0;
+                        break;
+                    case CMPGE:
+                        r[ins.d] = r[ins.s] >= r[ins.t] ? 1 : 0;
+                        break;
+                    case CMPGEI:
+                        r[ins.d] = r[ins.s] >= ins.imm ? 1 : 0;
+                        break;
+                    case CMPLTU:
+                        r[ins.d] = Integer.compareUnsigned(r[ins.s], r[ins.t]) < 0 ? 1 : 0;
+                        break;
+                    case CMPLTUI:
+                        r[ins.d] = Integer.compareUnsigned(r[ins.s], ins.imm) < 0 ? 1 : 0;
+                        break;
+                    case CMPGEU:
+                        r[ins.d] = Integer.compareUnsigned(r[ins.s], r[ins.t]) >= 0 ? 1 : 0;
+                        break;
+                    case CMPGEUI:
+                        r[ins.d] = Integer.compareUnsigned(r[ins.s], ins.imm) >= 0 ? 1 : 0;
+                        break;
+                    case LDW:
+                        r[ins.d] = memory.load(r[ins.s] + ins.imm, 4, false);
+                        break;
+                    case LDH:
+                        r[ins.d] = memory.load(r[ins.s] + ins.imm, 2, true);
+                        break;
+                    case LDHU:
+                        r[ins.d] = memory.load(r[ins.s] + ins.imm, 2, false);
+                        break;
+                    case LDB:
+                        r[ins.d] = memory.load(r[ins.s] + ins.imm, 1, true);
+                        break;
+                    case LDBU:
+                        r[ins.d] = memory.load(r[ins.s] + ins.imm, 1, false);
+                        break;
+                    case STW:
+                        memory.store(r[ins.s] + ins.imm, 4, r[ins.t]);
+                        break;
+                    case STH:
+                        memory.store(r[ins.s] + ins.imm, 2, r[ins.t]);
+                        break;
+                    case STB:
+                        memory.store(r[ins.s] + ins.imm, 1, r[ins.t]);
+                        break;
+                    case BR:
+                    case JMPI:
+                        if (ins.target == pc)
+                        {
+                            halted = true;
+                        }
+                        next = ins.target;
+                        break;
+                    case BEQ:
+                        next = r[ins.s] == r[ins.t] ? ins.target : next;
+                        break;
+                    case BNE:
+                        next = r[ins.s] != r[ins.t] ? ins.target : next;
+                        break;
+                    case BLT:
+                        next = r[ins.s] < r[ins.t] ? ins.target : next;
+                        break;
+                    case BGE:
+                        next = r[ins.s] >= r[ins.t] ? ins.target : next;
+                        break;
+                    case BLTU:
+                        next = Integer.compareUnsigned(r[ins.s], r[ins.t]) < 0 ? ins.target : next;
+                        break;
+                    case BGEU:
+                        next = Integer.compareUnsigned(r[ins.s], r[ins.t]) >= 0 ? ins.target : next;
+                        break;
+                    case CALL:
+                        r[31] = next;
+                        next = ins.target;
+                        break;
+                    case CALLR:
+                        int target = r[ins.s];
+                        r[31] = next;
+                        next = target;
+                        break;
+                    case RET:
+                    case JMP:
+                        next = r[ins.s];
+                        break;
+                    case BREAK:
+                        halted = true;
+                        break;
+                }
+            }
+            catch (InvalidAssemblyException e)
+            {
+                throw new InvalidAssemblyException(e, "simulator.error.runtime", pc, ins.source, e.getMessage());
+            }
+            r[0] = 0;
+            if (listener != null)
+            {
+                listener.onExecute(ins, next);
+            }
+            pc = next;
+        }
+        return halted;
+    }
+
+    public int getRegister(int register)
+    {
+        return registers[register];
+    }
+
+    public int getRegister(String name)
+    {
+        return registers[Assembler.register(name)];
+    }
+
+    public Memory getMemory()
+    {
+        return memory;
+    }
+
+    /**
+     * @return the address of a label, or null if it doesn't exist
+     */
+    public Integer getLabel(String name)
+    {
+        return labels.get(name);
+    }
+
+    /**
+     * @return all labels and their addresses, in the order they appear in the source
+     */
+    public Map<String, Integer> getLabels()
+    {
+        return Collections.unmodifiableMap(labels);
+    }
+
+    public void setListener(IExecutionListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public int getPC()
+    {
+        return pc;
+    }
+
+    /**
+     * @return the number of instructions executed
+     */
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    public boolean isHalted()
+    {
+        return halted;
+    }
+
+    /**
+     * @return a summary of the final state: any non-zero registers, and the value of every variable
+     */
+    public String report()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(halted ? String.format("Halted after %d instructions\n", steps) : String.format("Stopped after %d instructions, at 0x%08X\n", steps, pc));
+        builder.append("\nRegisters:\n");
+        for (int i = 1; i < 32; i++)
+        {
+            if (registers[i] != 0)
+            {
+                builder.append(String.format("\t%-16s%d (0x%08X)\n", Assembler.registerName(i), registers[i], registers[i]));
+            }
+        }
+
+        builder.append("\nVariables:\n");
+        for (Map.Entry<String, Integer> entry : labels.entrySet())
+        {
+            int address = entry.getValue();
+            if (!entry.getKey().startsWith("_") && ((address >>> 2) >= code.length || code[address >>> 2] == null))
+            {
+                int value = memory.load(address, (address & 3) == 0 ? 4 : 1, false);
+                builder.append(String.format("\t%-16s%d (0x%08X)\n", entry.getKey(), value, value));
+            }
+        }
+        return builder.toString();
+    }
+
+    private Instruction fetch(int address)
+    {
+        int index = address >>> 2;
+        if ((address & 3) != 0 || index >= code.length || code[index] == null)
+        {
+            throw new InvalidAssemblyException("simulator.error.invalid_pc", address);
+        }
+        return code[index];
+    }
+
+    private int divisor(int value)
+    {
+        if (value == 0)
+        {
+            throw new InvalidAssemblyException("simulator.error.division_by_zero");
+        }
+        return value;
+    }
+}
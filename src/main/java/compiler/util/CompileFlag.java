@@ -8,7 +8,20 @@ package compiler.util;
 
 public enum CompileFlag
 {
-    DEBUG_MODE;
+    DEBUG_MODE,
+    GLOBAL_POINTER,
+    LINE_INFO, // Adds "# line N" comments before the instructions from each source line
+    OPTIMIZE_NONE, // Optimization levels, see OptimizationLevel
+    OPTIMIZE_BASIC,
+    OPTIMIZE_FULL,
+    OPTIMIZE_SIZE,
+    UNROLL_2, // Unrolls counted loops by this factor, see LoopUnrolling
+    UNROLL_4,
+    UNROLL_8,
+    TIME_PASSES, // Prints the time and changes of each optimization pass
+    STATS, // Prints the time and allocations of each compile phase, see CompileMetrics
+    STATS_JSON,
+    ALL_WARNINGS; // Shows every warning, instead of only the first few of each (see Diagnostics)
 
     public static CompileFlag get(String input)
     {
@@ -17,6 +30,32 @@ public enum CompileFlag
             case "-d":
             case "-debug":
                 return DEBUG_MODE;
+            case "-gp":
+                return GLOBAL_POINTER;
+            case "-g":
+                return LINE_INFO;
+            case "-O0":
+                return OPTIMIZE_NONE;
+            case "-O1":
+                return OPTIMIZE_BASIC;
+            case "-O2":
+                return OPTIMIZE_FULL;
+            case "-Os":
+                return OPTIMIZE_SIZE;
+            case "-unroll2":
+                return UNROLL_2;
+            case "-unroll4":
+                return UNROLL_4;
+            case "-unroll8":
+                return UNROLL_8;
+            case "-time-passes":
+                return TIME_PASSES;
+            case "-stats":
+                return STATS;
+            case "-stats-json":
+                return STATS_JSON;
+            case "-all-warnings":
+                return ALL_WARNINGS;
             default:
                 return null;
         }
@@ -0,0 +1,118 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Timers and counters for each phase of a compile, shown with -stats (or -stats-json)
+ * Timers record the wall time, and the bytes allocated by the compiling thread where the JVM supports it
+ * Phases can be nested: "parse" includes every "keyword.*", and "build" includes "optimize"
+ */
+public final class CompileMetrics
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATIONS = THREADS instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported() && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemoryEnabled();
+
+    private final Map<String, Timer> timers = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    /**
+     * @return the start of a measurement, to pass to {@link #stop(String, long[])}
+     */
+    public long[] start()
+    {
+        return new long[] {System.nanoTime(), allocatedBytes()};
+    }
+
+    public void stop(String timer, long[] start)
+    {
+        timers.computeIfAbsent(timer, key -> new Timer()).add(System.nanoTime() - start[0], allocatedBytes() - start[1]);
+    }
+
+    public void count(String counter, long amount)
+    {
+        counters.merge(counter, amount, Long::sum);
+    }
+
+    /**
+     * @return the timer, or null if it was never used
+     */
+    public Timer getTimer(String timer)
+    {
+        return timers.get(timer);
+    }
+
+    public long getCounter(String counter)
+    {
+        return counters.getOrDefault(counter, 0L);
+    }
+
+    public String report()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Phases:\n\t%-36s%10s%14s%16s\n", "Name", "Count", "Time (ms)", "Allocated (KB)"));
+        for (Map.Entry<String, Timer> timer : timers.entrySet())
+        {
+            Timer entry = timer.getValue();
+            builder.append(String.format("\t%-36s%10d%14.3f%16s\n", timer.getKey(), entry.count, entry.nanos / 1e6, ALLOCATIONS ? String.format("%.1f", entry.bytes / 1024.0) : "-"));
+        }
+        builder.append(String.format("\nCounters:\n\t%-36s%10s\n", "Name", "Value"));
+        for (Map.Entry<String, Long> counter : counters.entrySet())
+        {
+            builder.append(String.format("\t%-36s%10d\n", counter.getKey(), counter.getValue()));
+        }
+        return builder.toString();
+    }
+
+    public String toJson()
+    {
+        return GSON.toJson(this);
+    }
+
+    private long allocatedBytes()
+    {
+        return ALLOCATIONS ? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    public static final class Timer
+    {
+        private long count, nanos, bytes;
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /**
+         * @return the bytes allocated, or zero if the JVM doesn't support measuring it
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        private void add(long nanos, long bytes)
+        {
+            this.count++;
+            this.nanos += nanos;
+            this.bytes += bytes;
+        }
+    }
+}
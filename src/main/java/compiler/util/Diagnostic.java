@@ -0,0 +1,100 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util;
+
+import compiler.AssemblyInterface;
+
+/**
+ * A single warning or error from a compile, see {@link Diagnostics}
+ * The message is only formatted when it is needed
+ */
+public final class Diagnostic
+{
+    private final Severity severity;
+    private final int lineNumber;
+    private final String line;
+    private final String key;
+    private final Object[] args;
+
+    public Diagnostic(Severity severity, int lineNumber, String line, String key, Object... args)
+    {
+        this.severity = severity;
+        this.lineNumber = lineNumber;
+        this.line = line;
+        this.key = key;
+        this.args = args;
+    }
+
+    public Severity getSeverity()
+    {
+        return severity;
+    }
+
+    public int getLineNumber()
+    {
+        return lineNumber;
+    }
+
+    /**
+     * @return the source line, or an empty string if it happened after the source was read
+     */
+    public String getLine()
+    {
+        return line;
+    }
+
+    /**
+     * @return the lang.json key of the message
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    public Object[] getArgs()
+    {
+        return args;
+    }
+
+    public String getMessage()
+    {
+        return AssemblyInterface.getLog().format(key, args);
+    }
+
+    /**
+     * @return the message as it is logged, including the severity and line
+     */
+    String format(Logger logger)
+    {
+        return logger.formatLine(severity.getKey(), logger.format(key, args), lineNumber, line);
+    }
+
+    @Override
+    public String toString()
+    {
+        return format(AssemblyInterface.getLog());
+    }
+
+    public enum Severity
+    {
+        WARNING("error.level.warn"),
+        ERROR("error.level.error"),
+        FATAL("error.level.fatal");
+
+        private final String key;
+
+        Severity(String key)
+        {
+            this.key = key;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Collects warnings and errors while compiling, and writes them on a background thread
+ * Messages are only formatted by the writer, and are written in batches through a buffer, so the compiler never waits on the console
+ * Each message (by its lang.json key) is only shown a limited number of times per compile, and the rest are counted and summarized at the end
+ * Call {@link #flush()} before anything else is written to the console, so the output stays in order. This also returns everything which was reported (including any over the limit)
+ */
+public final class Diagnostics
+{
+    public static final int DEFAULT_LIMIT = 10;
+
+    private final Logger logger;
+    private final Writer output;
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+    private final Map<String, Diagnostic> firstMessages = new HashMap<>();
+    private final List<Diagnostic> reported = new ArrayList<>();
+    private int limit = DEFAULT_LIMIT;
+    private Thread writer;
+
+    public Diagnostics(Logger logger)
+    {
+        this(logger, new OutputStreamWriter(System.out));
+    }
+
+    public Diagnostics(Logger logger, Writer output)
+    {
+        this.logger = logger;
+        this.output = new BufferedWriter(output);
+    }
+
+    /**
+     * @param limit the number of times each message is shown per compile, or zero for no limit
+     */
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+
+    /**
+     * @param message the lang.json key of the message
+     */
+    public void report(Diagnostic.Severity severity, int lineNumber, String line, String message, Object... args)
+    {
+        // Mutable arguments (i.e. a StringBuilder) need to be copied, as they are formatted later
+        Object[] copy = args.clone();
+        for (int i = 0; i < copy.length; i++)
+        {
+            if (copy[i] instanceof CharSequence)
+            {
+                copy[i] = copy[i].toString();
+            }
+        }
+        Diagnostic diagnostic = new Diagnostic(severity, lineNumber, line, message, copy);
+        reported.add(diagnostic);
+
+        int count = counts.merge(message, 1, Integer::sum);
+        if (limit > 0 && count > limit)
+        {
+            return;
+        }
+        firstMessages.putIfAbsent(message, diagnostic);
+        enqueue(new Message(diagnostic));
+    }
+
+    /**
+     * Summarizes any messages which were over the limit, and waits for everything to be written
+     * This also resets the limits, for the next compile
+     *
+     * @return everything reported since the last flush
+     */
+    public List<Diagnostic> flush()
+    {
+        for (Map.Entry<String, Integer> entry : counts.entrySet())
+        {
+            if (limit > 0 && entry.getValue() > limit)
+            {
+                enqueue(new Summary(entry.getValue() - limit, firstMessages.get(entry.getKey())));
+            }
+        }
+        counts.clear();
+        firstMessages.clear();
+        List<Diagnostic> result = new ArrayList<>(reported);
+        reported.clear();
+
+        if (writer != null)
+        {
+            Flush flush = new Flush();
+            queue.add(flush);
+            try
+            {
+                flush.latch.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return result;
+    }
+
+    private void enqueue(Message message)
+    {
+        if (writer == null)
+        {
+            writer = new Thread(this::write, "Diagnostics");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        queue.add(message);
+    }
+
+    private void write()
+    {
+        List<Message> batch = new ArrayList<>();
+        while (true)
+        {
+            try
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (Message message : batch)
+                {
+                    message.write(this);
+                }
+                output.flush();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+            finally
+            {
+                batch.forEach(Message::done);
+                batch.clear();
+            }
+        }
+    }
+
+    private static class Message
+    {
+        final Diagnostic diagnostic;
+
+        Message(Diagnostic diagnostic)
+        {
+            this.diagnostic = diagnostic;
+        }
+
+        void write(Diagnostics diagnostics) throws IOException
+        {
+            diagnostics.output.write(diagnostic.format(diagnostics.logger));
+            diagnostics.output.write(System.lineSeparator());
+        }
+
+        void done() {}
+    }
+
+    private static final class Summary extends Message
+    {
+        private final int suppressed;
+
+        Summary(int suppressed, Diagnostic first)
+        {
+            super(first);
+            this.suppressed = suppressed;
+        }
+
+        @Override
+        void write(Diagnostics diagnostics) throws IOException
+        {
+            diagnostics.output.write(diagnostics.logger.formatLine("error.level.suppressed", suppressed, diagnostics.logger.format(diagnostic.getKey(), diagnostic.getArgs())));
+            diagnostics.output.write(System.lineSeparator());
+        }
+    }
+
+    private static final class Flush extends Message
+    {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        Flush()
+        {
+            super(null);
+        }
+
+        @Override
+        void write(Diagnostics diagnostics) {}
+
+        @Override
+        void done()
+        {
+            latch.countDown();
+        }
+    }
+}
@@ -23,7 +23,7 @@ public final class Helpers
 {
     public static final Set<String> REGISTERS = new HashSet<>(Arrays.asList("r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7", "r8", "r9", "r10", "r11", "r12", "r13", "r14", "r15", "r16", "r17", "r18", "r19", "r20", "r21", "r22", "r23", "et", "bt", "gp", "sp", "fp", "ea", "sstatus", "ra", "status", "estatus", "bstatus", "ienable", "ipending"));
     public static final char[] DELIMITERS = {'<', '>', '?', '+', '-', '*', '/', '=', '&', '|', '^', '[', ']', '!', ':'};
-    public static final String[] OPERATORS = {"?>>", "?<=", "?>=", ">=", "<=", "?<", "?>", "==", "!=", "<<", ">>", "?^", "?|", "?&", "?/", ">", "<", "+", "-", "*", "/", "=", "&", "|", "^"};
+    public static final String[] OPERATORS = {"?>>", "?<=", "?>=", ">=", "<=", "?<", "?>", "==", "!=", "<<", ">>", "?^", "?|", "?&", "?/", "?%", ">", "<", "+", "-", "*", "/", "=", "&", "|", "^"};
     public static final String[] COMPARATORS = {"?<=", "?>=", "?<", "?>", "<=", ">=", "!=", "==", "<", ">"};
 
     public static String loadFile(String fileName)
@@ -88,6 +88,22 @@ public final class Helpers
         }
     }
 
+    /**
+     * Locals are compiled as virtual registers, numbered after the physical ones (r32, r33...), until they are allocated. See {@link compiler.util.optimizer.RegisterAllocator}
+     */
+    public static boolean isVirtualRegister(String reg)
+    {
+        return reg.matches("^r[0-9]{1,6}$") && Integer.parseInt(reg.substring(1)) >= 32;
+    }
+
+    /**
+     * @return true for any physical register, or a local's virtual register
+     */
+    public static boolean isRegister(String reg)
+    {
+        return REGISTERS.contains(reg) || isVirtualRegister(reg);
+    }
+
     public static boolean isValidName(String name)
     {
         return name.matches("^[a-zA-Z0-9_-]*$") && !"".equals(name);
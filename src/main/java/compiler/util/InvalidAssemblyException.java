@@ -10,13 +10,33 @@ import compiler.AssemblyInterface;
 
 public class InvalidAssemblyException extends RuntimeException
 {
+    private final String key;
+    private final Object[] args;
+
     public InvalidAssemblyException(String key, Object... args)
     {
         super(AssemblyInterface.getLog().format(key, args));
+        this.key = key;
+        this.args = args;
     }
 
     public InvalidAssemblyException(Throwable cause, String key, Object... args)
     {
         super(AssemblyInterface.getLog().format(key, args), cause);
+        this.key = key;
+        this.args = args;
+    }
+
+    /**
+     * @return the lang.json key of the message
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    public Object[] getArgs()
+    {
+        return args;
     }
 }
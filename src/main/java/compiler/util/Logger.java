@@ -30,6 +30,14 @@ public class Logger
         return String.format(keys.getOrDefault(key, key), args);
     }
 
+    /**
+     * @return the message as it would be logged, including the name
+     */
+    public String formatLine(String message, Object... args)
+    {
+        return name + format(message, args);
+    }
+
     public void log(String message, Object... args)
     {
         log(format(message, args));
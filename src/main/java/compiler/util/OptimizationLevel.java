@@ -0,0 +1,67 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util;
+
+import java.util.Set;
+
+/**
+ * Decides which {@link Optimizer} rewrites run, as a set of ignore flags (see {@link Optimizer#accept(java.util.List, String...)})
+ * The level is set for the whole program with a compile flag, and can be overridden per function, i.e. "function Hot -O2:"
+ */
+public enum OptimizationLevel
+{
+    NONE("-O0", CompileFlag.OPTIMIZE_NONE, "simplify_names", "branches", "constant_propagation", "copy_propagation", "common_subexpressions", "strength_reduction", "dead_stores", "loop_invariants", "induction_variables", "inline", "tail_calls", "scheduling", "unroll"), // Only what is required for legal assembly
+    BASIC("-O1", CompileFlag.OPTIMIZE_BASIC, "fixpoint", "strength_reduction", "inline", "unroll"), // A single round of each pass, without strength reduction, inlining or unrolling
+    FULL("-O2", CompileFlag.OPTIMIZE_FULL), // Everything, repeated until nothing changes (the default)
+    SIZE("-Os", CompileFlag.OPTIMIZE_SIZE, "strength_expansion", "induction_variables", "inline", "unroll"); // As -O2, but never replaces an instruction with a longer sequence
+
+    /**
+     * @return the level from a function declaration (i.e. -O1), or null if it doesn't exist
+     */
+    public static OptimizationLevel get(String name)
+    {
+        for (OptimizationLevel level : values())
+        {
+            if (level.name.equals(name))
+            {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * If more than one level is set, the first of -O0, -O1, -O2 and -Os is used
+     */
+    public static OptimizationLevel get(Set<CompileFlag> flags)
+    {
+        for (OptimizationLevel level : values())
+        {
+            if (flags.contains(level.flag))
+            {
+                return level;
+            }
+        }
+        return FULL;
+    }
+
+    private final String name;
+    private final CompileFlag flag;
+    private final String[] ignoreFlags;
+
+    OptimizationLevel(String name, CompileFlag flag, String... ignoreFlags)
+    {
+        this.name = name;
+        this.flag = flag;
+        this.ignoreFlags = ignoreFlags;
+    }
+
+    public String[] getIgnoreFlags()
+    {
+        return ignoreFlags;
+    }
+}
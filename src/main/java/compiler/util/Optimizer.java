@@ -6,256 +6,112 @@
 
 package compiler.util;
 
-import java.util.*;
-import java.util.function.Consumer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
-import compiler.component.ComponentLabel;
+import compiler.AssemblyCompiler;
 import compiler.component.IComponent;
+import compiler.util.optimizer.*;
 
-import static compiler.component.IComponent.Flag.LABEL;
-import static compiler.component.IComponent.Flag.TYPE;
-
+/**
+ * Registers the optimization passes, and runs them with a {@link PassManager}
+ * Passes can be turned off with ignore flags, which are how the {@link OptimizationLevel}s are defined
+ */
 public final class Optimizer
 {
-    private static final String[] ORIGINAL = {"blt", "bgt", "ble", "bge", "bne", "beq"};
-    private static final String[] INVERTED = {"bge", "ble", "bgt", "blt", "beq", "bne"};
+    /**
+     * Optimizes the body of main or a function, recording statistics with -time-passes and -stats
+     *
+     * @param prefix the prefix of labels in the body, for any functions which are inlined
+     * @param exit   the registers which are read after the end of the body, see {@link Liveness}
+     */
+    public static void accept(String function, String prefix, List<IComponent> base, OptimizationLevel level, Set<String> exit)
+    {
+        long[] start = AssemblyCompiler.INSTANCE.startMetric();
+        create(prefix, exit, level.getIgnoreFlags()).run(function, base, AssemblyCompiler.INSTANCE.getPassStatistics());
+        AssemblyCompiler.INSTANCE.stopMetric("optimize", start);
+    }
 
+    /**
+     * Every register is assumed to be read after the end of the body, and nothing is inlined
+     */
     public static void accept(List<IComponent> base, String... ignoreFlags)
+    {
+        create(null, Liveness.mainExit(), ignoreFlags).run("", base, null);
+    }
+
+    private static PassManager create(String prefix, Set<String> exit, String... ignoreFlags)
     {
         final List<String> flags = Arrays.asList(ignoreFlags);
-        final boolean simplifyNames = !flags.contains("simplify_names");
+        final boolean strengthExpansion = !flags.contains("strength_expansion");
         final boolean invertConditionals = !flags.contains("invert_conditionals");
+        final PassManager manager = new PassManager().setFixpoint(!flags.contains("fixpoint"));
 
-        Consumer<List<IComponent>> optimizer = list -> {};
-        do
+        // Inlining is first, so the inlined code is optimized with the rest of the body
+        if (prefix != null && !flags.contains("inline"))
         {
-            // Run the last found optimization
-            optimizer.accept(base);
-            // Reset the optimizer
-            optimizer = null;
-
-            // Search for potential optimizations between two statements
-            for (int i = 0; i < base.size() - 1; i++)
-            {
-                // Get components
-                final IComponent first = base.get(i), second = base.get(i + 1);
-                final int index = i;
-
-                // Multiple Consecutive Labels
-                if (first.getFlag(TYPE).equals("label") && second.getFlag(TYPE).equals("label"))
-                {
-                    optimizer = list -> {
-                        // Remove the second label and replace it with the first
-                        String labelToRemove = list.get(index + 1).getFlag(LABEL);
-                        String labelToReplace = list.get(index).getFlag(LABEL);
-                        list.remove(index + 1);
-                        for (IComponent cmp : list)
-                        {
-                            if (cmp.getFlag(LABEL).equals(labelToRemove))
-                            {
-                                cmp.setFlag(LABEL, labelToReplace);
-                            }
-                        }
-                    };
-                    break;
-                }
-
-                // Unreachable Statement
-                if (first.getFlag(TYPE).equals("break") && !second.getFlag(TYPE).equals("label"))
-                {
-                    optimizer = list -> list.remove(index + 1);
-                    break;
-                }
-
-                // Consecutive Break - Label
-                if ((first.getFlag(TYPE).equals("break") || first.getFlag(TYPE).equals("break_conditional")) && second.getFlag(TYPE).equals("label") && first.getFlag(LABEL).equals(second.getFlag(LABEL)))
-                {
-                    optimizer = list -> list.remove(index);
-                    break;
-                }
-
-                // Consecutive Label - Break
-                if (first.getFlag(TYPE).equals("label") && second.getFlag(TYPE).equals("break") && !first.getFlag(LABEL).equals(second.getFlag(LABEL)))
-                {
-                    optimizer = list -> {
-                        // Remove the first label and replace it with the second
-                        String labelToRemove = list.get(index).getFlag(LABEL);
-                        String labelToReplace = list.get(index + 1).getFlag(LABEL);
-                        list.remove(index);
-                        for (IComponent cmp : list)
-                        {
-                            if (cmp.getFlag(LABEL).equals(labelToRemove))
-                            {
-                                cmp.setFlag(LABEL, labelToReplace);
-                            }
-                        }
-                    };
-                    break;
-                }
-            }
-
-            // Search for various optimizations based on single statements
-            for (int i = 0; i < base.size(); i++)
-            {
-                String label = base.get(i).getFlag(LABEL);
-                if (!label.equals(""))
-                {
-                    // Count instances of label appearance
-                    long count = base.stream().filter(x -> x.getFlag(LABEL).equals(label)).count();
-                    if (count <= 1)
-                    {
-                        final int index = i;
-                        optimizer = list -> list.remove(index);
-                        break;
-                    }
-                }
-            }
-
-            // Search for potential optimizations in three statements
-            if (invertConditionals)
-            {
-                for (int i = 0; i < base.size() - 2; i++)
-                {
-                    final IComponent first = base.get(i), second = base.get(i + 1), third = base.get(i + 2);
-                    final int index = i;
-
-                    if (first.getFlag(TYPE).equals("break_conditional") && second.getFlag(TYPE).equals("break") && third.getFlag(TYPE).equals("label") && first.getFlag(LABEL).equals(third.getFlag(LABEL)))
-                    {
-                        // Original Statements:
-                        // br X to A
-                        // br to B
-                        // label A
-                        // Replace with:
-                        // br not X to B
-                        // label A
-                        IComponent replacement = invertBreak(first, second.getFlag(LABEL));
-                        optimizer = list -> {
-                            list.set(index, replacement);
-                            list.remove(index + 1);
-                        };
-                        break;
-                    }
-                }
-            }
-
-            // Repeat until no possible optimizations are found
-        } while (optimizer != null);
+            manager.first(IPass.of("inline", base -> Inliner.accept(base, prefix, exit)));
+        }
 
-        // Single Time Optimizations - Label Name Simplification
-        if (simplifyNames)
+        // Repeat until none of the constant / copy propagation, common subexpressions, strength reduction, branch / label optimizations, dead store elimination, loop invariant code motion or induction variables find anything
+        if (!flags.contains("constant_propagation"))
         {
-            LabelMap labels = new LabelMap();
-            for (IComponent cmp : base)
-            {
-                String label = cmp.getFlag(LABEL);
-                if (!label.equals(""))
-                {
-                    labels.add(label);
-                }
-            }
-
-            labels.build();
-
-            for (IComponent cmp : base)
-            {
-                String label = cmp.getFlag(LABEL);
-                if (!label.equals(""))
-                {
-                    cmp.setFlag(LABEL, labels.get(label));
-                }
-            }
+            manager.repeat(IPass.of("constant_propagation", ConstantPropagation::accept));
         }
-    }
-
-    private static IComponent invertBreak(IComponent original, String label)
-    {
-        // \tb??? <spaces> rX, rY, label
-        String[] parts = original.compile().replaceAll("\\s+", " ").split(" ");
-        String newBreak = "";
-        for (int i = 0; i < ORIGINAL.length; i++)
+        if (!flags.contains("copy_propagation"))
         {
-            if (parts[1].equals(ORIGINAL[i]))
-            {
-                newBreak = INVERTED[i];
-                break;
-            }
+            manager.repeat(IPass.of("copy_propagation", CopyPropagation::accept));
         }
-        return new ComponentLabel(IComponent.format(newBreak, parts[2] + " " + parts[3] + " %s\n"), label).setFlag(TYPE, "break_conditional");
-    }
-
-    private Optimizer() {}
-
-    private static final class LabelMap
-    {
-        private final Map<String, Map<Integer, List<String>>> labels = new HashMap<>();
-        private final Set<String> allLabels = new HashSet<>();
-        private final Map<String, String> simplifiedLabels = new HashMap<>();
-        private String functionName = null;
-
-        LabelMap()
+        if (!flags.contains("common_subexpressions"))
         {
-            labels.put("while", new HashMap<>());
-            labels.put("if", new HashMap<>());
-            labels.put("else", new HashMap<>());
+            manager.repeat(IPass.of("common_subexpressions", ValueNumbering::accept));
         }
-
-        void add(String label)
+        if (!flags.contains("strength_reduction"))
         {
-            if (allLabels.contains(label))
-            {
-                return;
-            }
-            allLabels.add(label);
-
-            // functionName_loopType##_sub_truthy
-            // Note _sub_truthy might not exist for simple conditionals
-            String[] args = label.split("_");
-            if (functionName == null)
-            {
-                functionName = args[0];
-            }
-
-            Map<Integer, List<String>> map = labels.get(args[1].replaceAll("[0-9]", ""));
-            int count = Integer.valueOf(args[1].replaceAll("[A-Za-z]", ""));
-            if (!map.containsKey(count))
-            {
-                map.put(count, new ArrayList<>());
-            }
-            if (args.length <= 2)
-            {
-                map.get(count).add("");
-            }
-            else
-            {
-                map.get(count).add("_" + args[2] + "_" + args[3]);
-            }
+            manager.repeat(IPass.of("strength_reduction", base -> StrengthReduction.accept(base, strengthExpansion)));
+        }
+        if (!flags.contains("branches"))
+        {
+            manager.repeat(IPass.of("branches", base -> BranchOptimization.accept(base, invertConditionals)));
+        }
+        if (!flags.contains("dead_stores"))
+        {
+            manager.repeat(IPass.of("dead_stores", base -> DeadStoreElimination.accept(base, exit)));
+        }
+        if (!flags.contains("loop_invariants"))
+        {
+            manager.repeat(IPass.of("loop_invariants", base -> LoopInvariantMotion.accept(base, exit)));
+        }
+        if (!flags.contains("induction_variables"))
+        {
+            manager.repeat(IPass.of("induction_variables", base -> InductionVariables.accept(base, exit)));
         }
 
-        void build()
+        // Unrolling is after, so induction variables and loop invariants are found in the loop before the counter update is copied. The above are then repeated over the copies
+        final int factor = AssemblyCompiler.INSTANCE.getUnrollFactor();
+        if (prefix != null && factor > 1 && !flags.contains("unroll"))
         {
-            for (Map.Entry<String, Map<Integer, List<String>>> e1 : labels.entrySet())
-            {
-                String loopType = e1.getKey();
-                for (Map.Entry<Integer, List<String>> e2 : e1.getValue().entrySet())
-                {
-                    int count = e2.getKey();
-                    List<String> suffixes = e2.getValue();
-                    suffixes.sort(String.CASE_INSENSITIVE_ORDER);
+            manager.rerun(IPass.of("unroll", base -> LoopUnrolling.accept(base, factor)));
+        }
 
-                    for (int i = 0; i < suffixes.size(); i++)
-                    {
-                        String suffix = i == 0 ? "" : Helpers.alphabetSuffix(i);
-                        String oldLabel = String.format("%s_%s%d%s", functionName, loopType, count, suffixes.get(i));
-                        String newLabel = String.format("%s_%s%d%s", functionName, loopType, count, suffix);
-                        simplifiedLabels.put(oldLabel, newLabel);
-                    }
-                }
-            }
+        // Required - constants created by the above need to be legal instructions
+        manager.then(IPass.of("immediate_encoding", ImmediateEncoding::accept));
+        manager.then(IPass.of("data_layout", base -> DataLayout.accept(base, AssemblyCompiler.INSTANCE.getSmallData())));
+
+        // Scheduling needs the final instructions, so it runs after they are made legal
+        if (!flags.contains("scheduling"))
+        {
+            manager.then(IPass.of("scheduling", InstructionScheduling::accept));
         }
 
-        String get(String label)
+        // Single Time Optimizations - Label Name Simplification
+        if (!flags.contains("simplify_names"))
         {
-            return simplifiedLabels.get(label);
+            manager.then(IPass.of("simplify_names", LabelSimplification::accept));
         }
+        return manager;
     }
+
+    private Optimizer() {}
 }
@@ -9,16 +9,19 @@ package compiler.util.conditional;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import compiler.component.Components;
 import compiler.component.IComponent;
+import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
 import compiler.util.pattern.Patterns;
 
-import static compiler.util.Helpers.REGISTERS;
-
 public class ConditionalBase extends AbstractConditional
 {
+    private static final Pattern VIRTUAL_REGISTER = Pattern.compile("^r[0-9]+");
+
     private final String name;
     private final List<IComponent> components;
 
@@ -26,8 +29,8 @@ public class ConditionalBase extends AbstractConditional
     {
         this.name = name;
 
-        String lhs = Patterns.NEXT_REGISTER.apply(source).getString();
-        if (!REGISTERS.contains(lhs))
+        String lhs = nextRegister(source);
+        if (!Helpers.isRegister(lhs))
         {
             throw new InvalidAssemblyException("error.message.unknown_register", lhs);
         }
@@ -39,7 +42,7 @@ public class ConditionalBase extends AbstractConditional
         }
 
         String rhs = source.toString();
-        if (!REGISTERS.contains(rhs))
+        if (!Helpers.isRegister(rhs))
         {
             throw new InvalidAssemblyException("error.message.unknown_register", rhs);
         }
@@ -62,4 +65,17 @@ public class ConditionalBase extends AbstractConditional
     {
         return name;
     }
+
+    private static String nextRegister(StringBuilder source)
+    {
+        // Virtual registers (i.e. r32) aren't in the set of registers, and would otherwise match as r3
+        Matcher matcher = VIRTUAL_REGISTER.matcher(source);
+        if (matcher.lookingAt() && Helpers.isVirtualRegister(matcher.group()))
+        {
+            String reg = matcher.group();
+            source.delete(0, matcher.end());
+            return reg;
+        }
+        return Patterns.NEXT_REGISTER.apply(source).getString();
+    }
 }
@@ -0,0 +1,25 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.events;
+
+import jdk.jfr.*;
+
+/**
+ * A phase of {@link compiler.AssemblyCompiler#compile(String, java.util.Set)}: normalize, parse or build
+ * Compiler events are disabled by default. To record them, enable them in the recording settings (i.e. compiler.Phase#enabled=true)
+ * Fields are only set when the event will be committed (see {@link Event#shouldCommit()}), so they cost nothing when disabled
+ */
+@Name("compiler.Phase")
+@Label("Compile Phase")
+@Category("Assembly Compiler")
+@Enabled(false)
+@StackTrace(false)
+public class CompilePhaseEvent extends Event
+{
+    @Label("Phase")
+    public String phase;
+}
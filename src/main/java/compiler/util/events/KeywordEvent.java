@@ -0,0 +1,26 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.events;
+
+import jdk.jfr.*;
+
+/**
+ * A single {@link compiler.keyword.IKeyword#apply} call, with the source line it was compiling
+ */
+@Name("compiler.Keyword")
+@Label("Keyword")
+@Category("Assembly Compiler")
+@Enabled(false)
+@StackTrace(false)
+public class KeywordEvent extends Event
+{
+    @Label("Keyword")
+    public String keyword;
+
+    @Label("Line")
+    public int line;
+}
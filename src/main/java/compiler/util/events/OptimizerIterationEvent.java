@@ -0,0 +1,32 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.events;
+
+import jdk.jfr.*;
+
+/**
+ * A single iteration of the repeated optimizer passes over main or a function, see {@link compiler.util.optimizer.PassManager}
+ */
+@Name("compiler.OptimizerIteration")
+@Label("Optimizer Iteration")
+@Category("Assembly Compiler")
+@Enabled(false)
+@StackTrace(false)
+public class OptimizerIterationEvent extends Event
+{
+    @Label("Function")
+    public String function;
+
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Components")
+    public int components;
+
+    @Label("Changed")
+    public boolean changed;
+}
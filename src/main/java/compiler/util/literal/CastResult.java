@@ -70,4 +70,25 @@ public final class CastResult
     {
         return "ld" + (byteFlag ? "b" : "w") + (unsignedFlag ? "u" : "") + (ioFlag ? "io" : "");
     }
+
+    /**
+     * @return the width in bytes of a load or store made by {@link #makeLoad()} or {@link #makeStore()}, i.e. ldbu -> 1
+     */
+    public static int getWidth(String opcode)
+    {
+        return opcode.startsWith("b", 2) ? 1 : (opcode.startsWith("h", 2) ? 2 : 4);
+    }
+
+    public static boolean isUnsigned(String opcode)
+    {
+        return opcode.startsWith("u", 3);
+    }
+
+    /**
+     * Accesses to devices can't be removed or reordered, as reading or writing might have side effects
+     */
+    public static boolean isIO(String opcode)
+    {
+        return opcode.endsWith("io");
+    }
 }
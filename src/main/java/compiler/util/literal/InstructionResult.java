@@ -0,0 +1,197 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.literal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+
+/**
+ * This represents a single compiled assembly instruction, split into an opcode and arguments
+ * i.e. "\tldw             r3, 4(r2)\n" -> opcode = ldw, args = [r3, 4(r2)]
+ * Labels, comments and directives are not instructions, and have an empty opcode
+ */
+public final class InstructionResult
+{
+    private final String opcode;
+    private final List<String> args;
+
+    public InstructionResult(IComponent component)
+    {
+        this(component.compile());
+    }
+
+    public InstructionResult(String input)
+    {
+        String line = input.trim();
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith(".") || line.endsWith(":") || line.contains("\n"))
+        {
+            this.opcode = "";
+            this.args = Collections.emptyList();
+            return;
+        }
+
+        int index = line.indexOf(' ');
+        if (index == -1)
+        {
+            this.opcode = line;
+            this.args = Collections.emptyList();
+            return;
+        }
+
+        this.opcode = line.substring(0, index);
+        this.args = new ArrayList<>();
+
+        // Split on commas, ignoring any inside character literals
+        StringBuilder arg = new StringBuilder();
+        boolean inQuote = false;
+        for (char c : line.substring(index + 1).toCharArray())
+        {
+            if (c == '\'')
+            {
+                inQuote = !inQuote;
+            }
+            if (c == ',' && !inQuote)
+            {
+                args.add(arg.toString().trim());
+                arg = new StringBuilder();
+            }
+            else
+            {
+                arg.append(c);
+            }
+        }
+        args.add(arg.toString().trim());
+    }
+
+    public boolean isInstruction()
+    {
+        return !opcode.isEmpty();
+    }
+
+    public String getOpcode()
+    {
+        return opcode;
+    }
+
+    public List<String> getArgs()
+    {
+        return args;
+    }
+
+    public String getArg(int index)
+    {
+        return index < args.size() ? args.get(index) : "";
+    }
+
+    public boolean isLoad()
+    {
+        return opcode.startsWith("ld");
+    }
+
+    public boolean isStore()
+    {
+        return opcode.startsWith("st");
+    }
+
+    public boolean isBranch()
+    {
+        return opcode.startsWith("b") || opcode.equals("call") || opcode.equals("ret") || opcode.startsWith("jmp");
+    }
+
+    /**
+     * @return the base register of a memory operand, i.e. OFF(rY) -> rY, or "" if this is not a load or store
+     */
+    public String getBase()
+    {
+        String mem = getArg(1);
+        int index = mem.lastIndexOf('(');
+        return (isLoad() || isStore()) && index != -1 && mem.endsWith(")") ? mem.substring(index + 1, mem.length() - 1) : "";
+    }
+
+    /**
+     * @return the offset of a memory operand, i.e. OFF(rY) -> OFF, or "" if this is not a load or store
+     */
+    public String getOffset()
+    {
+        String mem = getArg(1);
+        int index = mem.lastIndexOf('(');
+        return (isLoad() || isStore()) && index != -1 ? mem.substring(0, index) : "";
+    }
+
+    /**
+     * @return the register written by this instruction, or "" if it doesn't write to a register
+     */
+    public String getWrite()
+    {
+        if (!isInstruction() || isStore())
+        {
+            return "";
+        }
+        if (opcode.equals("call") || opcode.equals("callr"))
+        {
+            return "ra";
+        }
+        if (isBranch())
+        {
+            return "";
+        }
+        String reg = getArg(0);
+        return Helpers.isRegister(reg) ? reg : "";
+    }
+
+    /**
+     * Note: calls are assumed to read all registers, as any of them could be arguments
+     *
+     * @return the set of registers read by this instruction
+     */
+    public Set<String> getReads()
+    {
+        Set<String> reads = new LinkedHashSet<>();
+        if (!isInstruction())
+        {
+            return reads;
+        }
+        if (opcode.equals("call") || opcode.equals("callr"))
+        {
+            reads.addAll(Helpers.REGISTERS);
+            return reads;
+        }
+        if (opcode.equals("ret"))
+        {
+            reads.add("ra");
+            return reads;
+        }
+        if (isLoad())
+        {
+            reads.add(getBase());
+        }
+        else if (isStore())
+        {
+            reads.add(getArg(0));
+            reads.add(getBase());
+        }
+        else
+        {
+            // Branches read every argument, other instructions read every argument after the destination
+            for (int i = opcode.startsWith("b") ? 0 : 1; i < args.size(); i++)
+            {
+                if (Helpers.isRegister(args.get(i)))
+                {
+                    reads.add(args.get(i));
+                }
+            }
+        }
+        reads.remove("");
+        return reads;
+    }
+}
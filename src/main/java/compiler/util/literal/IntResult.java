@@ -23,18 +23,18 @@ public class IntResult
         }
 
         // Match character literals
-        if (input.startsWith("\'") && input.endsWith("\'"))
+        if (input.length() >= 3 && input.startsWith("\'") && input.endsWith("\'"))
         {
             this.validLiteral = true;
-            this.value = (int) input.charAt(2) == '\\' ? input.charAt(3) : input.charAt(2);
+            this.value = input.charAt(1) == '\\' ? escapeChar(input.charAt(2)) : input.charAt(1);
             return;
         }
 
-        // Match integer literals
-        int value;
+        // Match integer literals (32 bit, either signed or unsigned)
+        long value;
         try
         {
-            value = Integer.decode(var);
+            value = Long.decode(var);
         }
         catch (NumberFormatException e)
         {
@@ -44,10 +44,35 @@ public class IntResult
             return;
         }
 
-        this.value = value;
+        if (value < Integer.MIN_VALUE || value > 0xFFFFFFFFL)
+        {
+            // Invalid Literal
+            this.value = 0;
+            this.validLiteral = false;
+            return;
+        }
+
+        this.value = (int) value;
         this.validLiteral = true;
     }
 
+    private static int escapeChar(char c)
+    {
+        switch (c)
+        {
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case '0':
+                return 0;
+            default:
+                return c;
+        }
+    }
+
     public boolean validLiteral()
     {
         return validLiteral;
@@ -0,0 +1,171 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import compiler.component.ComponentLabel;
+import compiler.component.Components;
+import compiler.component.IComponent;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Removes redundant branches and labels, and inverts conditional branches over a single branch
+ *
+ * labelA: labelB:                 ->      labelA:
+ * br labelA; labelA:              ->      labelA:
+ * beq r2, r3, labelA; br labelB; labelA:  ->  bne r2, r3, labelB; labelA:
+ *
+ * Labels which are no longer used are removed, as is anything unreachable after an unconditional branch
+ */
+public final class BranchOptimization
+{
+    private static final String[] ORIGINAL = {"blt", "bgt", "ble", "bge", "bne", "beq", "bltu", "bgtu", "bleu", "bgeu"};
+    private static final String[] INVERTED = {"bge", "ble", "bgt", "blt", "beq", "bne", "bgeu", "bleu", "bgtu", "bltu"};
+
+    public static boolean accept(List<IComponent> base, boolean invertConditionals)
+    {
+        boolean changed = false;
+        Consumer<List<IComponent>> optimizer = list -> {};
+        do
+        {
+            // Run the last found optimization
+            optimizer.accept(base);
+            // Reset the optimizer
+            optimizer = null;
+
+            // Search for potential optimizations between two statements
+            for (int i = 0; i < base.size() - 1; i++)
+            {
+                // Get components
+                final IComponent first = base.get(i), second = base.get(i + 1);
+                final int index = i;
+
+                // Multiple Consecutive Labels
+                if (first.getFlag(TYPE).equals("label") && second.getFlag(TYPE).equals("label"))
+                {
+                    optimizer = list -> {
+                        // Remove the second label and replace it with the first
+                        String labelToRemove = list.get(index + 1).getFlag(LABEL);
+                        String labelToReplace = list.get(index).getFlag(LABEL);
+                        list.remove(index + 1);
+                        for (IComponent cmp : list)
+                        {
+                            if (cmp.getFlag(LABEL).equals(labelToRemove))
+                            {
+                                cmp.setFlag(LABEL, labelToReplace);
+                            }
+                        }
+                    };
+                    break;
+                }
+
+                // Unreachable Statement
+                if (first.getFlag(TYPE).equals("break") && !second.getFlag(TYPE).equals("label"))
+                {
+                    optimizer = list -> list.remove(index + 1);
+                    break;
+                }
+
+                // Consecutive Break - Label
+                if ((first.getFlag(TYPE).equals("break") || first.getFlag(TYPE).equals("break_conditional")) && second.getFlag(TYPE).equals("label") && first.getFlag(LABEL).equals(second.getFlag(LABEL)))
+                {
+                    optimizer = list -> list.remove(index);
+                    break;
+                }
+
+                // Consecutive Label - Break
+                if (first.getFlag(TYPE).equals("label") && second.getFlag(TYPE).equals("break") && !first.getFlag(LABEL).equals(second.getFlag(LABEL)))
+                {
+                    optimizer = list -> {
+                        // Remove the first label and replace it with the second
+                        String labelToRemove = list.get(index).getFlag(LABEL);
+                        String labelToReplace = list.get(index + 1).getFlag(LABEL);
+                        list.remove(index);
+                        for (IComponent cmp : list)
+                        {
+                            if (cmp.getFlag(LABEL).equals(labelToRemove))
+                            {
+                                cmp.setFlag(LABEL, labelToReplace);
+                            }
+                        }
+                    };
+                    break;
+                }
+            }
+
+            // Search for various optimizations based on single statements
+            for (int i = 0; i < base.size(); i++)
+            {
+                String label = base.get(i).getFlag(LABEL);
+                if (!label.equals(""))
+                {
+                    // Count instances of label appearance
+                    long count = base.stream().filter(x -> x.getFlag(LABEL).equals(label)).count();
+                    if (count <= 1)
+                    {
+                        final int index = i;
+                        optimizer = list -> list.remove(index);
+                        break;
+                    }
+                }
+            }
+
+            // Search for potential optimizations in three statements
+            if (invertConditionals)
+            {
+                for (int i = 0; i < base.size() - 2; i++)
+                {
+                    final IComponent first = base.get(i), second = base.get(i + 1), third = base.get(i + 2);
+                    final int index = i;
+
+                    if (first.getFlag(TYPE).equals("break_conditional") && second.getFlag(TYPE).equals("break") && third.getFlag(TYPE).equals("label") && first.getFlag(LABEL).equals(third.getFlag(LABEL)))
+                    {
+                        // Original Statements:
+                        // br X to A
+                        // br to B
+                        // label A
+                        // Replace with:
+                        // br not X to B
+                        // label A
+                        IComponent replacement = Components.inherit(first, invertBreak(first, second.getFlag(LABEL)));
+                        optimizer = list -> {
+                            list.set(index, replacement);
+                            list.remove(index + 1);
+                        };
+                        break;
+                    }
+                }
+            }
+
+            // Repeat until no possible optimizations are found
+            changed |= optimizer != null;
+        } while (optimizer != null);
+        return changed;
+    }
+
+    private static IComponent invertBreak(IComponent original, String label)
+    {
+        // \tb??? <spaces> rX, rY, label
+        String[] parts = original.compile().replaceAll("\\s+", " ").split(" ");
+        String newBreak = "";
+        for (int i = 0; i < ORIGINAL.length; i++)
+        {
+            if (parts[1].equals(ORIGINAL[i]))
+            {
+                newBreak = INVERTED[i];
+                break;
+            }
+        }
+        return new ComponentLabel(IComponent.format(newBreak, parts[2] + " " + parts[3] + " %s\n"), label).setFlag(TYPE, "break_conditional");
+    }
+
+    private BranchOptimization() {}
+}
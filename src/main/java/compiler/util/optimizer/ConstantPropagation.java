@@ -0,0 +1,199 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Constant folding and propagation over straight line code
+ *
+ * r3 = 4; r3 *= 8; r3 += 2        ->      movi r3, 34
+ * r4 = 3; r5 = r6 + r4            ->      movi r4, 3; addi r5, r6, 3
+ * r4 = 0; r5 = r6 - r4            ->      movi r4, 0; mov r5, r6
+ * r4 = 3; if r4 > r0: ...         ->      movi r4, 3; ...
+ *
+ * Instructions which write to r0 are left alone, as they are (intentional) no-ops
+ */
+public final class ConstantPropagation
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        boolean changed = false;
+        RegisterValues values = new RegisterValues();
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            if (cmp.getFlag(TYPE).equals("label"))
+            {
+                // Values are unknown at any possible jump target
+                values.clear();
+                continue;
+            }
+
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (!instruction.isInstruction())
+            {
+                continue;
+            }
+
+            if (cmp.getFlag(TYPE).equals("break_conditional"))
+            {
+                // Fold conditional branches with known operands into either a break, or nothing
+                Integer a = values.get(instruction.getArg(0)), b = values.get(instruction.getArg(1));
+                Boolean taken = a == null || b == null || !hasKnownOperand(instruction, values) ? null : Instructions.evaluateBranch(instruction.getOpcode(), a, b);
+                if (taken != null)
+                {
+                    if (taken)
+                    {
+                        base.set(i, Components.inherit(cmp, Components.br(cmp.getFlag(LABEL))));
+                    }
+                    else
+                    {
+                        base.remove(i--);
+                    }
+                    changed = true;
+                }
+                continue;
+            }
+
+            IComponent replacement = fold(instruction, values);
+            if (replacement != null)
+            {
+                base.set(i, Components.inherit(cmp, replacement));
+                instruction = new InstructionResult(replacement);
+                changed = true;
+            }
+            values.update(instruction);
+        }
+        return removeOverwrittenConstants(base) || changed;
+    }
+
+    private static IComponent fold(InstructionResult instruction, RegisterValues values)
+    {
+        String op = instruction.getOpcode(), rX = instruction.getWrite();
+        if (rX.equals("") || rX.equals("r0") || instruction.isLoad() || instruction.isBranch() || op.startsWith("mov") && !op.equals("mov"))
+        {
+            return null;
+        }
+
+        if (!hasKnownOperand(instruction, values))
+        {
+            return null;
+        }
+
+        // Case: all operands are known
+        Integer value = values.evaluate(instruction);
+        if (value != null)
+        {
+            return Components.instruction(Instructions.isSigned16(value) ? "movi" : "movia", rX, String.valueOf(value));
+        }
+
+        // Case: op rX, rY, rZ with either rY or rZ a known constant -> opi rX, rY, IMM
+        if (instruction.getArgs().size() == 3 && instruction.getReads().size() == 2)
+        {
+            String rY = instruction.getArg(1), rZ = instruction.getArg(2);
+            String opi = Instructions.immediateForm(op);
+            if (opi != null && !rZ.equals("r0") && values.isKnown(rZ))
+            {
+                int imm = values.get(rZ);
+                if (op.equals("sll") || op.equals("sra") || op.equals("srl"))
+                {
+                    // Shifts only use the lower five bits
+                    imm &= 31;
+                }
+                if (Instructions.fitsImmediate(opi, imm))
+                {
+                    return immediate(opi, rX, rY, imm);
+                }
+            }
+
+            String swapped = Instructions.swappedForm(op);
+            if (swapped != null && !rY.equals("r0") && values.isKnown(rY))
+            {
+                String swappedOpi = Instructions.immediateForm(swapped);
+                int imm = values.get(rY);
+                if (swappedOpi != null && Instructions.fitsImmediate(swappedOpi, imm))
+                {
+                    return immediate(swappedOpi, rX, rZ, imm);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adding, subtracting, or shifting by zero is just a move, i.e. addi rX, rY, 0 -> mov rX, rY
+     */
+    private static IComponent immediate(String opi, String rX, String rY, int imm)
+    {
+        if (imm == 0 && (opi.equals("addi") || opi.equals("subi") || opi.equals("ori") || opi.equals("xori") || opi.equals("slli") || opi.equals("srli") || opi.equals("srai")))
+        {
+            return Components.mov(rX, rY);
+        }
+        return Components.instruction(opi, rX, rY, String.valueOf(imm));
+    }
+
+    /**
+     * Only fold instructions where at least one register other than r0 is a known constant
+     */
+    private static boolean hasKnownOperand(InstructionResult instruction, RegisterValues values)
+    {
+        for (String reg : instruction.getReads())
+        {
+            if (!reg.equals("r0") && values.isKnown(reg))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes constants that are immediately overwritten, which are typically left behind after folding
+     * i.e. movi r3, 4; movi r3, 32
+     */
+    private static boolean removeOverwrittenConstants(List<IComponent> base)
+    {
+        boolean changed = false;
+        for (int i = 0; i < base.size(); i++)
+        {
+            InstructionResult first = new InstructionResult(base.get(i));
+            String write = first.getWrite();
+            if (!first.getOpcode().startsWith("mov") || first.getOpcode().equals("mov") || write.equals("") || write.equals("r0"))
+            {
+                continue;
+            }
+
+            // Find the next instruction, skipping over comments
+            for (int j = i + 1; j < base.size(); j++)
+            {
+                IComponent cmp = base.get(j);
+                InstructionResult next = new InstructionResult(cmp);
+                if (!next.isInstruction() && !cmp.getFlag(TYPE).equals("label"))
+                {
+                    continue;
+                }
+                if (next.getWrite().equals(write) && !next.getReads().contains(write) && !next.isBranch())
+                {
+                    base.remove(i--);
+                    changed = true;
+                }
+                break;
+            }
+        }
+        return changed;
+    }
+
+    private ConstantPropagation() {}
+}
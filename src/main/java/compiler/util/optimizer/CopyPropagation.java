@@ -0,0 +1,150 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import compiler.component.ComponentLabel;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Copy propagation over straight line code
+ *
+ * mov r5, r4; add r6, r5, r3      ->      mov r5, r4; add r6, r4, r3
+ * mov r5, r4; stw r5, 0(r5)       ->      mov r5, r4; stw r4, 0(r4)
+ * mov r3, r3                      ->      (nothing)
+ *
+ * A copy is used until either register is written to. The copies themselves are left, and removed by {@link DeadStoreElimination} if they are no longer read
+ * Only r1 - r23 are replaced, see {@link Liveness#isGeneral(String)}
+ */
+public final class CopyPropagation
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        boolean changed = false;
+        Map<String, String> copies = new HashMap<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            String op = instruction.getOpcode();
+            if (cmp.getFlag(TYPE).equals("label") || op.equals("call") || op.equals("callr") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                // Copies are unknown at any possible jump target, and a call might write to any register
+                copies.clear();
+                continue;
+            }
+            if (!instruction.isInstruction())
+            {
+                continue;
+            }
+
+            IComponent replacement = replace(cmp, instruction, copies);
+            if (replacement != null)
+            {
+                base.set(i, Components.inherit(cmp, replacement));
+                instruction = new InstructionResult(replacement);
+                changed = true;
+            }
+
+            String rX = instruction.getWrite();
+            if (op.equals("mov") && rX.equals(instruction.getArg(1)))
+            {
+                base.remove(i--);
+                changed = true;
+                continue;
+            }
+
+            // Anything which depends on the old value of rX is no longer a copy
+            copies.remove(rX);
+            copies.values().removeIf(rY -> rY.equals(rX));
+            if (op.equals("mov") && Liveness.isGeneral(rX) && (Liveness.isGeneral(instruction.getArg(1)) || instruction.getArg(1).equals("r0")))
+            {
+                copies.put(rX, instruction.getArg(1));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the instruction, reading from the original registers instead of the copies, or null if nothing was replaced
+     */
+    private static IComponent replace(IComponent cmp, InstructionResult instruction, Map<String, String> copies)
+    {
+        String op = instruction.getOpcode();
+        String[] args = instruction.getArgs().toArray(new String[0]);
+        boolean replaced = false;
+        if (instruction.isLoad() || instruction.isStore())
+        {
+            String base = instruction.getBase();
+            if (copies.containsKey(base))
+            {
+                args[1] = instruction.getOffset() + "(" + copies.get(base) + ")";
+                replaced = true;
+            }
+            if (instruction.isStore() && copies.containsKey(args[0]))
+            {
+                args[0] = copies.get(args[0]);
+                replaced = true;
+            }
+            if (!replaced)
+            {
+                return null;
+            }
+            if (instruction.isLoad())
+            {
+                return Components.instruction(op, args[0], args[1]);
+            }
+            return Components.reads(new ComponentStatic(IComponent.format(op, args[0] + ", " + args[1] + "\n")), args[0], args[1]);
+        }
+
+        if (cmp.getFlag(TYPE).equals("break_conditional"))
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                if (copies.containsKey(args[i]))
+                {
+                    args[i] = copies.get(args[i]);
+                    replaced = true;
+                }
+            }
+            return replaced ? Components.reads(new ComponentLabel(IComponent.format(op, args[0] + ", " + args[1] + ", %s\n"), cmp.getFlag(LABEL)).setFlag(TYPE, "break_conditional"), args[0], args[1]) : null;
+        }
+
+        if (instruction.isBranch() || instruction.getWrite().equals(""))
+        {
+            return null;
+        }
+
+        // Other instructions read every argument after the destination
+        for (int i = 1; i < args.length; i++)
+        {
+            if (copies.containsKey(args[i]))
+            {
+                args[i] = copies.get(args[i]);
+                replaced = true;
+            }
+        }
+        if (!replaced)
+        {
+            return null;
+        }
+        String[] rest = new String[args.length - 1];
+        System.arraycopy(args, 1, rest, 0, rest.length);
+        return Components.instruction(op, args[0], rest);
+    }
+
+    private CopyPropagation() {}
+}
@@ -0,0 +1,68 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+import java.util.Set;
+
+import compiler.AssemblyCompiler;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+/**
+ * Addresses small data variables relative to the global pointer (with the -gp flag)
+ * This works wherever the data is placed in memory, and saves an instruction for variable addresses
+ *
+ * ldw r3, VAR(r0)                 ->      ldw r3, %gprel(VAR)(gp)
+ * stw r3, VAR(r0)                 ->      stw r3, %gprel(VAR)(gp)
+ * movia r3, VAR                   ->      addi r3, gp, %gprel(VAR)
+ *
+ * See {@link AssemblyCompiler#getSmallData()} for which variables are small data
+ */
+public final class DataLayout
+{
+    public static boolean accept(List<IComponent> base, Set<String> smallData)
+    {
+        if (smallData.isEmpty())
+        {
+            return false;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < base.size(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            String op = instruction.getOpcode(), var = instruction.getOffset();
+            if (instruction.getWrite().equals("gp"))
+            {
+                AssemblyCompiler.INSTANCE.error("error.message.reserved_register", "gp");
+            }
+
+            IComponent replacement = null;
+            if ((instruction.isLoad() || instruction.isStore()) && instruction.getBase().equals("r0") && smallData.contains(var))
+            {
+                String address = String.format("%%gprel(%s)(gp)", var);
+                replacement = instruction.isLoad() ? Components.instruction(op, instruction.getArg(0), address) : new ComponentStatic(IComponent.format(op, instruction.getArg(0) + ", " + address + "\n"));
+            }
+            else if (op.equals("movia") && smallData.contains(instruction.getArg(1)))
+            {
+                replacement = Components.instruction("addi", instruction.getWrite(), "gp", String.format("%%gprel(%s)", instruction.getArg(1)));
+            }
+
+            if (replacement != null)
+            {
+                base.set(i, Components.inherit(base.get(i), replacement));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private DataLayout() {}
+}
@@ -0,0 +1,47 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+import java.util.Set;
+
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+/**
+ * Removes instructions which write to a register that is never read afterwards
+ *
+ * mov r3, r4; mov r3, r5               ->      mov r3, r5
+ * r5 = r6 + r7 (r5 is never read)      ->      (nothing)
+ *
+ * Only r1 - r23 are considered, and instructions with side effects (stores, branches, calls and io loads) are never removed
+ * In a function, this also removes the save and restore of any register which is no longer written
+ * See {@link Liveness} for what is read after the end of main or a function
+ */
+public final class DeadStoreElimination
+{
+    public static boolean accept(List<IComponent> base, Set<String> exit)
+    {
+        Liveness liveness = new Liveness(base, exit);
+        boolean changed = false;
+
+        // Removing dead instructions can't make any other instruction live, so they can all be removed at once
+        for (int i = base.size() - 1; i >= 0; i--)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            String write = instruction.getWrite();
+            if (Liveness.isGeneral(write) && !instruction.isBranch() && !(instruction.isLoad() && instruction.getOpcode().endsWith("io")) && !liveness.getLiveOut(i).contains(write))
+            {
+                base.remove(i);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private DeadStoreElimination() {}
+}
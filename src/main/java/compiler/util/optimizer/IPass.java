@@ -0,0 +1,46 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import compiler.component.IComponent;
+
+/**
+ * A single optimization over the components of main or a function, which is run by a {@link PassManager}
+ */
+public interface IPass
+{
+    static IPass of(String name, Predicate<List<IComponent>> pass)
+    {
+        return new IPass()
+        {
+            @Override
+            public String getName()
+            {
+                return name;
+            }
+
+            @Override
+            public boolean accept(List<IComponent> base)
+            {
+                return pass.test(base);
+            }
+        };
+    }
+
+    /**
+     * @return the name of the pass, as shown with -time-passes
+     */
+    String getName();
+
+    /**
+     * @return true if anything was changed
+     */
+    boolean accept(List<IComponent> base);
+}
@@ -0,0 +1,70 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+/**
+ * Picks the cheapest legal encoding for every constant and immediate instruction
+ * This is required, not an optimization, as other passes can create constants which don't fit in 16 bits
+ *
+ * movia r3, 65536                 ->      movhi r3, 1
+ * movia r3, 0x12345               ->      movhi r3, 1; ori r3, r3, 9029
+ * ori r3, r3, 0x10000             ->      orhi r3, r3, 1
+ *
+ * See {@link Components#constant(String, String, int)} and {@link Components#immediate(String, String, String, String, int)}
+ */
+public final class ImmediateEncoding
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        boolean changed = false;
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            String op = instruction.getOpcode(), rX = instruction.getWrite();
+            if (rX.equals("") || rX.equals("r0") || instruction.isLoad() || instruction.isBranch())
+            {
+                continue;
+            }
+
+            List<IComponent> replacement = null;
+            if (op.equals("movi") || op.equals("movia"))
+            {
+                // Variable addresses (i.e. movia r2, list) are not constants
+                Integer value = RegisterValues.immediate(instruction.getArg(1));
+                if (value != null)
+                {
+                    replacement = Components.constant(rX, instruction.getArg(1), value);
+                }
+            }
+            else if (instruction.getArgs().size() == 3)
+            {
+                Integer value = RegisterValues.immediate(instruction.getArg(2));
+                if (value != null && !Instructions.fitsImmediate(op, value))
+                {
+                    replacement = Components.immediate(op, rX, instruction.getArg(1), instruction.getArg(2), value);
+                }
+            }
+
+            if (replacement != null && !replacement.isEmpty() && !(replacement.size() == 1 && replacement.get(0).compile().equals(cmp.compile())))
+            {
+                base.addAll(i, Components.inherit(base.remove(i), replacement));
+                i += replacement.size() - 1;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private ImmediateEncoding() {}
+}
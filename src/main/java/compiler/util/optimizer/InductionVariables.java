@@ -0,0 +1,490 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.ComponentLabel;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Induction variable strength reduction for a {@link Loop}
+ * A basic induction variable is a register which is only written by one addi or subi of itself in the loop, i.e. a counter
+ *
+ * 1. A register computed from a counter each iteration is replaced with a register which is incremented alongside the counter
+ * loop: slli r8, r7, 2; add r8, r8, r2; ldw r9, 0(r8); addi r7, r7, 1; blt r7, r3, loop
+ *  ->   slli r8, r7, 2; add r8, r8, r2; loop: ldw r9, 0(r8); addi r7, r7, 1; addi r8, r8, 4; blt r7, r3, loop; subi r8, r8, 4
+ *
+ * 2. If a counter is only used to end the loop, the test is replaced with one on a pointer which is incremented alongside it, and the counter is removed
+ * loop: ldw r8, 0(r4); addi r7, r7, 1; addi r4, r4, 4; bne r7, r3, loop
+ *  ->   sub r3, r3, r7; slli r3, r3, 2; add r3, r3, r4; loop: ldw r8, 0(r4); addi r4, r4, 4; bne r4, r3, loop
+ * An == or != test wraps around the same as the counter. Any other test is only replaced if the counter and limit are known before the loop, so the number of iterations can be counted, and the pointer is compared with != to its last value
+ *
+ * The computed register has to be written as in {@link LoopInvariantMotion}, and only by add, sub, shifts and multiplies by a constant, so it is always a constant multiple of the counter plus a value which doesn't change in the loop
+ * The pointer for a test has to be used as the base of a load or store, so it is assumed to never overflow. The end value is computed in the register which held the limit if nothing else needs it, or in a register the function never uses (never in main, where every register can be seen afterwards)
+ */
+public final class InductionVariables
+{
+    private static final int MAX_ITERATIONS = 1 << 20;
+
+    private static final Set<String> BRANCHES = new HashSet<>(Arrays.asList("blt", "bgt", "ble", "bge", "beq", "bne"));
+
+    public static boolean accept(List<IComponent> base, Set<String> exit)
+    {
+        boolean changed = false;
+        boolean found;
+        do
+        {
+            found = false;
+            for (Loop loop : Loop.find(base))
+            {
+                if (reduce(base, loop, exit) || replaceTest(base, loop, exit))
+                {
+                    found = changed = true;
+                    break;
+                }
+            }
+        } while (found);
+        return changed;
+    }
+
+    private static boolean reduce(List<IComponent> base, Loop loop, Set<String> exit)
+    {
+        if (!loop.hasSingleExit(base))
+        {
+            return false;
+        }
+        Map<String, Integer> writes = loop.getWrites(base);
+        Map<String, Integer> increments = findIncrements(base, loop, writes);
+        Liveness liveness = new Liveness(base, exit);
+        Set<String> liveIn = liveness.getLiveIn(loop.getStart());
+        Set<String> after = loop.getEnd() + 1 < base.size() ? liveness.getLiveIn(loop.getEnd() + 1) : exit;
+
+        Map<String, List<Integer>> chains = new LinkedHashMap<>();
+        for (int i = loop.getStart(); i <= loop.getEnd(); i++)
+        {
+            String write = new InstructionResult(base.get(i)).getWrite();
+            if (Liveness.isGeneral(write) && !liveIn.contains(write) && !increments.containsKey(write))
+            {
+                chains.computeIfAbsent(write, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : chains.entrySet())
+        {
+            String reg = entry.getKey();
+            List<Integer> chain = entry.getValue();
+            if (writes.get(reg) != chain.size())
+            {
+                continue;
+            }
+            String counter = findCounter(base, chain, writes, increments);
+            if (counter == null)
+            {
+                continue;
+            }
+            Integer scale = scale(base, reg, counter, chain);
+            int increment = increments.get(counter);
+            if (scale == null || scale == 0 || !isOneBlock(base, reg, chain, increment))
+            {
+                continue;
+            }
+
+            // If the value is computed before the counter changes, it can't be read after the change, and is one step ahead after the loop
+            boolean before = chain.get(0) < increment;
+            if (before && isRead(base, reg, increment + 1, loop.getEnd()))
+            {
+                continue;
+            }
+
+            int step = scale * step(base.get(increment));
+            IComponent last = base.get(chain.get(chain.size() - 1));
+            List<IComponent> preheader = new ArrayList<>();
+            chain.forEach(i -> preheader.add(base.get(i)));
+            int offset = loop.insertPreheader(base, preheader);
+            if (before && after.contains(reg))
+            {
+                base.add(loop.getEnd() + offset + 1, add(reg, -step));
+            }
+            for (int i = loop.getEnd(); i >= loop.getStart(); i--)
+            {
+                if (i == increment)
+                {
+                    base.add(i + offset + 1, Components.inherit(last, add(reg, step)));
+                }
+                if (chain.contains(i))
+                {
+                    base.remove(i + offset);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean replaceTest(List<IComponent> base, Loop loop, Set<String> exit)
+    {
+        IComponent test = base.get(loop.getEnd());
+        InstructionResult instruction = new InstructionResult(test);
+        Map<String, Integer> writes = loop.getWrites(base);
+        Map<String, Integer> increments = findIncrements(base, loop, writes);
+        if (!test.getFlag(TYPE).equals("break_conditional") || !BRANCHES.contains(instruction.getOpcode()) || !loop.hasSingleExit(base))
+        {
+            return false;
+        }
+
+        // The counter is one side of the test, and the limit doesn't change in the loop
+        int side = increments.containsKey(instruction.getArg(0)) ? 0 : 1;
+        String counter = instruction.getArg(side), limit = instruction.getArg(1 - side);
+        if (!increments.containsKey(counter) || writes.containsKey(limit) || !Helpers.REGISTERS.contains(limit))
+        {
+            return false;
+        }
+
+        Liveness liveness = new Liveness(base, exit);
+        Set<String> after = loop.getEnd() + 1 < base.size() ? liveness.getLiveIn(loop.getEnd() + 1) : exit;
+        int counterIncrement = increments.get(counter);
+        if (after.contains(counter) || isRead(base, counter, loop.getStart(), loop.getEnd(), counterIncrement, loop.getEnd()))
+        {
+            return false;
+        }
+
+        // A pointer which is incremented with the counter, by a multiple of its step
+        int counterStep = step(base.get(counterIncrement));
+        for (Map.Entry<String, Integer> entry : increments.entrySet())
+        {
+            String pointer = entry.getKey();
+            int pointerStep = step(base.get(entry.getValue()));
+            if (pointer.equals(counter) || pointerStep % counterStep != 0 || !isBase(base, pointer, loop) || !isOneBlock(base, "", Collections.singletonList(entry.getValue()), counterIncrement))
+            {
+                continue;
+            }
+
+            String end = findEnd(base, loop, limit, after, exit);
+            if (end == null)
+            {
+                return false;
+            }
+
+            List<IComponent> preheader = new ArrayList<>();
+            String op;
+            if (instruction.getOpcode().equals("beq") || instruction.getOpcode().equals("bne"))
+            {
+                // end = pointer + (limit - counter) * scale, where a negative scale is (counter - limit) * -scale
+                // This wraps around exactly as the counter does, so the pointer reaches the end on the same iteration the counter reaches the limit
+                int scale = pointerStep / counterStep, factor = Math.abs(scale);
+                preheader.add(scale > 0 ? Components.instruction("sub", end, limit, counter) : Components.instruction("sub", end, counter, limit));
+                if (factor != 1)
+                {
+                    preheader.add(Integer.bitCount(factor) == 1 ? Components.instruction("slli", end, end, String.valueOf(Integer.numberOfTrailingZeros(factor))) : Components.instruction("muli", end, end, String.valueOf(factor)));
+                }
+                preheader.add(Components.instruction("add", end, end, pointer));
+                op = instruction.getOpcode();
+            }
+            else
+            {
+                // Any other comparison can overflow, or be false on the first iteration, so the number of iterations has to be known
+                // end = pointer + iterations * step, and the loop runs until the pointer reaches it
+                Integer iterations = iterations(base, loop, instruction, side, counterIncrement);
+                if (iterations == null || (long) iterations * pointerStep != iterations * pointerStep)
+                {
+                    return false;
+                }
+                int distance = iterations * pointerStep;
+                preheader.addAll(Components.immediate("addi", end, pointer, String.valueOf(distance), distance));
+                op = "bne";
+            }
+
+            String[] args = side == 0 ? new String[] {pointer, end} : new String[] {end, pointer};
+            int offset = loop.insertPreheader(base, preheader);
+            base.set(loop.getEnd() + offset, Components.inherit(test, Components.reads(new ComponentLabel(IComponent.format(op, args[0] + ", " + args[1] + ", %s\n"), test.getFlag(LABEL)).setFlag(TYPE, "break_conditional"), args)));
+            base.remove(counterIncrement + offset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of times the counter is incremented before the test is false, or null if it isn't known
+     */
+    private static Integer iterations(List<IComponent> base, Loop loop, InstructionResult test, int side, int increment)
+    {
+        // The counter has to be incremented every iteration, and the loop only entered from above
+        Set<String> headers = new HashSet<>();
+        int body = loop.getStart();
+        for (; body < loop.getEnd() && base.get(body).getFlag(TYPE).equals("label"); body++)
+        {
+            headers.add(base.get(body).getFlag(LABEL));
+        }
+        int first = loop.getEnd(), last = body - 1;
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (i != loop.getEnd() && !cmp.getFlag(TYPE).equals("label") && headers.contains(cmp.getFlag(LABEL)))
+            {
+                return null;
+            }
+            if (i >= body && i < loop.getEnd() && (cmp.getFlag(TYPE).equals("label") || (instruction.isBranch() && !instruction.getOpcode().startsWith("call"))))
+            {
+                first = Math.min(first, i);
+                last = i;
+            }
+        }
+        if (increment > first && increment < last)
+        {
+            return null;
+        }
+
+        RegisterValues values = new RegisterValues();
+        for (int i = 0; i < loop.getStart(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (cmp.getFlag(TYPE).equals("label") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                values.clear();
+            }
+            values.update(instruction);
+        }
+        Integer value = values.get(test.getArg(side)), limit = values.get(test.getArg(1 - side)), step = step(base.get(increment));
+        if (value == null || limit == null)
+        {
+            return null;
+        }
+
+        // Count the iterations, the same as the loop would. If the counter would wrap around, it isn't counted
+        for (int iterations = 1; iterations <= MAX_ITERATIONS; iterations++)
+        {
+            long next = (long) value + step;
+            if (next != (int) next)
+            {
+                return null;
+            }
+            value = (int) next;
+            Boolean taken = side == 0 ? Instructions.evaluateBranch(test.getOpcode(), value, limit) : Instructions.evaluateBranch(test.getOpcode(), limit, value);
+            if (taken == null)
+            {
+                return null;
+            }
+            if (!taken)
+            {
+                return iterations;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the only write to each basic induction variable
+     */
+    private static Map<String, Integer> findIncrements(List<IComponent> base, Loop loop, Map<String, Integer> writes)
+    {
+        Map<String, Integer> increments = new HashMap<>();
+        for (int i = loop.getStart(); i <= loop.getEnd(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            String reg = instruction.getWrite();
+            String op = instruction.getOpcode();
+            if (Liveness.isGeneral(reg) && writes.get(reg) == 1 && (op.equals("addi") || op.equals("subi")) && instruction.getArg(1).equals(reg) && isStep(step(base.get(i))))
+            {
+                increments.put(reg, i);
+            }
+        }
+        return increments;
+    }
+
+    /**
+     * @return the only counter read by a chain, where every other register read doesn't change in the loop
+     */
+    private static String findCounter(List<IComponent> base, List<Integer> chain, Map<String, Integer> writes, Map<String, Integer> increments)
+    {
+        String reg = new InstructionResult(base.get(chain.get(0))).getWrite();
+        String counter = null;
+        for (int i : chain)
+        {
+            for (String read : Liveness.reads(base.get(i)))
+            {
+                if (read.equals(reg) || !writes.containsKey(read))
+                {
+                    continue;
+                }
+                if (!increments.containsKey(read) || (counter != null && !counter.equals(read)))
+                {
+                    return null;
+                }
+                counter = read;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @return the multiple of the counter in the value computed by a chain, or null if it isn't a multiple plus a constant
+     */
+    private static Integer scale(List<IComponent> base, String reg, String counter, List<Integer> chain)
+    {
+        Integer scale = null;
+        for (int i : chain)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            List<String> args = instruction.getArgs();
+            if (i == chain.get(0) && Liveness.reads(base.get(i)).contains(reg))
+            {
+                return null;
+            }
+            int a = args.size() > 1 ? scale(args.get(1), reg, counter, scale) : 0;
+            Integer imm = args.size() > 2 ? RegisterValues.immediate(args.get(2)) : null;
+            int b = args.size() > 2 && imm == null ? scale(args.get(2), reg, counter, scale) : 0;
+            switch (instruction.getOpcode())
+            {
+                case "mov":
+                    scale = a;
+                    break;
+                case "movi":
+                case "movui":
+                case "movhi":
+                case "movia":
+                    scale = 0;
+                    break;
+                case "add":
+                case "addi":
+                case "subi":
+                    scale = a + b;
+                    break;
+                case "sub":
+                    scale = a - b;
+                    break;
+                case "slli":
+                    scale = imm == null ? null : a << imm;
+                    break;
+                case "muli":
+                    scale = imm == null ? null : a * imm;
+                    break;
+                default:
+                    return null;
+            }
+            if (scale == null)
+            {
+                return null;
+            }
+        }
+        return scale;
+    }
+
+    private static int scale(String arg, String reg, String counter, Integer current)
+    {
+        return arg.equals(counter) ? 1 : arg.equals(reg) && current != null ? current : 0;
+    }
+
+    private static IComponent add(String reg, int step)
+    {
+        return step < 0 ? Components.instruction("subi", reg, reg, String.valueOf(-step)) : Components.instruction("addi", reg, reg, String.valueOf(step));
+    }
+
+    private static Integer step(IComponent cmp)
+    {
+        InstructionResult instruction = new InstructionResult(cmp);
+        Integer imm = RegisterValues.immediate(instruction.getArg(2));
+        return imm == null ? null : Instructions.evaluateImmediate(instruction.getOpcode(), 0, imm);
+    }
+
+    private static boolean isStep(Integer step)
+    {
+        // A register which is added to by zero doesn't change, so it can't be used to count
+        return step != null && step != 0;
+    }
+
+    /**
+     * @return true if the chain and the increment run together, and nothing else reads the register part way through the chain
+     */
+    private static boolean isOneBlock(List<IComponent> base, String reg, List<Integer> chain, int increment)
+    {
+        int first = Math.min(chain.get(0), increment), last = Math.max(chain.get(chain.size() - 1), increment);
+        for (int i = first; i <= last; i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (cmp.getFlag(TYPE).equals("label") || instruction.isBranch() || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                return false;
+            }
+            if (!chain.contains(i) && i > chain.get(0) && i < chain.get(chain.size() - 1) && Liveness.reads(cmp).contains(reg))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRead(List<IComponent> base, String reg, int first, int last, int... ignore)
+    {
+        for (int i = first; i <= last; i++)
+        {
+            final int index = i;
+            if (Arrays.stream(ignore).noneMatch(j -> j == index) && Liveness.reads(base.get(i)).contains(reg))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBase(List<IComponent> base, String reg, Loop loop)
+    {
+        for (int i = loop.getStart(); i <= loop.getEnd(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            if ((instruction.isLoad() || instruction.isStore()) && instruction.getBase().equals(reg))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a register to hold the end of the pointer, or null if there isn't one
+     */
+    private static String findEnd(List<IComponent> base, Loop loop, String limit, Set<String> after, Set<String> exit)
+    {
+        // The limit, if it is only used by the test
+        if (Liveness.isGeneral(limit) && !after.contains(limit) && !isRead(base, limit, loop.getStart(), loop.getEnd(), loop.getEnd()))
+        {
+            return limit;
+        }
+
+        // Otherwise, a register which is never used. Calls can read any register, so they rule this out
+        Set<String> used = new HashSet<>(exit);
+        for (IComponent cmp : base)
+        {
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (instruction.getOpcode().startsWith("call") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                return null;
+            }
+            used.addAll(Liveness.reads(cmp));
+            used.add(instruction.getWrite());
+        }
+        for (int i = 2; i <= 23; i++)
+        {
+            if (!used.contains("r" + i))
+            {
+                return "r" + i;
+            }
+        }
+        return null;
+    }
+
+    private InductionVariables() {}
+}
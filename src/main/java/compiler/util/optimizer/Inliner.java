@@ -0,0 +1,262 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import compiler.AssemblyCompiler;
+import compiler.component.ComponentFunction;
+import compiler.component.ComponentLabel;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.OptimizationLevel;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.*;
+
+/**
+ * Replaces calls to small functions with a copy of the function's optimized body
+ *
+ * call AddOne (r2 = r2 + 1)       ->      addi r2, r2, 1
+ *
+ * Only functions with no calls (so never recursive) of up to {@link #LIMIT} instructions are inlined, and never functions declared with -O0
+ * The labels in the copy are renamed with the caller's prefix, and a return branches to a new label after the copy
+ * A function restores every register it writes apart from r2 (if it returns a value). When a copy would write to one of those which is read after the call, it uses a register the caller never uses instead, or the call is left alone
+ */
+public final class Inliner
+{
+    public static final int LIMIT = 8;
+
+    private static final Pattern REGISTER = Pattern.compile("\\br([0-9]+)\\b");
+    private static final Pattern LABEL_NAME = Pattern.compile("^[^_]+_(if|else|while)([0-9]+)");
+
+    public static boolean accept(List<IComponent> base, String prefix, Set<String> exit)
+    {
+        boolean changed = false;
+        for (int i = 0; i < base.size(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            if (instruction.getOpcode().equals("call"))
+            {
+                ComponentFunction function = AssemblyCompiler.INSTANCE.getFunction(instruction.getArg(0));
+                List<IComponent> body = function == null || !canInline(function) ? null : inline(base, i, function, prefix, exit);
+                if (body != null)
+                {
+                    base.remove(i);
+                    base.addAll(i, body);
+                    i += body.size() - 1;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean canInline(ComponentFunction function)
+    {
+        if (!function.isOptimized() || function.getOptimizationLevel() == OptimizationLevel.NONE)
+        {
+            return false;
+        }
+        int size = 0;
+        for (IComponent cmp : function.getBody())
+        {
+            InstructionResult instruction = new InstructionResult(cmp);
+            String write = instruction.getWrite();
+            // The stack (i.e. spilled locals) belongs to the frame of the function
+            if (cmp.copy() == null || instruction.getOpcode().startsWith("call") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")) || (!write.equals("") && !Liveness.isGeneral(write)) || Liveness.reads(cmp).contains("sp"))
+            {
+                return false;
+            }
+            if (instruction.isInstruction())
+            {
+                size++;
+            }
+        }
+        return size <= LIMIT;
+    }
+
+    /**
+     * @return a copy of the body of the function for the call at index, or null if it can't be inlined there
+     */
+    private static List<IComponent> inline(List<IComponent> base, int index, ComponentFunction function, String prefix, Set<String> exit)
+    {
+        IComponent call = base.get(index);
+        List<IComponent> body = function.getBody();
+
+        // Registers which the function restores, but are read after the call, need to be replaced
+        Set<String> liveOut = new Liveness(base, exit).getLiveOut(index);
+        Set<String> used = new HashSet<>(exit);
+        for (IComponent cmp : base)
+        {
+            if (cmp != call)
+            {
+                // Any other call could read every register
+                used.addAll(registers(cmp));
+            }
+        }
+        body.forEach(cmp -> used.addAll(registers(cmp)));
+
+        Map<String, String> registers = new HashMap<>();
+        for (IComponent cmp : body)
+        {
+            String write = new InstructionResult(cmp).getWrite();
+            if (!write.equals("") && !(write.equals("r2") && function.hasReturnValue()) && liveOut.contains(write) && !registers.containsKey(write))
+            {
+                String replacement = null;
+                for (int i = 2; i <= 23 && replacement == null; i++)
+                {
+                    if (!used.contains("r" + i))
+                    {
+                        replacement = "r" + i;
+                    }
+                }
+                if (replacement == null)
+                {
+                    return null;
+                }
+                registers.put(write, replacement);
+                used.add(replacement);
+            }
+        }
+
+        // Labels are renamed to the next free number of the same type in the caller
+        Map<String, Integer> counts = new HashMap<>();
+        for (IComponent cmp : base)
+        {
+            Matcher matcher = LABEL_NAME.matcher(cmp.getFlag(LABEL));
+            if (matcher.find())
+            {
+                counts.merge(matcher.group(1), Integer.parseInt(matcher.group(2)), Math::max);
+            }
+        }
+        Map<String, String> labels = new HashMap<>();
+        for (IComponent cmp : body)
+        {
+            if (cmp.getFlag(TYPE).equals("label"))
+            {
+                Matcher matcher = LABEL_NAME.matcher(cmp.getFlag(LABEL));
+                String type = matcher.find() ? matcher.group(1) : "if";
+                labels.put(cmp.getFlag(LABEL), prefix + "_" + type + counts.merge(type, 1, Integer::sum));
+            }
+        }
+        String end = prefix + "_if" + counts.merge("if", 1, Integer::sum);
+        labels.put(function.getFlag(FUNCTION_PREFIX) + "_ret", end);
+
+        List<IComponent> copy = new ArrayList<>();
+        Set<String> liveIn = body.isEmpty() ? Collections.emptySet() : new Liveness(body, Liveness.functionExit(function.hasReturnValue())).getLiveIn(0);
+        for (Map.Entry<String, String> entry : registers.entrySet())
+        {
+            if (liveIn.contains(entry.getKey()))
+            {
+                // An argument which the function overwrites
+                copy.add(Components.inherit(call, Components.mov(entry.getValue(), entry.getKey())));
+            }
+        }
+        boolean returns = false;
+        for (IComponent cmp : body)
+        {
+            IComponent replacement = copy(cmp, registers, labels);
+            if (replacement == null)
+            {
+                return null;
+            }
+            returns |= replacement.getFlag(LABEL).equals(end);
+            copy.add(Components.inherit(call, replacement));
+        }
+        if (returns)
+        {
+            copy.add(Components.label(end));
+        }
+        return copy;
+    }
+
+    /**
+     * @return a copy of a component with registers and labels replaced, or null if it branches to a label outside the function
+     */
+    private static IComponent copy(IComponent cmp, Map<String, String> registers, Map<String, String> labels)
+    {
+        InstructionResult instruction = new InstructionResult(cmp);
+        String label = cmp.getFlag(LABEL);
+        if (instruction.isBranch() && label.equals(""))
+        {
+            // A return, which is a static branch to the end of the function
+            List<String> args = instruction.getArgs();
+            String target = args.isEmpty() ? null : labels.get(args.get(args.size() - 1));
+            if (target == null)
+            {
+                return null;
+            }
+            if (instruction.getOpcode().equals("br"))
+            {
+                return Components.br(target);
+            }
+            String[] operands = {rename(args.get(0), registers), rename(args.get(1), registers)};
+            return Components.reads(new ComponentLabel(IComponent.format(instruction.getOpcode(), operands[0] + ", " + operands[1] + ", %s\n"), target).setFlag(TYPE, "break_conditional"), operands);
+        }
+
+        IComponent copy;
+        if (!label.equals(""))
+        {
+            if (!labels.containsKey(label))
+            {
+                return null;
+            }
+            copy = cmp.copy().setFlag(LABEL, labels.get(label));
+            if (!registers.isEmpty() && !cmp.getFlag(TYPE).equals("label"))
+            {
+                // Conditional branches are the only labelled components which read registers
+                String[] operands = {rename(instruction.getArg(0), registers), rename(instruction.getArg(1), registers)};
+                copy = Components.reads(new ComponentLabel(IComponent.format(instruction.getOpcode(), operands[0] + ", " + operands[1] + ", %s\n"), labels.get(label)).setFlag(TYPE, cmp.getFlag(TYPE)), operands);
+            }
+        }
+        else
+        {
+            copy = new ComponentStatic(rename(cmp.compile(), registers));
+            for (IComponent.Flag flag : new IComponent.Flag[] {WRITE_REGISTER, READ_REGISTERS})
+            {
+                if (!cmp.getFlag(flag).equals(""))
+                {
+                    copy.setFlag(flag, rename(cmp.getFlag(flag), registers));
+                }
+            }
+        }
+        return copy;
+    }
+
+    private static String rename(String text, Map<String, String> registers)
+    {
+        if (registers.isEmpty())
+        {
+            return text;
+        }
+        Matcher matcher = REGISTER.matcher(text);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find())
+        {
+            matcher.appendReplacement(buffer, registers.getOrDefault(matcher.group(), matcher.group()));
+        }
+        return matcher.appendTail(buffer).toString();
+    }
+
+    private static Set<String> registers(IComponent cmp)
+    {
+        Set<String> registers = new HashSet<>(Liveness.reads(cmp));
+        registers.add(new InstructionResult(cmp).getWrite());
+        Matcher matcher = REGISTER.matcher(cmp.compile());
+        while (matcher.find())
+        {
+            registers.add(matcher.group());
+        }
+        return registers;
+    }
+
+    private Inliner() {}
+}
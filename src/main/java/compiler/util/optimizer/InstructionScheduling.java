@@ -0,0 +1,241 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import compiler.component.IComponent;
+import compiler.simulator.CostModel;
+import compiler.util.literal.CastResult;
+import compiler.util.literal.InstructionResult;
+
+/**
+ * List scheduling: reorders the instructions in each basic block so the result of a load or multiply isn't used by the very next instruction, which would stall
+ *
+ * ldw r3, 0(r2); add r4, r3, r5; ldw r6, 4(r2); add r7, r6, r5      ->      ldw r3, 0(r2); ldw r6, 4(r2); add r4, r3, r5; add r7, r6, r5
+ *
+ * An instruction is never moved above one which writes a register it reads, or reads or writes the register it writes
+ * Stores are kept in order with any load or store which might access the same memory (the same base register with offsets that don't overlap can't), and io accesses are kept in order with every load and store
+ * Latencies are from the default {@link CostModel}, which is also used by the {@link compiler.simulator.Profiler}. A block is only reordered if it would take fewer cycles
+ */
+public final class InstructionScheduling
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        return accept(base, CostModel.getDefault());
+    }
+
+    public static boolean accept(List<IComponent> base, CostModel model)
+    {
+        // Labels, branches, calls and anything which isn't a simple instruction end a block, and stay where they are
+        boolean changed = false;
+        int start = 0;
+        for (int i = 0; i <= base.size(); i++)
+        {
+            if (i == base.size() || !isSchedulable(new InstructionResult(base.get(i))))
+            {
+                changed |= schedule(base, start, i, model);
+                start = i + 1;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Schedules the block from start (inclusive) to end (exclusive). The component at end (if any) runs straight after the block
+     */
+    private static boolean schedule(List<IComponent> base, int start, int end, CostModel model)
+    {
+        int size = end - start;
+        if (size < 2)
+        {
+            return false;
+        }
+
+        InstructionResult[] instructions = new InstructionResult[size + 1];
+        int[] cycles = new int[size + 1], latency = new int[size + 1];
+        for (int i = 0; i < size; i++)
+        {
+            instructions[i] = new InstructionResult(base.get(start + i));
+            cycles[i] = model.getCycles(instructions[i].getOpcode());
+            latency[i] = model.getLatency(instructions[i].getOpcode());
+        }
+
+        // The component after the block can only wait for registers (a call is assumed to not need its arguments straight away)
+        InstructionResult next = end < base.size() ? new InstructionResult(base.get(end)) : null;
+        instructions[size] = next != null && !next.getOpcode().startsWith("call") ? next : new InstructionResult("");
+
+        // Dependencies: depends[j][i] is true if j has to come after i, and uses[j][i] if it reads the result of i
+        boolean[][] depends = new boolean[size + 1][size], uses = new boolean[size + 1][size];
+        for (int j = 0; j <= size; j++)
+        {
+            Set<String> reads = instructions[j].getReads();
+            String write = instructions[j].getWrite();
+            for (int i = 0; i < Math.min(j, size); i++)
+            {
+                String other = instructions[i].getWrite();
+                uses[j][i] = !other.equals("") && reads.contains(other);
+                depends[j][i] = j == size || uses[j][i] || (!write.equals("") && (write.equals(other) || instructions[i].getReads().contains(write))) || isMemoryDependent(instructions, i, j);
+            }
+        }
+
+        // Height: the cycles from the start of an instruction to the end of the block, along the longest chain of dependencies
+        int[] height = new int[size + 1];
+        for (int i = size - 1; i >= 0; i--)
+        {
+            height[i] = cycles[i];
+            for (int j = i + 1; j <= size; j++)
+            {
+                if (depends[j][i])
+                {
+                    height[i] = Math.max(height[i], cycles[i] + (uses[j][i] ? latency[i] : 0) + height[j]);
+                }
+            }
+        }
+
+        // At each step, pick the instruction which can start soonest, then the one with the greatest height, then the first
+        List<Integer> order = new ArrayList<>();
+        boolean[] scheduled = new boolean[size];
+        int[] done = new int[size];
+        int time = 0;
+        while (order.size() < size)
+        {
+            int best = -1, bestStart = 0;
+            for (int j = 0; j < size; j++)
+            {
+                if (scheduled[j] || !isReady(depends[j], scheduled, j))
+                {
+                    continue;
+                }
+                int begin = start(j, uses[j], done, latency, time);
+                if (best == -1 || begin < bestStart || (begin == bestStart && height[j] > height[best]))
+                {
+                    best = j;
+                    bestStart = begin;
+                }
+            }
+            scheduled[best] = true;
+            time = bestStart + cycles[best];
+            done[best] = time;
+            order.add(best);
+        }
+
+        List<Integer> original = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            original.add(i);
+        }
+        if (order.equals(original) || cost(order, uses, cycles, latency) >= cost(original, uses, cycles, latency))
+        {
+            return false;
+        }
+
+        List<IComponent> block = new ArrayList<>(base.subList(start, end));
+        for (int i = 0; i < size; i++)
+        {
+            base.set(start + i, block.get(order.get(i)));
+        }
+        return true;
+    }
+
+    /**
+     * @return the total cycles taken by the block in the given order, including any stall of the component after it
+     */
+    private static int cost(List<Integer> order, boolean[][] uses, int[] cycles, int[] latency)
+    {
+        int size = order.size(), time = 0;
+        int[] done = new int[size];
+        for (int index : order)
+        {
+            time = start(index, uses[index], done, latency, time) + cycles[index];
+            done[index] = time;
+        }
+        return start(size, uses[size], done, latency, time);
+    }
+
+    /**
+     * @return the cycle an instruction can start on, after all the results it uses are ready
+     */
+    private static int start(int index, boolean[] uses, int[] done, int[] latency, int time)
+    {
+        int begin = time;
+        for (int i = 0; i < uses.length; i++)
+        {
+            if (uses[i])
+            {
+                begin = Math.max(begin, done[i] + latency[i]);
+            }
+        }
+        return begin;
+    }
+
+    private static boolean isReady(boolean[] depends, boolean[] scheduled, int index)
+    {
+        for (int i = 0; i < index; i++)
+        {
+            if (depends[i] && !scheduled[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if i and j (i before j) both access memory, and their order matters
+     */
+    private static boolean isMemoryDependent(InstructionResult[] instructions, int i, int j)
+    {
+        InstructionResult first = instructions[i], second = instructions[j];
+        if (!(first.isLoad() || first.isStore()) || !(second.isLoad() || second.isStore()))
+        {
+            return false;
+        }
+        if (CastResult.isIO(first.getOpcode()) || CastResult.isIO(second.getOpcode()))
+        {
+            return true;
+        }
+        if (first.isLoad() && second.isLoad())
+        {
+            return false;
+        }
+
+        // Offsets from the same base register, which isn't changed between them, can be compared
+        if (!first.getBase().equals(second.getBase()))
+        {
+            return true;
+        }
+        for (int k = i; k < j; k++)
+        {
+            if (instructions[k].getWrite().equals(first.getBase()))
+            {
+                return true;
+            }
+        }
+        try
+        {
+            int a = Integer.parseInt(first.getOffset()), b = Integer.parseInt(second.getOffset());
+            return a < b + CastResult.getWidth(second.getOpcode()) && b < a + CastResult.getWidth(first.getOpcode());
+        }
+        catch (NumberFormatException e)
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Only instructions which write a register, or load or store, are moved
+     */
+    private static boolean isSchedulable(InstructionResult instruction)
+    {
+        return instruction.isInstruction() && !instruction.isBranch() && (instruction.isLoad() || instruction.isStore() || (!instruction.getWrite().equals("") && Liveness.isGeneral(instruction.getWrite())));
+    }
+
+    private InstructionScheduling() {}
+}
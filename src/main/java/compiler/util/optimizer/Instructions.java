@@ -0,0 +1,214 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Semantics of the Nios-II arithmetic, logical and comparison instructions emitted by the compiler
+ * Used by optimizations that need to evaluate or rewrite instructions
+ */
+public final class Instructions
+{
+    private static final Map<String, String> SWAPPED = new HashMap<>();
+
+    static
+    {
+        // Operations which can have their operands swapped (with the equivalent operation)
+        SWAPPED.put("add", "add");
+        SWAPPED.put("mul", "mul");
+        SWAPPED.put("and", "and");
+        SWAPPED.put("or", "or");
+        SWAPPED.put("xor", "xor");
+        SWAPPED.put("cmpeq", "cmpeq");
+        SWAPPED.put("cmpne", "cmpne");
+        SWAPPED.put("cmplt", "cmpgt");
+        SWAPPED.put("cmpgt", "cmplt");
+        SWAPPED.put("cmple", "cmpge");
+        SWAPPED.put("cmpge", "cmple");
+        SWAPPED.put("cmpltu", "cmpgtu");
+        SWAPPED.put("cmpgtu", "cmpltu");
+        SWAPPED.put("cmpleu", "cmpgeu");
+        SWAPPED.put("cmpgeu", "cmpleu");
+    }
+
+    /**
+     * Evaluates a register-register operation, i.e. add, cmplt, srl
+     *
+     * @return the result, or null if the operation is unknown or undefined (i.e. division by zero)
+     */
+    public static Integer evaluate(String op, int a, int b)
+    {
+        switch (op)
+        {
+            case "add":
+                return a + b;
+            case "sub":
+                return a - b;
+            case "mul":
+                return a * b;
+            case "div":
+                return b == 0 || (a == Integer.MIN_VALUE && b == -1) ? null : a / b;
+            case "divu":
+                return b == 0 ? null : Integer.divideUnsigned(a, b);
+            case "and":
+                return a & b;
+            case "or":
+                return a | b;
+            case "xor":
+                return a ^ b;
+            case "sll":
+                return a << (b & 31);
+            case "sra":
+                return a >> (b & 31);
+            case "srl":
+                return a >>> (b & 31);
+            case "cmpeq":
+                return a == b ? 1 : 0;
+            case "cmpne":
+                return a != b ? 1 : 0;
+            case "cmplt":
+                return a < b ? 1 : 0;
+            case "cmpgt":
+                return a > b ? 1 : 0;
+            case "cmple":
+                return a <= b ? 1 : 0;
+            case "cmpge":
+                return a >= b ? 1 : 0;
+            case "cmpltu":
+                return Integer.compareUnsigned(a, b) < 0 ? 1 : 0;
+            case "cmpgtu":
+                return Integer.compareUnsigned(a, b) > 0 ? 1 : 0;
+            case "cmpleu":
+                return Integer.compareUnsigned(a, b) <= 0 ? 1 : 0;
+            case "cmpgeu":
+                return Integer.compareUnsigned(a, b) >= 0 ? 1 : 0;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Evaluates an immediate operation, i.e. addi, cmplti, orhi
+     *
+     * @return the result, or null if the operation is unknown or the immediate doesn't fit in the instruction
+     */
+    public static Integer evaluateImmediate(String opi, int a, int imm)
+    {
+        if (!fitsImmediate(opi, imm))
+        {
+            return null;
+        }
+        switch (opi)
+        {
+            case "subi":
+                return a - imm;
+            case "andhi":
+                return a & (imm << 16);
+            case "orhi":
+                return a | (imm << 16);
+            case "xorhi":
+                return a ^ (imm << 16);
+            default:
+                return opi.endsWith("i") ? evaluate(opi.substring(0, opi.length() - 1), a, imm) : null;
+        }
+    }
+
+    /**
+     * Evaluates a conditional branch, i.e. blt
+     *
+     * @return true if the branch is taken, or null if the branch is unknown
+     */
+    public static Boolean evaluateBranch(String op, int a, int b)
+    {
+        Integer result = op.startsWith("b") && !op.equals("br") ? evaluate("cmp" + op.substring(1), a, b) : null;
+        return result == null ? null : result == 1;
+    }
+
+    /**
+     * Checks if an immediate value can be encoded in the 16-bit immediate field of an instruction
+     * This accounts for sign / zero extension, and pseudo instructions such as subi (addi -IMM) and cmpgti (cmpgei IMM + 1)
+     */
+    public static boolean fitsImmediate(String opi, int imm)
+    {
+        switch (opi)
+        {
+            case "addi":
+            case "muli":
+            case "cmpeqi":
+            case "cmpnei":
+            case "cmpgei":
+            case "cmplti":
+            case "movi":
+                return isSigned16(imm);
+            case "subi":
+                return isSigned16(-imm);
+            case "cmpgti":
+            case "cmplei":
+                return imm != Integer.MAX_VALUE && isSigned16(imm + 1);
+            case "andi":
+            case "ori":
+            case "xori":
+            case "andhi":
+            case "orhi":
+            case "xorhi":
+            case "cmpgeui":
+            case "cmpltui":
+            case "movui":
+            case "movhi":
+                return isUnsigned16(imm);
+            case "cmpgtui":
+            case "cmpleui":
+                return imm != -1 && isUnsigned16(imm + 1);
+            case "slli":
+            case "srai":
+            case "srli":
+                return imm >= 0 && imm < 32;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the immediate form of a register operation, or null if it doesn't have one (i.e. div)
+     */
+    public static String immediateForm(String op)
+    {
+        String opi = op + "i";
+        return op.equals("div") || op.equals("divu") || !fitsImmediate(opi, 0) ? null : opi;
+    }
+
+    /**
+     * @return the register form of an immediate operation, i.e. addi -> add, or null if there is none (i.e. orhi, movui)
+     */
+    public static String registerForm(String opi)
+    {
+        String op = opi.endsWith("i") ? opi.substring(0, opi.length() - 1) : "";
+        return op.endsWith("h") || op.startsWith("mov") || !opi.equals(immediateForm(op)) ? null : op;
+    }
+
+    /**
+     * @return the equivalent operation with the operands swapped, i.e. cmplt -> cmpgt, or null if there is none (i.e. sub)
+     */
+    public static String swappedForm(String op)
+    {
+        return SWAPPED.get(op);
+    }
+
+    public static boolean isSigned16(int value)
+    {
+        return value >= -32768 && value <= 32767;
+    }
+
+    public static boolean isUnsigned16(int value)
+    {
+        return value >= 0 && value <= 65535;
+    }
+
+    private Instructions() {}
+}
@@ -0,0 +1,128 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+
+import static compiler.component.IComponent.Flag.LABEL;
+
+/**
+ * Renames the labels of each if, else and while to be shorter and sequential, once all other optimizations are done
+ *
+ * main_while1_a_t, main_while1_b_f        ->      main_while1, main_while1a
+ *
+ * Labels follow the convention functionName_loopTypeN_sub_truthy, where _sub_truthy might not exist for simple conditionals
+ */
+public final class LabelSimplification
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        LabelMap labels = new LabelMap();
+        for (IComponent cmp : base)
+        {
+            String label = cmp.getFlag(LABEL);
+            if (!label.equals(""))
+            {
+                labels.add(label);
+            }
+        }
+
+        labels.build();
+
+        boolean changed = false;
+        for (IComponent cmp : base)
+        {
+            String label = cmp.getFlag(LABEL);
+            if (!label.equals(""))
+            {
+                String simplified = labels.get(label);
+                changed |= !simplified.equals(label);
+                cmp.setFlag(LABEL, simplified);
+            }
+        }
+        return changed;
+    }
+
+    private LabelSimplification() {}
+
+    private static final class LabelMap
+    {
+        private final Map<String, Map<Integer, List<String>>> labels = new HashMap<>();
+        private final Set<String> allLabels = new HashSet<>();
+        private final Map<String, String> simplifiedLabels = new HashMap<>();
+        private String functionName = null;
+
+        LabelMap()
+        {
+            labels.put("while", new HashMap<>());
+            labels.put("if", new HashMap<>());
+            labels.put("else", new HashMap<>());
+        }
+
+        void add(String label)
+        {
+            if (allLabels.contains(label))
+            {
+                return;
+            }
+            allLabels.add(label);
+
+            // functionName_loopType##_sub_truthy
+            // Note _sub_truthy might not exist for simple conditionals
+            String[] args = label.split("_");
+            if (functionName == null)
+            {
+                functionName = args[0];
+            }
+
+            Map<Integer, List<String>> map = labels.get(args[1].replaceAll("[0-9]", ""));
+            int count = Integer.valueOf(args[1].replaceAll("[A-Za-z]", ""));
+            if (!map.containsKey(count))
+            {
+                map.put(count, new ArrayList<>());
+            }
+            if (args.length <= 2)
+            {
+                map.get(count).add("");
+            }
+            else
+            {
+                map.get(count).add("_" + args[2] + "_" + args[3]);
+            }
+        }
+
+        void build()
+        {
+            for (Map.Entry<String, Map<Integer, List<String>>> e1 : labels.entrySet())
+            {
+                String loopType = e1.getKey();
+                for (Map.Entry<Integer, List<String>> e2 : e1.getValue().entrySet())
+                {
+                    int count = e2.getKey();
+                    List<String> suffixes = e2.getValue();
+                    suffixes.sort(String.CASE_INSENSITIVE_ORDER);
+
+                    for (int i = 0; i < suffixes.size(); i++)
+                    {
+                        String suffix = i == 0 ? "" : Helpers.alphabetSuffix(i);
+                        String oldLabel = String.format("%s_%s%d%s", functionName, loopType, count, suffixes.get(i));
+                        String newLabel = String.format("%s_%s%d%s", functionName, loopType, count, suffix);
+                        simplifiedLabels.put(oldLabel, newLabel);
+                    }
+                }
+            }
+        }
+
+        String get(String label)
+        {
+            return simplifiedLabels.get(label);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.READ_REGISTERS;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Backward liveness analysis over the body of main or a function
+ * A register is live after an instruction if some path from it reads the register before writing to it
+ * Branches to a label which isn't in the body (i.e. a return) are treated the same as reaching the end
+ */
+public final class Liveness
+{
+    private static final int EXIT = -1;
+
+    /**
+     * The end of main is an infinite loop, where the final values of every register can be seen (i.e. by a debugger)
+     */
+    public static Set<String> mainExit()
+    {
+        return new HashSet<>(Helpers.REGISTERS);
+    }
+
+    /**
+     * A function restores every general purpose register it writes, apart from r2 if it returns a value, so only that is used after it
+     */
+    public static Set<String> functionExit(boolean returnsValue)
+    {
+        Set<String> exit = new HashSet<>();
+        for (String reg : Helpers.REGISTERS)
+        {
+            if (!isGeneral(reg) || (returnsValue && reg.equals("r2")))
+            {
+                exit.add(reg);
+            }
+        }
+        return exit;
+    }
+
+    /**
+     * @return true for r1 - r23. Other registers have special uses (i.e. sp, ra), and r0 is always zero
+     */
+    public static boolean isGeneral(String reg)
+    {
+        return reg.length() > 1 && reg.charAt(0) == 'r' && Character.isDigit(reg.charAt(1)) && !reg.equals("r0") && Helpers.REGISTERS.contains(reg);
+    }
+
+    /**
+     * @return the registers read by a component, from {@link IComponent.Flag#READ_REGISTERS} if it is set, or the compiled instruction if not
+     */
+    public static Set<String> reads(IComponent component)
+    {
+        String flag = component.getFlag(READ_REGISTERS);
+        if (!flag.equals(""))
+        {
+            return new LinkedHashSet<>(Arrays.asList(flag.split(",")));
+        }
+        String text = component.compile().trim();
+        if (text.contains("\n"))
+        {
+            // Anything over multiple lines can't be understood, so it might read anything
+            return new LinkedHashSet<>(Helpers.REGISTERS);
+        }
+        return new InstructionResult(text).getReads();
+    }
+
+    private final List<Set<String>> liveIn = new ArrayList<>();
+    private final List<Set<String>> liveOut = new ArrayList<>();
+
+    public Liveness(List<IComponent> base, Set<String> exit)
+    {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            if (base.get(i).getFlag(TYPE).equals("label"))
+            {
+                labels.put(base.get(i).getFlag(LABEL), i);
+            }
+        }
+
+        List<Set<String>> reads = new ArrayList<>();
+        List<String> writes = new ArrayList<>();
+        List<int[]> successors = new ArrayList<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            reads.add(reads(cmp));
+            writes.add(instruction.getWrite());
+            successors.add(successors(cmp, instruction, labels, i + 1 < base.size() ? i + 1 : EXIT));
+            liveIn.add(new HashSet<>());
+            liveOut.add(new HashSet<>());
+        }
+
+        // Iterate backwards until nothing changes, as loops need more than one pass
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (int i = base.size() - 1; i >= 0; i--)
+            {
+                Set<String> out = new HashSet<>();
+                for (int next : successors.get(i))
+                {
+                    out.addAll(next == EXIT ? exit : liveIn.get(next));
+                }
+                Set<String> in = new HashSet<>(out);
+                in.remove(writes.get(i));
+                in.addAll(reads.get(i));
+
+                if (!in.equals(liveIn.get(i)) || !out.equals(liveOut.get(i)))
+                {
+                    liveIn.set(i, in);
+                    liveOut.set(i, out);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the registers which are live after the component at index
+     */
+    public Set<String> getLiveOut(int index)
+    {
+        return liveOut.get(index);
+    }
+
+    /**
+     * @return the registers which are live before the component at index
+     */
+    public Set<String> getLiveIn(int index)
+    {
+        return liveIn.get(index);
+    }
+
+    private int[] successors(IComponent cmp, InstructionResult instruction, Map<String, Integer> labels, int next)
+    {
+        String op = instruction.getOpcode();
+        if (!instruction.isBranch() || op.equals("call") || op.equals("callr"))
+        {
+            return new int[] {next};
+        }
+        if (op.equals("ret") || op.startsWith("jmp") || op.equals("eret") || op.equals("bret"))
+        {
+            return new int[] {EXIT};
+        }
+
+        String label = cmp.getFlag(LABEL).equals("") ? instruction.getArg(instruction.getArgs().size() - 1) : cmp.getFlag(LABEL);
+        int target = labels.getOrDefault(label, EXIT);
+        return op.equals("br") ? new int[] {target} : new int[] {next, target};
+    }
+}
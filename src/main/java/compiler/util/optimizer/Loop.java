@@ -0,0 +1,240 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * A natural loop in the body of main or a function, as built by while / end: a backward branch to a label, where the only way into the loop is through that label
+ * Loops are always a single range of components, from the header labels to the last backward branch
+ */
+public final class Loop
+{
+    /**
+     * @return every loop, with inner loops before the loops which contain them
+     */
+    public static List<Loop> find(List<IComponent> base)
+    {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            if (base.get(i).getFlag(TYPE).equals("label"))
+            {
+                labels.put(base.get(i).getFlag(LABEL), i);
+            }
+        }
+
+        // The last backward branch to each label
+        Map<Integer, Integer> ends = new TreeMap<>();
+        for (int i = 0; i < base.size(); i++)
+        {
+            String type = base.get(i).getFlag(TYPE);
+            Integer target = labels.get(base.get(i).getFlag(LABEL));
+            if ((type.equals("break") || type.equals("break_conditional")) && target != null && target < i)
+            {
+                ends.put(target, i);
+            }
+        }
+
+        List<Loop> loops = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : ends.entrySet())
+        {
+            // Consecutive labels are the same point
+            int start = entry.getKey();
+            while (start > 0 && base.get(start - 1).getFlag(TYPE).equals("label"))
+            {
+                start--;
+            }
+            Set<String> header = new HashSet<>();
+            for (int i = start; i < base.size() && base.get(i).getFlag(TYPE).equals("label"); i++)
+            {
+                header.add(base.get(i).getFlag(LABEL));
+            }
+
+            Loop loop = new Loop(start, entry.getValue(), header);
+            if (loop.isNatural(base, labels))
+            {
+                loops.add(loop);
+            }
+        }
+        loops.sort(Comparator.comparingInt(loop -> loop.end - loop.start));
+        return loops;
+    }
+
+    private final int start, end;
+    private final Set<String> header;
+
+    private Loop(int start, int end, Set<String> header)
+    {
+        this.start = start;
+        this.end = end;
+        this.header = header;
+    }
+
+    /**
+     * @return the index of the first header label
+     */
+    public int getStart()
+    {
+        return start;
+    }
+
+    /**
+     * @return the index of the last backward branch
+     */
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public boolean contains(int index)
+    {
+        return index >= start && index <= end;
+    }
+
+    /**
+     * @return the number of instructions in the loop which write to each register. A call writes r2 and ra, and anything which can't be understood writes everything
+     */
+    public Map<String, Integer> getWrites(List<IComponent> base)
+    {
+        Map<String, Integer> writes = new HashMap<>();
+        for (int i = start; i <= end; i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (instruction.getOpcode().equals("call") || instruction.getOpcode().equals("callr"))
+            {
+                writes.merge("r2", 1, Integer::sum);
+            }
+            else if (!instruction.isInstruction() && cmp.compile().trim().contains("\n"))
+            {
+                Helpers.REGISTERS.forEach(reg -> writes.merge(reg, 1, Integer::sum));
+            }
+            if (!instruction.getWrite().equals(""))
+            {
+                writes.merge(instruction.getWrite(), 1, Integer::sum);
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * @return true if the loop has any stores or calls, which might change memory
+     */
+    public boolean hasSideEffects(List<IComponent> base)
+    {
+        for (int i = start; i <= end; i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            if (instruction.isStore() || instruction.getOpcode().startsWith("call") || (!instruction.isInstruction() && base.get(i).compile().trim().contains("\n")))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the only way out of the loop is falling through the last backward branch
+     */
+    public boolean hasSingleExit(List<IComponent> base)
+    {
+        Set<String> inside = new HashSet<>();
+        for (int i = start; i <= end; i++)
+        {
+            if (base.get(i).getFlag(TYPE).equals("label"))
+            {
+                inside.add(base.get(i).getFlag(LABEL));
+            }
+        }
+        for (int i = start; i <= end; i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (!instruction.isInstruction() && cmp.compile().trim().contains("\n"))
+            {
+                return false;
+            }
+            if (instruction.isBranch() && !instruction.getOpcode().startsWith("call"))
+            {
+                List<String> args = instruction.getArgs();
+                String target = !cmp.getFlag(LABEL).equals("") ? cmp.getFlag(LABEL) : args.isEmpty() ? "" : args.get(args.size() - 1);
+                if (!inside.contains(target))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts components before the loop, so they run once each time the loop is entered
+     * Branches from outside the loop to the header are moved to a new label before the inserted components
+     *
+     * @return the number of components inserted, which moves every index in the loop
+     */
+    public int insertPreheader(List<IComponent> base, List<IComponent> components)
+    {
+        String preheader = preheaderLabel(base);
+        boolean used = false;
+        for (int i = 0; i < base.size(); i++)
+        {
+            if (!contains(i) && header.contains(base.get(i).getFlag(LABEL)) && !base.get(i).getFlag(TYPE).equals("label"))
+            {
+                base.get(i).setFlag(LABEL, preheader);
+                used = true;
+            }
+        }
+        List<IComponent> inserted = new ArrayList<>(components);
+        if (used)
+        {
+            inserted.add(0, Components.label(preheader));
+        }
+        base.addAll(start, inserted);
+        return inserted.size();
+    }
+
+    /**
+     * @return a new label in the same format as the header (i.e. main_while1_p_h), so it can be simplified by {@link LabelSimplification}
+     */
+    private String preheaderLabel(List<IComponent> base)
+    {
+        String[] parts = base.get(start).getFlag(LABEL).split("_");
+        String prefix = parts.length >= 2 ? parts[0] + "_" + parts[1] : parts[0];
+        Set<String> labels = new HashSet<>();
+        base.forEach(cmp -> labels.add(cmp.getFlag(LABEL)));
+        String label = prefix + "_p_h";
+        for (int i = 1; labels.contains(label); i++)
+        {
+            label = prefix + "_p" + i + "_h";
+        }
+        return label;
+    }
+
+    private boolean isNatural(List<IComponent> base, Map<String, Integer> labels)
+    {
+        // Branches from outside the loop can only go to the header
+        for (int i = 0; i < base.size(); i++)
+        {
+            Integer target = labels.get(base.get(i).getFlag(LABEL));
+            if (!contains(i) && !base.get(i).getFlag(TYPE).equals("label") && target != null && contains(target) && !header.contains(base.get(i).getFlag(LABEL)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.IComponent;
+import compiler.util.literal.CastResult;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Loop invariant code motion: moves instructions which compute the same value every iteration out of a {@link Loop}, to run once before it
+ *
+ * loop: subi r8, r3, 1; slli r8, r8, 2; add r9, r9, r8; ...; blt r7, r3, loop
+ *  ->   subi r8, r3, 1; slli r8, r8, 2; loop: add r9, r9, r8; ...; blt r7, r3, loop
+ *
+ * A register's writes are moved together, if they are all in one basic block, only read registers the loop never writes, and nothing else reads the register in between
+ * The register also can't be read in the loop before it is written, so this never needs another register, or keeps one live for longer than the loop already did
+ * Arithmetic and moves are moved, but never division (which can trap). Loads of global variables are moved if the loop has no stores or calls, and io loads never are
+ */
+public final class LoopInvariantMotion
+{
+    public static boolean accept(List<IComponent> base, Set<String> exit)
+    {
+        boolean changed = false;
+        boolean found;
+        do
+        {
+            // Loops are found again after every change, as moving code changes the indexes of every loop after it
+            found = false;
+            for (Loop loop : Loop.find(base))
+            {
+                if (hoist(base, loop, exit))
+                {
+                    found = changed = true;
+                    break;
+                }
+            }
+        } while (found);
+        return changed;
+    }
+
+    private static boolean hoist(List<IComponent> base, Loop loop, Set<String> exit)
+    {
+        Map<String, Integer> writes = loop.getWrites(base);
+        boolean memory = !loop.hasSideEffects(base);
+        Set<String> liveIn = new Liveness(base, exit).getLiveIn(loop.getStart());
+
+        // The writes to each register in the loop, in order
+        Map<String, List<Integer>> chains = new LinkedHashMap<>();
+        for (int i = loop.getStart(); i <= loop.getEnd(); i++)
+        {
+            String write = new InstructionResult(base.get(i)).getWrite();
+            if (Liveness.isGeneral(write) && !liveIn.contains(write))
+            {
+                chains.computeIfAbsent(write, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Set<Integer> moved = new TreeSet<>();
+        List<IComponent> preheader = new ArrayList<>();
+        boolean found;
+        do
+        {
+            found = false;
+            for (Iterator<Map.Entry<String, List<Integer>>> iterator = chains.entrySet().iterator(); iterator.hasNext(); )
+            {
+                Map.Entry<String, List<Integer>> entry = iterator.next();
+                String reg = entry.getKey();
+                List<Integer> chain = entry.getValue();
+                if (writes.get(reg) == chain.size() && isInvariant(base, reg, chain, writes, memory))
+                {
+                    for (int i : chain)
+                    {
+                        preheader.add(base.get(i));
+                        moved.add(i);
+                    }
+                    writes.remove(reg);
+                    iterator.remove();
+                    found = true;
+                }
+            }
+        } while (found);
+
+        if (moved.isEmpty())
+        {
+            return false;
+        }
+        List<Integer> indexes = new ArrayList<>(moved);
+        int offset = loop.insertPreheader(base, preheader);
+        for (int i = indexes.size() - 1; i >= 0; i--)
+        {
+            base.remove(indexes.get(i) + offset);
+        }
+        return true;
+    }
+
+    private static boolean isInvariant(List<IComponent> base, String reg, List<Integer> chain, Map<String, Integer> writes, boolean memory)
+    {
+        int first = chain.get(0), last = chain.get(chain.size() - 1);
+        for (int i = first; i <= last; i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            Set<String> reads = Liveness.reads(cmp);
+            if (chain.contains(i))
+            {
+                if (!isMovable(instruction, memory) || (i == first && reads.contains(reg)))
+                {
+                    return false;
+                }
+                for (String read : reads)
+                {
+                    if (!read.equals(reg) && writes.containsKey(read))
+                    {
+                        return false;
+                    }
+                }
+            }
+            else if (cmp.getFlag(TYPE).equals("label") || instruction.isBranch() || reads.contains(reg) || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                // The writes need to run together, and nothing can see the value part way through
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMovable(InstructionResult instruction, boolean memory)
+    {
+        String op = instruction.getOpcode();
+        if (!instruction.isInstruction() || instruction.isBranch() || instruction.isStore())
+        {
+            return false;
+        }
+        if (instruction.isLoad())
+        {
+            // Globals are always at a valid address, but other loads might only be safe when the loop runs
+            return memory && !CastResult.isIO(op) && (instruction.getBase().equals("r0") || instruction.getBase().equals("gp"));
+        }
+        if (op.equals("div") || op.equals("divu"))
+        {
+            return false;
+        }
+        return op.startsWith("mov") || Instructions.evaluate(op, 1, 1) != null || Instructions.evaluateImmediate(op, 1, 0) != null;
+    }
+
+    private LoopInvariantMotion() {}
+}
@@ -0,0 +1,325 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.LABEL;
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Replicates the body of counted loops, so the compare and branch runs once every few iterations, with -unroll2, -unroll4 or -unroll8
+ *
+ * r5 = 1000; while r5 > r0: r5 -= 1; ...; end      ->      (x4) r5 -= 1; ...; branch
+ *
+ * A loop is counted if a single register is added to by a constant once each iteration (outside of any if), and compared to a register which doesn't change, and both are known before the loop
+ * For an == or != test, only the difference between them has to be known, i.e. a pointer and its end from {@link InductionVariables}
+ * The remaining iterations (if the count isn't a multiple of the factor) are copies before the loop, and a loop which runs no more times than the factor is replaced entirely
+ * Only innermost loops with a single exit are unrolled, and the factor is reduced until the copies are at most {@link #BUDGET} instructions. Labels in each copy are renamed with a suffix, as in {@link LabelSimplification}
+ */
+public final class LoopUnrolling
+{
+    public static final int BUDGET = 64;
+
+    private static final int MAX_ITERATIONS = 1 << 20;
+
+    public static boolean accept(List<IComponent> base, int factor)
+    {
+        // Unrolled loops are still counted, so each is only unrolled once
+        boolean changed = false;
+        Set<String> unrolled = new HashSet<>();
+        for (boolean found = true; found; )
+        {
+            found = false;
+            List<Loop> loops = Loop.find(base);
+            for (Loop loop : loops)
+            {
+                Set<String> headers = headers(base, loop);
+                if (Collections.disjoint(headers, unrolled) && isInnermost(loop, loops) && unroll(base, loop, factor))
+                {
+                    unrolled.addAll(headers);
+                    found = changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean unroll(List<IComponent> base, Loop loop, int factor)
+    {
+        IComponent test = base.get(loop.getEnd());
+        InstructionResult branch = new InstructionResult(test);
+        Set<String> headers = headers(base, loop);
+        int body = loop.getStart() + headers.size();
+        if (!test.getFlag(TYPE).equals("break_conditional") || !loop.hasSingleExit(base))
+        {
+            return false;
+        }
+
+        // Only the loop test can go back to the header, and nothing outside the loop can go to it
+        for (int i = 0; i < base.size(); i++)
+        {
+            if (i != loop.getEnd() && !base.get(i).getFlag(TYPE).equals("label") && headers.contains(base.get(i).getFlag(LABEL)))
+            {
+                return false;
+            }
+        }
+
+        for (int i = body; i < loop.getEnd(); i++)
+        {
+            if (base.get(i).copy() == null)
+            {
+                return false;
+            }
+        }
+
+        // The counter: written once, by adding a constant, in the first or last block of the body
+        Map<String, Integer> writes = loop.getWrites(base);
+        String counter = null, bound = null;
+        for (int operand = 0; operand < 2; operand++)
+        {
+            String reg = branch.getArg(operand), other = branch.getArg(1 - operand);
+            if (writes.getOrDefault(reg, 0) == 1 && !writes.containsKey(other) && !reg.equals(other))
+            {
+                counter = reg;
+                bound = other;
+            }
+        }
+        int update = counter == null ? -1 : update(base, loop, body, counter);
+        if (update == -1)
+        {
+            return false;
+        }
+
+        // The values of the counter and bound when the loop is entered
+        // An == or != test only needs them relative to each other, i.e. a pointer and its end, which are both a register plus a constant
+        InstructionResult step = new InstructionResult(base.get(update));
+        int[] entry = entry(base, loop, counter, bound, branch.getOpcode().equals("beq") || branch.getOpcode().equals("bne"));
+        Integer constant = RegisterValues.immediate(step.getArg(2));
+        if (entry == null || constant == null)
+        {
+            return false;
+        }
+        int value = entry[0], limit = entry[1];
+
+        // Count the iterations, the same as the loop would
+        int iterations = 0;
+        Boolean taken;
+        do
+        {
+            Integer next = Instructions.evaluateImmediate(step.getOpcode(), value, constant);
+            if (next == null || ++iterations > MAX_ITERATIONS)
+            {
+                return false;
+            }
+            value = next;
+            taken = counter.equals(branch.getArg(0)) ? Instructions.evaluateBranch(branch.getOpcode(), value, limit) : Instructions.evaluateBranch(branch.getOpcode(), limit, value);
+            if (taken == null)
+            {
+                return false;
+            }
+        } while (taken);
+
+        // The largest factor which fits in the budget
+        int size = 0;
+        for (int i = body; i < loop.getEnd(); i++)
+        {
+            if (new InstructionResult(base.get(i)).isInstruction())
+            {
+                size++;
+            }
+        }
+        int copies = Math.min(factor, iterations);
+        while (copies > 1 && size * (iterations <= copies ? iterations : copies + iterations % copies) > BUDGET)
+        {
+            copies--;
+        }
+        if (copies <= 1 && iterations > 1)
+        {
+            return false;
+        }
+
+        // The remainder before the loop, then the loop with every test but the last removed
+        Set<String> labels = new HashSet<>();
+        base.forEach(cmp -> labels.add(cmp.getFlag(LABEL)));
+        List<IComponent> original = new ArrayList<>(base.subList(body, loop.getEnd()));
+        List<IComponent> unrolled = new ArrayList<>();
+        int remainder = iterations <= copies ? iterations : iterations % copies;
+        for (int i = 0; i < remainder; i++)
+        {
+            unrolled.addAll(copy(original, labels));
+        }
+        if (iterations > copies)
+        {
+            unrolled.addAll(base.subList(loop.getStart(), body));
+            unrolled.addAll(original);
+            for (int i = 1; i < copies; i++)
+            {
+                unrolled.addAll(copy(original, labels));
+            }
+            unrolled.add(test);
+        }
+        base.subList(loop.getStart(), loop.getEnd() + 1).clear();
+        base.addAll(loop.getStart(), unrolled);
+        return true;
+    }
+
+    /**
+     * @return the values of the counter and bound when the loop is entered, or null if they aren't known
+     */
+    private static int[] entry(List<IComponent> base, Loop loop, String counter, String bound, boolean relative)
+    {
+        // Each register is a constant added to either a known value (""), a register which hasn't been written, or the value written by an instruction which isn't known (r@n)
+        RegisterValues values = new RegisterValues();
+        Map<String, String> roots = new HashMap<>();
+        Map<String, Integer> offsets = new HashMap<>();
+        int version = 0;
+        for (int i = 0; i < loop.getStart(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (cmp.getFlag(TYPE).equals("label") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                values.clear();
+                roots.clear();
+                offsets.clear();
+            }
+            values.update(instruction);
+
+            String write = instruction.getWrite(), op = instruction.getOpcode();
+            if (!Liveness.isGeneral(write))
+            {
+                continue;
+            }
+            Integer imm = instruction.getArgs().size() > 2 ? RegisterValues.immediate(instruction.getArg(2)) : null;
+            if (values.get(write) != null)
+            {
+                roots.put(write, "");
+                offsets.put(write, values.get(write));
+            }
+            else if (op.equals("mov") || ((op.equals("addi") || op.equals("subi")) && imm != null))
+            {
+                String source = instruction.getArg(1);
+                int offset = offsets.getOrDefault(source, 0) + (op.equals("mov") ? 0 : Instructions.evaluateImmediate(op, 0, imm));
+                roots.put(write, roots.getOrDefault(source, source));
+                offsets.put(write, offset);
+            }
+            else
+            {
+                roots.put(write, write + "@" + ++version);
+                offsets.put(write, 0);
+            }
+        }
+
+        Integer value = values.get(counter), limit = values.get(bound);
+        if (value != null && limit != null)
+        {
+            return new int[] {value, limit};
+        }
+        if (relative && roots.getOrDefault(counter, counter).equals(roots.getOrDefault(bound, bound)))
+        {
+            return new int[] {offsets.getOrDefault(counter, 0), offsets.getOrDefault(bound, 0)};
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the instruction which adds a constant to the counter, or -1 if it isn't run every iteration
+     */
+    private static int update(List<IComponent> base, Loop loop, int body, String counter)
+    {
+        // Anything between the first and last label or branch in the body might be skipped
+        int first = loop.getEnd(), last = body - 1;
+        for (int i = body; i < loop.getEnd(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            if (base.get(i).getFlag(TYPE).equals("label") || (instruction.isBranch() && !instruction.getOpcode().startsWith("call")))
+            {
+                first = Math.min(first, i);
+                last = i;
+            }
+        }
+        for (int i = body; i < loop.getEnd(); i++)
+        {
+            InstructionResult instruction = new InstructionResult(base.get(i));
+            if (instruction.getWrite().equals(counter))
+            {
+                String op = instruction.getOpcode();
+                return (i < first || i > last) && (op.equals("addi") || op.equals("subi")) && instruction.getArg(1).equals(counter) ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of the body, with each label renamed to the next free suffix
+     */
+    private static List<IComponent> copy(List<IComponent> body, Set<String> labels)
+    {
+        Map<String, String> renamed = new HashMap<>();
+        for (IComponent cmp : body)
+        {
+            if (cmp.getFlag(TYPE).equals("label"))
+            {
+                renamed.put(cmp.getFlag(LABEL), rename(cmp.getFlag(LABEL), labels));
+            }
+        }
+        List<IComponent> copy = new ArrayList<>();
+        for (IComponent cmp : body)
+        {
+            String label = cmp.getFlag(LABEL);
+            copy.add(renamed.containsKey(label) ? cmp.copy().setFlag(LABEL, renamed.get(label)) : cmp.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * functionName_loopTypeN -> functionName_loopTypeN_a_u, and functionName_loopTypeN_sub_truthy -> functionName_loopTypeN_suba_truthy
+     */
+    private static String rename(String label, Set<String> labels)
+    {
+        String[] parts = label.split("_");
+        for (int i = 1; ; i++)
+        {
+            String suffix = Helpers.alphabetSuffix(i);
+            String candidate = parts.length >= 4 ? parts[0] + "_" + parts[1] + "_" + parts[2] + suffix + "_" + parts[3] : parts[0] + "_" + parts[1] + "_" + suffix + "_u";
+            if (labels.add(candidate))
+            {
+                return candidate;
+            }
+        }
+    }
+
+    private static Set<String> headers(List<IComponent> base, Loop loop)
+    {
+        Set<String> headers = new HashSet<>();
+        for (int i = loop.getStart(); i <= loop.getEnd() && base.get(i).getFlag(TYPE).equals("label"); i++)
+        {
+            headers.add(base.get(i).getFlag(LABEL));
+        }
+        return headers;
+    }
+
+    private static boolean isInnermost(Loop loop, List<Loop> loops)
+    {
+        for (Loop other : loops)
+        {
+            if (other != loop && loop.contains(other.getStart()) && loop.contains(other.getEnd()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private LoopUnrolling() {}
+}
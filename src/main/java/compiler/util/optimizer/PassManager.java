@@ -0,0 +1,150 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import compiler.component.IComponent;
+import compiler.util.events.OptimizerIterationEvent;
+
+/**
+ * Runs a list of {@link IPass}es over main or a function
+ * The first passes run once each, then the repeated passes run in order until none of them change anything (or only once, without a fixpoint), and then the final passes run once each
+ * A pass which is rerun runs once after the repeated passes, and if it changes anything the repeated passes run again over the result
+ */
+public final class PassManager
+{
+    private final List<IPass> first = new ArrayList<>();
+    private final List<IPass> repeated = new ArrayList<>();
+    private final List<IPass> rerun = new ArrayList<>();
+    private final List<IPass> last = new ArrayList<>();
+    private boolean fixpoint = true;
+
+    public PassManager first(IPass pass)
+    {
+        first.add(pass);
+        return this;
+    }
+
+    public PassManager repeat(IPass pass)
+    {
+        repeated.add(pass);
+        return this;
+    }
+
+    public PassManager rerun(IPass pass)
+    {
+        rerun.add(pass);
+        return this;
+    }
+
+    public PassManager then(IPass pass)
+    {
+        last.add(pass);
+        return this;
+    }
+
+    public PassManager setFixpoint(boolean fixpoint)
+    {
+        this.fixpoint = fixpoint;
+        return this;
+    }
+
+    /**
+     * @param statistics where to record the time and changes of each pass, or null to not record anything
+     */
+    public void run(String function, List<IComponent> base, PassStatistics statistics)
+    {
+        for (IPass pass : first)
+        {
+            run(pass, function, base, statistics);
+        }
+
+        int iteration = repeat(function, base, statistics, 0);
+        boolean changed = false;
+        for (IPass pass : rerun)
+        {
+            changed |= run(pass, function, base, statistics);
+        }
+        if (changed)
+        {
+            repeat(function, base, statistics, iteration);
+        }
+
+        for (IPass pass : last)
+        {
+            run(pass, function, base, statistics);
+        }
+    }
+
+    /**
+     * @return the number of iterations, counting on from the given one
+     */
+    private int repeat(String function, List<IComponent> base, PassStatistics statistics, int iteration)
+    {
+        boolean repeat;
+        do
+        {
+            OptimizerIterationEvent event = new OptimizerIterationEvent();
+            event.begin();
+            repeat = false;
+            for (IPass pass : repeated)
+            {
+                repeat |= run(pass, function, base, statistics);
+            }
+            iteration++;
+            if (event.shouldCommit())
+            {
+                event.function = function;
+                event.iteration = iteration;
+                event.components = base.size();
+                event.changed = repeat;
+                event.commit();
+            }
+        } while (repeat && fixpoint);
+        return iteration;
+    }
+
+    private boolean run(IPass pass, String function, List<IComponent> base, PassStatistics statistics)
+    {
+        if (statistics == null)
+        {
+            return pass.accept(base);
+        }
+
+        // Passes can change components in place (i.e. labels), so compare the compiled text
+        Map<IComponent, String> before = new IdentityHashMap<>();
+        for (IComponent cmp : base)
+        {
+            before.put(cmp, cmp.compile());
+        }
+
+        long start = System.nanoTime();
+        boolean changed = pass.accept(base);
+        long time = System.nanoTime() - start;
+
+        // Components which no longer exist were removed (or replaced), and the others might have been rewritten
+        int changes = 0;
+        if (changed)
+        {
+            for (IComponent cmp : base)
+            {
+                String text = before.remove(cmp);
+                if (text != null && !text.equals(cmp.compile()))
+                {
+                    changes++;
+                }
+            }
+            changes += before.size();
+        }
+        statistics.add(function, pass.getName(), time, changes);
+        return changed;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The time, number of runs and number of components changed by each pass, in each function. Shown with -time-passes
+ * See {@link PassManager}
+ */
+public final class PassStatistics
+{
+    private final Map<String, Map<String, Entry>> functions = new LinkedHashMap<>();
+    private final Map<String, Entry> totals = new LinkedHashMap<>();
+    private long time;
+
+    public void add(String function, String pass, long nanos, int changes)
+    {
+        functions.computeIfAbsent(function, key -> new LinkedHashMap<>()).computeIfAbsent(pass, key -> new Entry()).add(nanos, changes);
+        totals.computeIfAbsent(pass, key -> new Entry()).add(nanos, changes);
+        time += nanos;
+    }
+
+    /**
+     * @return the statistics for a pass in a single function, or null if it never ran
+     */
+    public Entry get(String function, String pass)
+    {
+        return functions.getOrDefault(function, new LinkedHashMap<>()).get(pass);
+    }
+
+    /**
+     * @return the statistics for a pass over all functions, or null if it never ran
+     */
+    public Entry getTotal(String pass)
+    {
+        return totals.get(pass);
+    }
+
+    public String report()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Total: %.3f ms\n", time / 1e6));
+        for (Map.Entry<String, Map<String, Entry>> function : functions.entrySet())
+        {
+            report(builder, function.getKey(), function.getValue());
+        }
+        report(builder, "All Functions", totals);
+        return builder.toString();
+    }
+
+    private void report(StringBuilder builder, String title, Map<String, Entry> passes)
+    {
+        builder.append(String.format("\n%s:\n\t%-24s%12s%12s%14s%10s\n", title, "Pass", "Runs", "Changes", "Time (ms)", "% Time"));
+        for (Map.Entry<String, Entry> pass : passes.entrySet())
+        {
+            Entry entry = pass.getValue();
+            builder.append(String.format("\t%-24s%12d%12d%14.3f%9.1f%%\n", pass.getKey(), entry.runs, entry.changes, entry.time / 1e6, time == 0 ? 0 : 100.0 * entry.time / time));
+        }
+    }
+
+    public static final class Entry
+    {
+        private long time;
+        private int runs, changes;
+
+        public long getTime()
+        {
+            return time;
+        }
+
+        public int getRuns()
+        {
+            return runs;
+        }
+
+        public int getChanges()
+        {
+            return changes;
+        }
+
+        private void add(long nanos, int changes)
+        {
+            this.time += nanos;
+            this.runs++;
+            this.changes += changes;
+        }
+    }
+}
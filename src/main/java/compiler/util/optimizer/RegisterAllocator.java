@@ -0,0 +1,282 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import compiler.component.ComponentLabel;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.*;
+
+/**
+ * Replaces the locals of a function (virtual registers, see {@link Helpers#isVirtualRegister(String)}) with physical registers, using a linear scan over their live intervals
+ * Registers which the function already saves (or r2, if it returns a value) are used first, so the frame only grows when it has to
+ * A local which can't be given a register is kept in a stack slot, and loaded into a free register around each instruction which uses it
+ */
+public final class RegisterAllocator
+{
+    private static final Pattern REGISTER = Pattern.compile("\\br[0-9]+\\b");
+    private static final List<String> REGISTERS = new ArrayList<>();
+
+    static
+    {
+        // r1 is left for the assembler
+        for (int i = 2; i <= 23; i++)
+        {
+            REGISTERS.add("r" + i);
+        }
+    }
+
+    /**
+     * @param analysis a copy of the function, with each call reading the arguments of the callee, which is used to find the live intervals
+     * @return the number of stack slots used, from 0(sp) upwards
+     */
+    public static int accept(List<IComponent> base, List<IComponent> analysis, Set<String> exit, boolean returnsValue)
+    {
+        // Each component has two points: 2i before it, where it reads, and 2i + 1 after it, where it writes
+        Liveness liveness = new Liveness(analysis, exit);
+        Map<String, BitSet> occupied = new HashMap<>();
+        for (int i = 0; i < analysis.size(); i++)
+        {
+            for (String reg : liveness.getLiveIn(i))
+            {
+                occupied.computeIfAbsent(reg, key -> new BitSet()).set(2 * i);
+            }
+            for (String reg : liveness.getLiveOut(i))
+            {
+                occupied.computeIfAbsent(reg, key -> new BitSet()).set(2 * i + 1);
+            }
+            InstructionResult instruction = new InstructionResult(analysis.get(i));
+            if (!instruction.getWrite().equals(""))
+            {
+                occupied.computeIfAbsent(instruction.getWrite(), key -> new BitSet()).set(2 * i + 1);
+            }
+            if (instruction.getOpcode().startsWith("call"))
+            {
+                // The callee might return a value in r2
+                occupied.computeIfAbsent("r2", key -> new BitSet()).set(2 * i + 1);
+            }
+        }
+
+        Map<String, BitSet> registers = new HashMap<>();
+        for (String reg : REGISTERS)
+        {
+            registers.put(reg, occupied.containsKey(reg) ? (BitSet) occupied.get(reg).clone() : new BitSet());
+        }
+        Set<String> saved = new HashSet<>();
+        if (returnsValue)
+        {
+            saved.add("r2");
+        }
+        for (IComponent cmp : analysis)
+        {
+            saved.add(new InstructionResult(cmp).getWrite());
+        }
+
+        // Linear scan, in order of the start of each interval
+        List<String> locals = new ArrayList<>();
+        for (String reg : occupied.keySet())
+        {
+            if (Helpers.isVirtualRegister(reg))
+            {
+                locals.add(reg);
+            }
+        }
+        locals.sort(Comparator.comparingInt((String reg) -> occupied.get(reg).nextSetBit(0)).thenComparing(reg -> reg));
+
+        Map<String, String> assigned = new HashMap<>();
+        List<String> spilled = new ArrayList<>();
+        for (String local : locals)
+        {
+            int start = occupied.get(local).nextSetBit(0), end = occupied.get(local).length();
+            String reg = find(registers, saved, start, end, Collections.emptySet());
+            if (reg == null)
+            {
+                // Spill whichever local ends last: either this one, or one which is the only thing in the way of a register
+                String victim = null;
+                for (Map.Entry<String, String> entry : assigned.entrySet())
+                {
+                    BitSet other = occupied.get(entry.getKey());
+                    BitSet without = (BitSet) registers.get(entry.getValue()).clone();
+                    without.clear(other.nextSetBit(0), other.length());
+                    if (other.length() > end && without.get(start, end).isEmpty() && (victim == null || other.length() > occupied.get(victim).length()))
+                    {
+                        victim = entry.getKey();
+                    }
+                }
+                if (victim == null)
+                {
+                    spilled.add(local);
+                    continue;
+                }
+                reg = assigned.remove(victim);
+                registers.get(reg).clear(occupied.get(victim).nextSetBit(0), occupied.get(victim).length());
+                spilled.add(victim);
+            }
+            assigned.put(local, reg);
+            registers.get(reg).set(start, end);
+            saved.add(reg);
+        }
+
+        // Each instruction which uses a spilled local needs a free register to load it into. If there isn't one, another local is spilled
+        List<Map<String, String>> temporaries;
+        while ((temporaries = temporaries(analysis, registers, saved, spilled)).size() < analysis.size())
+        {
+            String victim = null;
+            int index = temporaries.size();
+            for (Map.Entry<String, String> entry : assigned.entrySet())
+            {
+                BitSet local = occupied.get(entry.getKey());
+                BitSet without = (BitSet) registers.get(entry.getValue()).clone();
+                without.clear(local.nextSetBit(0), local.length());
+                if (local.nextSetBit(0) <= 2 * index && local.length() > 2 * index && without.get(2 * index, 2 * index + 2).isEmpty() && (victim == null || local.length() > occupied.get(victim).length()))
+                {
+                    victim = entry.getKey();
+                }
+            }
+            if (victim == null)
+            {
+                throw new InvalidAssemblyException("error.message.no_free_register");
+            }
+            String reg = assigned.remove(victim);
+            registers.get(reg).clear(occupied.get(victim).nextSetBit(0), occupied.get(victim).length());
+            spilled.add(victim);
+        }
+
+        // Replace the locals, and load or store spilled locals around each instruction
+        for (int i = 0, index = 0; i < analysis.size(); i++, index++)
+        {
+            IComponent cmp = base.get(index);
+            Set<String> reads = Liveness.reads(analysis.get(i));
+            String write = new InstructionResult(analysis.get(i)).getWrite();
+
+            Map<String, String> names = new HashMap<>(assigned);
+            names.putAll(temporaries.get(i));
+            List<IComponent> before = new ArrayList<>(), after = new ArrayList<>();
+            for (Map.Entry<String, String> entry : temporaries.get(i).entrySet())
+            {
+                String temp = entry.getValue(), slot = (4 * spilled.indexOf(entry.getKey())) + "(sp)";
+                if (reads.contains(entry.getKey()))
+                {
+                    before.add(Components.inherit(cmp, Components.instruction("ldw", temp, slot)));
+                }
+                if (write.equals(entry.getKey()))
+                {
+                    after.add(Components.inherit(cmp, Components.reads(new ComponentStatic(IComponent.format("stw", temp + ", " + slot + "\n")), temp, slot)));
+                }
+            }
+
+            base.set(index, rename(cmp, names));
+            base.addAll(index + 1, after);
+            base.addAll(index, before);
+            index += before.size() + after.size();
+        }
+        return spilled.size();
+    }
+
+    /**
+     * @return the register used for each spilled local, by the index of each instruction, up to the first which has too few free registers
+     */
+    private static List<Map<String, String>> temporaries(List<IComponent> analysis, Map<String, BitSet> registers, Set<String> saved, List<String> spilled)
+    {
+        List<Map<String, String>> temporaries = new ArrayList<>();
+        for (int i = 0; i < analysis.size(); i++)
+        {
+            Set<String> reads = Liveness.reads(analysis.get(i));
+            String write = new InstructionResult(analysis.get(i)).getWrite();
+            Map<String, String> temps = new HashMap<>();
+            for (String local : spilled)
+            {
+                if (reads.contains(local) || write.equals(local))
+                {
+                    String temp = find(registers, saved, 2 * i, 2 * i + 2, new HashSet<>(temps.values()));
+                    if (temp == null)
+                    {
+                        return temporaries;
+                    }
+                    temps.put(local, temp);
+                }
+            }
+            temporaries.add(temps);
+        }
+        return temporaries;
+    }
+
+    /**
+     * @return the first register which is free between start (inclusive) and end (exclusive), preferring those in saved, or null if there isn't one
+     */
+    private static String find(Map<String, BitSet> registers, Set<String> saved, int start, int end, Set<String> exclude)
+    {
+        String free = null;
+        for (String reg : REGISTERS)
+        {
+            if (!exclude.contains(reg) && registers.get(reg).get(start, end).isEmpty())
+            {
+                if (saved.contains(reg))
+                {
+                    return reg;
+                }
+                if (free == null)
+                {
+                    free = reg;
+                }
+            }
+        }
+        return free;
+    }
+
+    private static IComponent rename(IComponent cmp, Map<String, String> names)
+    {
+        String text = cmp.compile();
+        if (!text.equals(rename(text, names)))
+        {
+            IComponent copy;
+            String label = cmp.getFlag(LABEL);
+            if (!label.equals("") && text.contains(label))
+            {
+                // Conditional branches are the only labelled components which read registers
+                int index = text.lastIndexOf(label);
+                copy = new ComponentLabel(rename(text.substring(0, index), names) + "%s" + text.substring(index + label.length()), label);
+            }
+            else
+            {
+                copy = new ComponentStatic(rename(text, names));
+            }
+            for (IComponent.Flag flag : IComponent.Flag.values())
+            {
+                String value = cmp.getFlag(flag);
+                if (!value.equals(""))
+                {
+                    copy.setFlag(flag, flag == WRITE_REGISTER || flag == READ_REGISTERS ? rename(value, names) : value);
+                }
+            }
+            return copy;
+        }
+        return cmp;
+    }
+
+    private static String rename(String text, Map<String, String> names)
+    {
+        Matcher matcher = REGISTER.matcher(text);
+        StringBuffer buffer = new StringBuffer();
+        while (matcher.find())
+        {
+            matcher.appendReplacement(buffer, names.getOrDefault(matcher.group(), matcher.group()));
+        }
+        return matcher.appendTail(buffer).toString();
+    }
+
+    private RegisterAllocator() {}
+}
@@ -0,0 +1,111 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import compiler.AssemblyCompiler;
+import compiler.util.literal.InstructionResult;
+import compiler.util.literal.IntResult;
+
+/**
+ * Tracks the known constant values of registers through straight line code
+ * Any label (a possible jump target) must clear all known values
+ */
+public final class RegisterValues
+{
+    private final Map<String, Integer> values = new HashMap<>();
+
+    public static Integer immediate(String input)
+    {
+        IntResult result = new IntResult(input, AssemblyCompiler.INSTANCE);
+        return result.validLiteral() ? result.getValue() : null;
+    }
+
+    public Integer get(String register)
+    {
+        return register.equals("r0") ? Integer.valueOf(0) : values.get(register);
+    }
+
+    public boolean isKnown(String register)
+    {
+        return get(register) != null;
+    }
+
+    public void clear()
+    {
+        values.clear();
+    }
+
+    /**
+     * Updates the known values after an instruction has been executed
+     */
+    public void update(InstructionResult instruction)
+    {
+        String write = instruction.getWrite();
+        if (instruction.getOpcode().equals("call"))
+        {
+            // By convention, a function may only modify r2 (the return value)
+            values.remove("r2");
+        }
+        if (!write.equals(""))
+        {
+            Integer value = evaluate(instruction);
+            if (value == null)
+            {
+                values.remove(write);
+            }
+            else
+            {
+                values.put(write, value);
+            }
+        }
+    }
+
+    /**
+     * Computes the value written by an instruction
+     *
+     * @return the value, or null if it isn't known
+     */
+    public Integer evaluate(InstructionResult instruction)
+    {
+        String op = instruction.getOpcode();
+        Integer a, b;
+        switch (op)
+        {
+            case "mov":
+                return get(instruction.getArg(1));
+            case "movi":
+            case "movia":
+                return immediate(instruction.getArg(1));
+            case "movui":
+                a = immediate(instruction.getArg(1));
+                return a == null ? null : a & 0xFFFF;
+            case "movhi":
+                a = immediate(instruction.getArg(1));
+                return a == null ? null : a << 16;
+            default:
+                if (instruction.isLoad() || instruction.isBranch() || instruction.getArgs().size() != 3)
+                {
+                    return null;
+                }
+                a = get(instruction.getArg(1));
+                b = get(instruction.getArg(2));
+                if (a == null)
+                {
+                    return null;
+                }
+                if (b != null)
+                {
+                    return Instructions.evaluate(op, a, b);
+                }
+                b = immediate(instruction.getArg(2));
+                return b == null ? null : Instructions.evaluateImmediate(op, a, b);
+        }
+    }
+}
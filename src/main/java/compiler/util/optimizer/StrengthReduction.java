@@ -0,0 +1,126 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Replaces multiplication and division by constants with cheaper shifts and adds
+ *
+ * muli r3, r3, 8                  ->      slli r3, r3, 3
+ * muli r3, r4, 10                 ->      slli r3, r4, 2; add r3, r3, r4; slli r3, r3, 1
+ * movi r5, 16; divu r3, r4, r5    ->      movi r5, 16; srli r3, r4, 4
+ *
+ * Division by constants that aren't powers of two is left alone. A magic-number sequence (mulxss or mulxuu, then shifts) reads the dividend again after the multiply, so it needs a scratch register when the destination is the dividend, and there isn't one
+ * When optimizing for size (-Os), only replacements by a single instruction are used
+ * See {@link Components#muli(String, String, int)} and {@link Components#divi(String, String, String, String, int)}
+ */
+public final class StrengthReduction
+{
+    /**
+     * @param expand if an instruction can be replaced by a longer (but faster) sequence
+     */
+    public static boolean accept(List<IComponent> base, boolean expand)
+    {
+        boolean changed = false;
+        RegisterValues values = new RegisterValues();
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            if (cmp.getFlag(TYPE).equals("label"))
+            {
+                values.clear();
+                continue;
+            }
+
+            InstructionResult instruction = new InstructionResult(cmp);
+            if (!instruction.isInstruction())
+            {
+                continue;
+            }
+
+            List<IComponent> replacement = reduce(instruction, values, expand);
+            if (replacement != null)
+            {
+                base.addAll(i, Components.inherit(base.remove(i), replacement));
+                for (IComponent added : replacement)
+                {
+                    values.update(new InstructionResult(added));
+                }
+                i += replacement.size() - 1;
+                changed = true;
+            }
+            else
+            {
+                values.update(instruction);
+            }
+        }
+        return changed;
+    }
+
+    private static List<IComponent> reduce(InstructionResult instruction, RegisterValues values, boolean expand)
+    {
+        String op = instruction.getOpcode(), rX = instruction.getWrite(), rY = instruction.getArg(1), rZ = instruction.getArg(2);
+        if (rX.equals("") || rX.equals("r0"))
+        {
+            return null;
+        }
+        switch (op)
+        {
+            case "muli":
+                Integer imm = RegisterValues.immediate(rZ);
+                return imm == null ? null : accept(Components.muli(rX, rY, imm), "muli", expand);
+            case "mul":
+                if (!rZ.equals("r0") && values.isKnown(rZ))
+                {
+                    return accept(Components.muli(rX, rY, values.get(rZ)), "muli", expand);
+                }
+                if (!rY.equals("r0") && values.isKnown(rY))
+                {
+                    return accept(Components.muli(rX, rZ, values.get(rY)), "muli", expand);
+                }
+                return null;
+            case "div":
+            case "divu":
+                if (!rZ.equals("r0") && values.isKnown(rZ) && values.get(rZ) != 0)
+                {
+                    int value = values.get(rZ);
+                    return accept(Components.divi(rX, rY, op.equals("div") ? "/" : "?/", String.valueOf(value), value), op, expand);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the sequence, or null if it still needs the original (expensive) operation
+     */
+    private static List<IComponent> accept(List<IComponent> sequence, String op, boolean expand)
+    {
+        if (sequence.isEmpty() || (!expand && sequence.size() > 1))
+        {
+            return null;
+        }
+        for (IComponent cmp : sequence)
+        {
+            if (new InstructionResult(cmp).getOpcode().equals(op))
+            {
+                return null;
+            }
+        }
+        return sequence;
+    }
+
+    private StrengthReduction() {}
+}
@@ -0,0 +1,147 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util.optimizer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.literal.CastResult;
+import compiler.util.literal.InstructionResult;
+
+import static compiler.component.IComponent.Flag.TYPE;
+
+/**
+ * Local value numbering: removes common subexpressions and redundant loads within a basic block
+ *
+ * add r5, r3, r4; add r6, r4, r3          ->      add r5, r3, r4; mov r6, r5
+ * ldw r6, 0(r4); ldw r8, 0(r4)            ->      ldw r6, 0(r4); mov r8, r6
+ * ldw r6, 0(r4); stw r3, 0(r7); ldw r8, 0(r4)     (unchanged)
+ *
+ * Each register has a version, which changes whenever it is written, so a value is only reused while its operands and the register holding it are unchanged
+ * Loads are identified by their base register, offset and width (see {@link CastResult}). Any store or call might change memory, so they forget every load, and io loads are never reused
+ * The moves which replace instructions are left for {@link CopyPropagation} and {@link DeadStoreElimination}
+ */
+public final class ValueNumbering
+{
+    public static boolean accept(List<IComponent> base)
+    {
+        boolean changed = false;
+        Map<String, Integer> versions = new HashMap<>();
+        Map<String, String> available = new HashMap<>(); // Value -> register@version which holds it
+        Map<String, Integer> positions = new HashMap<>(); // Value -> the instruction which computed it
+        int position = 0;
+        for (int i = 0; i < base.size(); i++)
+        {
+            IComponent cmp = base.get(i);
+            InstructionResult instruction = new InstructionResult(cmp);
+            String op = instruction.getOpcode();
+            if (cmp.getFlag(TYPE).equals("label") || op.equals("call") || op.equals("callr") || (!instruction.isInstruction() && cmp.compile().trim().contains("\n")))
+            {
+                // Values are unknown at any possible jump target, and a call might write to memory or any register
+                available.clear();
+                continue;
+            }
+            if (instruction.isInstruction())
+            {
+                position++;
+            }
+            if (instruction.isStore())
+            {
+                available.keySet().removeIf(value -> value.startsWith("ld"));
+                continue;
+            }
+
+            String rX = instruction.getWrite();
+            if (rX.equals(""))
+            {
+                continue;
+            }
+
+            String value = value(instruction, versions);
+            String holder = value == null ? null : available.get(value);
+            String rY = holder == null || !isValid(holder, versions) ? "" : holder.substring(0, holder.indexOf('@'));
+
+            // A load straight after the same load is left, as a move would have to wait for the first load anyway
+            boolean waits = instruction.isLoad() && positions.getOrDefault(value, -2) == position - 1;
+            if (Liveness.isGeneral(rX) && Liveness.isGeneral(rY) && !waits)
+            {
+                if (rY.equals(rX))
+                {
+                    // rX already holds this value
+                    base.remove(i--);
+                    position--;
+                }
+                else
+                {
+                    base.set(i, Components.inherit(cmp, Components.mov(rX, rY)));
+                    versions.merge(rX, 1, Integer::sum);
+                }
+                changed = true;
+                continue;
+            }
+
+            int version = versions.merge(rX, 1, Integer::sum);
+            if (value != null && rY.equals(""))
+            {
+                available.put(value, rX + "@" + version);
+                positions.put(value, position);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return a name for the value computed by an instruction, or null if it can't be reused
+     */
+    private static String value(InstructionResult instruction, Map<String, Integer> versions)
+    {
+        String op = instruction.getOpcode();
+        if (instruction.isLoad())
+        {
+            if (CastResult.isIO(op))
+            {
+                return null;
+            }
+            return "ld" + CastResult.getWidth(op) + (CastResult.isUnsigned(op) ? "u" : "") + " " + instruction.getOffset() + "(" + operand(instruction.getBase(), versions) + ")";
+        }
+        if (instruction.isBranch() || op.startsWith("mov") || (Instructions.evaluate(op, 1, 1) == null && Instructions.evaluateImmediate(op, 1, 0) == null))
+        {
+            return null;
+        }
+
+        List<String> args = instruction.getArgs();
+        if (args.size() != 3)
+        {
+            return null;
+        }
+        String a = operand(args.get(1), versions), b = operand(args.get(2), versions);
+        String swapped = Instructions.swappedForm(op);
+        if (swapped != null && (swapped + b + a).compareTo(op + a + b) < 0)
+        {
+            // i.e. cmplt r3, r4, r5 and cmpgt r3, r5, r4 are the same value
+            return swapped + " " + b + ", " + a;
+        }
+        return op + " " + a + ", " + b;
+    }
+
+    private static String operand(String arg, Map<String, Integer> versions)
+    {
+        return Helpers.REGISTERS.contains(arg) && !arg.equals("r0") ? arg + "@" + versions.getOrDefault(arg, 0) : arg;
+    }
+
+    private static boolean isValid(String holder, Map<String, Integer> versions)
+    {
+        int index = holder.indexOf('@');
+        return versions.getOrDefault(holder.substring(0, index), 0) == Integer.parseInt(holder.substring(index + 1));
+    }
+
+    private ValueNumbering() {}
+}
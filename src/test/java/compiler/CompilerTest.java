@@ -7,35 +7,126 @@
 package compiler;
 
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import compiler.util.CompileFlag;
+import compiler.util.CompileMetrics;
+import compiler.util.Diagnostic;
 import compiler.util.Helpers;
 import compiler.util.InvalidAssemblyException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestFactory;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 class CompilerTest
 {
     @TestFactory
     Stream<DynamicTest> testMatches()
     {
-        return IntStream.rangeClosed(1, 28).mapToObj(x -> "test" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
+        return IntStream.rangeClosed(1, 31).mapToObj(x -> "test" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
             String inputFile = Helpers.loadResource("sources/" + x + ".s");
             String outputFile = Helpers.loadResource("results/" + x + ".s");
             assertEquals(outputFile, AssemblyCompiler.INSTANCE.compile(inputFile));
         }));
     }
 
+    @TestFactory
+    Stream<DynamicTest> testFlags()
+    {
+        return Stream.of(
+                testWithFlags("gp1", CompileFlag.GLOBAL_POINTER),
+                testWithFlags("unroll1", CompileFlag.UNROLL_4)
+        );
+    }
+
     @TestFactory
     Stream<DynamicTest> testExceptions()
     {
-        return IntStream.rangeClosed(1, 6).mapToObj(x -> "exc" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
+        return IntStream.rangeClosed(1, 7).mapToObj(x -> "exc" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
             String inputFile = Helpers.loadResource("fails/" + x + ".s");
             assertThrows(InvalidAssemblyException.class, () -> AssemblyCompiler.INSTANCE.compile(inputFile));
         }));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCompileAll()
+    {
+        String input = Helpers.loadResource("fails/multiple.s");
+        CompileResult result = AssemblyCompiler.INSTANCE.compileAll(input, EnumSet.noneOf(CompileFlag.class));
+
+        // The body of the if is skipped, as the condition failed, and the rest of main still compiles
+        assertTrue(result.hasErrors());
+        assertEquals(Arrays.asList(8, 9, 16), result.getDiagnostics().stream().filter(diagnostic -> diagnostic.getSeverity() == Diagnostic.Severity.FATAL).map(Diagnostic::getLineNumber).collect(Collectors.toList()));
+        assertNotNull(result.getOutput());
+        assertTrue(result.getOutput().contains("r5"));
+        assertFalse(result.getOutput().contains("r4"));
+        assertEquals("error.message.invalid_variable_name", result.getException().getKey());
+
+        assertThrows(InvalidAssemblyException.class, () -> AssemblyCompiler.INSTANCE.compile(input));
+        assertFalse(AssemblyCompiler.INSTANCE.compileAll(Helpers.loadResource("sources/test5.s"), EnumSet.noneOf(CompileFlag.class)).hasErrors());
+    }
+
+    @Test
+    void testStats()
+    {
+        String input = Helpers.loadResource("sources/test21.s");
+        String output = AssemblyCompiler.INSTANCE.compile(input, EnumSet.of(CompileFlag.STATS));
+        CompileMetrics metrics = AssemblyCompiler.INSTANCE.getMetrics();
+
+        assertEquals(AssemblyCompiler.INSTANCE.compile(input), output);
+        assertEquals(1, metrics.getTimer("parse").getCount());
+        assertEquals(2, metrics.getTimer("keyword.KeywordWhile").getCount());
+        assertEquals(2, metrics.getTimer("optimize").getCount());
+        assertEquals(1, metrics.getCounter("functions"));
+        assertEquals(output.length(), metrics.getCounter("output_bytes"));
+        assertTrue(metrics.toJson().contains("\"keyword.KeywordWhile\""));
+        assertNull(AssemblyCompiler.INSTANCE.getMetrics());
+    }
+
+    @Test
+    void testFlightRecorderEvents() throws IOException
+    {
+        Path file = Files.createTempFile("compiler", ".jfr");
+        try (Recording recording = new Recording())
+        {
+            recording.enable("compiler.Phase");
+            recording.enable("compiler.Keyword");
+            recording.enable("compiler.OptimizerIteration");
+            recording.start();
+            AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/test21.s"));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(3, events.stream().filter(e -> e.getEventType().getName().equals("compiler.Phase")).count());
+            assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("compiler.Keyword") && e.getString("keyword").equals("KeywordWhile") && e.getInt("line") > 0));
+            assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("compiler.OptimizerIteration") && e.getString("function").equals("SelectionSort")));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    private DynamicTest testWithFlags(String name, CompileFlag... flags)
+    {
+        return DynamicTest.dynamicTest(name, () -> {
+            String inputFile = Helpers.loadResource("sources/" + name + ".s");
+            String outputFile = Helpers.loadResource("results/" + name + ".s");
+            assertEquals(outputFile, AssemblyCompiler.INSTANCE.compile(inputFile, EnumSet.copyOf(Arrays.asList(flags))));
+        });
+    }
+}
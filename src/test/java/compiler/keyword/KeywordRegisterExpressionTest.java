@@ -134,6 +134,32 @@ class KeywordRegisterExpressionTest
         assertEquals("    orhi            r5, r5, 0xFF\n", stub.compile());
     }
 
+    @Test
+    void apply13()
+    {
+        // rX OP= IMM, with unsigned division and modulo by a power of two
+        keyword.apply("r5", new StringBuilder(" ?/= 8;"), stub);
+        keyword.apply("r6", new StringBuilder(" ?%= 8;"), stub);
+        assertEquals("    srli            r5, r5, 3\n    andi            r6, r6, 7\n", stub.compile());
+    }
+
+    @Test
+    void apply14()
+    {
+        // rX = rY OP IMM, with immediate division
+        keyword.apply("r5", new StringBuilder(" = r6 / 10;"), stub);
+        assertEquals("    movi            r5, 10\n    div             r5, r6, r5\n", stub.compile());
+    }
+
+    @Test
+    void apply15()
+    {
+        // rX = IMM / rX = rY OP IMM, with values outside 16 bits
+        keyword.apply("r5", new StringBuilder(" = 0x12345678;"), stub);
+        keyword.apply("r6", new StringBuilder(" |= 0x10000;"), stub);
+        assertEquals("    movhi           r5, 4660\n    ori             r5, r5, 22136\n    orhi            r6, r6, 1\n", stub.compile());
+    }
+
     @Test
     void applyException1()
     {
@@ -155,4 +181,18 @@ class KeywordRegisterExpressionTest
         assertThrows(InvalidAssemblyException.class, () -> keyword.apply("r1", new StringBuilder(" ?&= r2;"), stub));
     }
 
+    @Test
+    void applyException4()
+    {
+        // No register modulo
+        assertThrows(InvalidAssemblyException.class, () -> keyword.apply("r1", new StringBuilder(" ?%= r2;"), stub));
+    }
+
+    @Test
+    void applyException5()
+    {
+        // Immediate values which can't be split without an extra register
+        assertThrows(InvalidAssemblyException.class, () -> keyword.apply("r1", new StringBuilder(" += 100000;"), stub));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.Optimizer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConstantPropagationTest
+{
+    @Test
+    void accept1()
+    {
+        // Folding a chain of operations into a single constant
+        test("\tmovi            r3, 34\n",
+                Components.movi("r3", "4"),
+                Components.opi("r3", "r3", "*", "8"),
+                Components.opi("r3", "r3", "+", "2")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Register operations with a known operand become immediate operations
+        test("\tmovi            r4, 3\n" +
+                        "\taddi            r5, r6, 3\n" +
+                        "\tcmpgti          r7, r6, 3\n" +
+                        "\tsub             r8, r4, r6\n",
+                Components.movi("r4", "3"),
+                Components.op("r5", "r4", "+", "r6"),
+                Components.op("r7", "r4", "<", "r6"),
+                Components.op("r8", "r4", "-", "r6")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Large values and conditional branches with known operands
+        test("labelA:\n" +
+                        "\tmovhi           r4, 1\n" +
+                        "\tbr              labelA\n",
+                Components.label("labelA"),
+                Components.movi("r4", "256"),
+                Components.opi("r4", "r4", "<<", "8"),
+                Components.brOp("r4", "==", "r0", "labelB"),
+                Components.brOp("r4", ">", "r0", "labelA"),
+                Components.mov("r5", "r4")
+        );
+    }
+
+    @Test
+    void accept4()
+    {
+        // Values are unknown after a label
+        test("\tmovi            r4, 3\n" +
+                        "labelA:\n" +
+                        "\tadd             r5, r5, r4\n" +
+                        "\tbr              labelA\n",
+                Components.movi("r4", "3"),
+                Components.label("labelA"),
+                Components.op("r5", "r5", "+", "r4"),
+                Components.br("labelA")
+        );
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        // Most of these values are never read, so dead store elimination would remove them
+        Optimizer.accept(list, "simplify_names", "dead_stores", "loop_invariants");
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
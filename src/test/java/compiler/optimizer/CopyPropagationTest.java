@@ -0,0 +1,84 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.CopyPropagation;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CopyPropagationTest
+{
+    @Test
+    void accept1()
+    {
+        // Copies are replaced in instructions, loads, stores and branches
+        test("\tmov             r5, r4\n" +
+                        "\tadd             r6, r4, r3\n" +
+                        "\tldw             r7, 4(r4)\n" +
+                        "\tstw             r4, 0(r4)\n" +
+                        "\tblt             r4, r3, labelA\n",
+                Components.mov("r5", "r4"),
+                Components.op("r6", "r5", "+", "r3"),
+                Components.instruction("ldw", "r7", "4(r5)"),
+                new ComponentStatic(IComponent.format("stw", "r5, 0(r5)\n")),
+                Components.brOp("r5", "<", "r3", "labelA")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Copies end when either register is written, or at a label or call
+        test("\tmov             r5, r4\n" +
+                        "\taddi            r4, r4, 1\n" +
+                        "\tadd             r6, r5, r5\n" +
+                        "\tmov             r7, r6\n" +
+                        "labelA:\n" +
+                        "\tadd             r8, r7, r0\n" +
+                        "\tmov             r9, r8\n" +
+                        "\tcall            function\n" +
+                        "\tmov             r2, r9\n",
+                Components.mov("r5", "r4"),
+                Components.opi("r4", "r4", "+", "1"),
+                Components.op("r6", "r5", "+", "r5"),
+                Components.mov("r7", "r6"),
+                Components.label("labelA"),
+                Components.op("r8", "r7", "+", "r0"),
+                Components.mov("r9", "r8"),
+                Components.call("function"),
+                Components.mov("r2", "r9")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Self moves, including ones left after replacing a copy
+        test("\tmov             r4, r3\n",
+                Components.mov("r3", "r3"),
+                Components.mov("r4", "r3"),
+                Components.mov("r3", "r4"),
+                Components.mov("r0", "r0")
+        );
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        CopyPropagation.accept(list);
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.DataLayout;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DataLayoutTest
+{
+    @Test
+    void accept1()
+    {
+        // Only small data variables accessed through r0 are changed
+        List<IComponent> list = new ArrayList<>(Arrays.asList(
+                new ComponentStatic(IComponent.format("ldw", "r3, small(r0)\n")),
+                new ComponentStatic(IComponent.format("stb", "r3, small(r0)\n")),
+                new ComponentStatic(IComponent.format("ldw", "r3, 4(r5)\n")),
+                new ComponentStatic(IComponent.format("ldw", "r3, large(r0)\n")),
+                Components.instruction("movia", "r4", "small"),
+                Components.instruction("movia", "r5", "large")
+        ));
+        DataLayout.accept(list, new HashSet<>(Arrays.asList("small")));
+        assertEquals("\tldw             r3, %gprel(small)(gp)\n" +
+                "\tstb             r3, %gprel(small)(gp)\n" +
+                "\tldw             r3, 4(r5)\n" +
+                "\tldw             r3, large(r0)\n" +
+                "\taddi            r4, gp, %gprel(small)\n" +
+                "\tmovia           r5, large\n", Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import compiler.AssemblyCompiler;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.DeadStoreElimination;
+import compiler.util.optimizer.Liveness;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadStoreEliminationTest
+{
+    @Test
+    void accept1()
+    {
+        // Writes which are overwritten before being read
+        test("\tmov             r3, r5\n" +
+                        "\tadd             r4, r3, r3\n",
+                Liveness.mainExit(),
+                Components.mov("r3", "r4"),
+                Components.movi("r4", "3"),
+                Components.mov("r3", "r5"),
+                Components.op("r4", "r3", "+", "r3")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Values read around a loop, or at a branch target, are live
+        test("\tmovi            r3, 1\n" +
+                        "labelA:\n" +
+                        "\taddi            r3, r3, 1\n" +
+                        "\tblt             r3, r5, labelA\n" +
+                        "\tmovi            r2, 0\n",
+                Liveness.functionExit(true),
+                Components.movi("r3", "1"),
+                Components.label("labelA"),
+                Components.mov("r4", "r3"),
+                Components.opi("r3", "r3", "+", "1"),
+                Components.brOp("r3", "<", "r5", "labelA"),
+                Components.movi("r2", "0"),
+                Components.movi("r6", "7")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Side effects are kept: stores, io loads and calls (which could read any register)
+        test("\tmovi            r3, 1\n" +
+                        "\tstw             r3, 0(r4)\n" +
+                        "\tldwio           r5, 0(r4)\n" +
+                        "\tcall            function\n",
+                Liveness.functionExit(false),
+                Components.movi("r3", "1"),
+                new ComponentStatic(IComponent.format("stw", "r3, 0(r4)\n")),
+                Components.instruction("ldwio", "r5", "0(r4)"),
+                Components.call("function"),
+                Components.instruction("ldw", "r6", "0(r4)"),
+                Components.movi("r7", "2")
+        );
+    }
+
+    @Test
+    void testCalleeSaved()
+    {
+        // Only registers which are still written need to be saved
+        String output = AssemblyCompiler.INSTANCE.compile("compile nios-ii de0\nmain:\n    call F\nend\n\nfunction F:\n    r3 = r4 + 1\n    r5 = r4 * r4\n    r2 = r3 + 2\nend\n");
+        assertTrue(output.contains("stw             r3, 0(sp)\n"));
+        assertFalse(output.contains("r5"));
+    }
+
+    @Test
+    void testReads()
+    {
+        assertEquals(Arrays.asList("r4", "r5"), new ArrayList<>(Liveness.reads(Components.op("r3", "r4", "+", "r5"))));
+        assertEquals(Arrays.asList("r6"), new ArrayList<>(Liveness.reads(Components.instruction("ldw", "r3", "8(r6)"))));
+        assertTrue(Liveness.reads(Components.movi("r3", "4")).isEmpty());
+        assertEquals(Helpers.REGISTERS, Liveness.reads(Components.call("function")));
+    }
+
+    private void test(String exp, Set<String> exit, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        DeadStoreElimination.accept(list, exit);
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
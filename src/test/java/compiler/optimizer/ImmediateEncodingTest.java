@@ -0,0 +1,126 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.Optimizer;
+import compiler.util.literal.InstructionResult;
+import compiler.util.optimizer.Instructions;
+import compiler.util.optimizer.RegisterValues;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImmediateEncodingTest
+{
+    private static final int[] VALUES = {0, 1, -1, 0x7FFF, 0x8000, -0x8000, -0x8001, 0xFFFF, 0x10000, 0x12345678, -4, -65536, 65534, 0x0FFFFFFF, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    private static final String[] OPERATIONS = {"addi", "subi", "muli", "andi", "ori", "xori", "slli", "srai", "srli", "cmpeqi", "cmpnei", "cmplti", "cmpgti", "cmplei", "cmpgei", "cmpltui", "cmpgtui", "cmpleui", "cmpgeui"};
+
+    @Test
+    void accept1()
+    {
+        // Constants use the shortest sequence
+        test("\tmovi            r3, -5\n" +
+                        "\tmovui           r4, 40000\n" +
+                        "\tmovhi           r5, 1\n" +
+                        "\tmovhi           r6, 4660\n" +
+                        "\tori             r6, r6, 22136\n" +
+                        "\tmovia           r7, list\n",
+                Components.instruction("movia", "r3", "-5"),
+                Components.movi("r4", "40000"),
+                Components.instruction("movia", "r5", "65536"),
+                Components.movi("r6", "0x12345678"),
+                Components.instruction("movia", "r7", "list")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Immediate operations are split, or the value is loaded into rX first
+        test("\torhi            r3, r3, 1\n" +
+                        "\txori            r4, r4, 4\n" +
+                        "\txorhi           r4, r4, 1\n" +
+                        "\tsrli            r5, r5, 2\n" +
+                        "\tslli            r5, r5, 2\n" +
+                        "\taddi            r6, r6, 32767\n" +
+                        "\taddi            r6, r6, 7233\n" +
+                        "\tmovhi           r7, 2\n" +
+                        "\tadd             r7, r8, r7\n" +
+                        "\taddi            r8, r8, 100000\n",
+                Components.opi("r3", "r3", "|", "0x10000"),
+                Components.opi("r4", "r4", "^", "0x10004"),
+                Components.opi("r5", "r5", "&", "-4"),
+                Components.opi("r6", "r6", "+", "40000"),
+                Components.opi("r7", "r8", "+", "0x20000"),
+                Components.opi("r8", "r8", "+", "100000")
+        );
+    }
+
+    @Test
+    void constant()
+    {
+        for (int value : VALUES)
+        {
+            List<IComponent> sequence = Components.constant("r3", String.valueOf(value), value);
+            assertEquals(value, (int) evaluate(sequence, 0), "rX = " + value);
+            assertTrue(sequence.size() <= 2);
+        }
+    }
+
+    @Test
+    void immediate()
+    {
+        for (String opi : OPERATIONS)
+        {
+            for (int value : VALUES)
+            {
+                List<IComponent> sequence = Components.immediate(opi, "r3", "r4", String.valueOf(value), value);
+                for (int x : VALUES)
+                {
+                    String message = x + " " + opi + " " + value;
+                    Integer expected = Instructions.fitsImmediate(opi, value) ? Instructions.evaluateImmediate(opi, x, value) : Instructions.evaluate(Instructions.registerForm(opi), x, value);
+                    assertEquals(expected, evaluate(sequence, x), message);
+                    for (IComponent cmp : sequence)
+                    {
+                        // Every instruction must be encodable
+                        InstructionResult instruction = new InstructionResult(cmp);
+                        Integer imm = RegisterValues.immediate(instruction.getArg(instruction.getArgs().size() - 1));
+                        assertTrue(imm == null || instruction.getOpcode().equals("mov") || Instructions.fitsImmediate(instruction.getOpcode(), imm), message);
+                    }
+                }
+            }
+        }
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        Optimizer.accept(list, "simplify_names");
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+
+    /**
+     * Evaluates a sequence computing r3 from r4
+     */
+    private Integer evaluate(List<IComponent> sequence, int x)
+    {
+        RegisterValues values = new RegisterValues();
+        values.update(new InstructionResult(Components.instruction("movia", "r4", String.valueOf(x))));
+        for (IComponent cmp : sequence)
+        {
+            values.update(new InstructionResult(cmp));
+        }
+        return values.get("r3");
+    }
+}
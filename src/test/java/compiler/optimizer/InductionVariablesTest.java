@@ -0,0 +1,205 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import compiler.AssemblyCompiler;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import compiler.util.optimizer.InductionVariables;
+import compiler.util.optimizer.Liveness;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InductionVariablesTest
+{
+    @Test
+    void accept1()
+    {
+        // An address computed from the counter becomes a pointer, which is one step ahead after the loop
+        test("\tslli            r8, r7, 2\n" +
+                        "\tadd             r8, r8, r2\n" +
+                        "main_while1:\n" +
+                        "\tldw             r9, 0(r8)\n" +
+                        "\tadd             r10, r10, r9\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\taddi            r8, r8, 4\n" +
+                        "\tblt             r7, r3, main_while1\n" +
+                        "\tsubi            r8, r8, 4\n",
+                Liveness.mainExit(),
+                Components.label("main_while1"),
+                Components.opi("r8", "r7", "<<", "2"),
+                Components.op("r8", "r8", "+", "r2"),
+                instruction("ldw", "r9, 0(r8)"),
+                Components.op("r10", "r10", "+", "r9"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while1")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // A counter which is only used to end the loop is replaced by a test on the pointer, using the limit register for the end
+        test("\tsub             r3, r3, r7\n" +
+                        "\tslli            r3, r3, 2\n" +
+                        "\tadd             r3, r3, r4\n" +
+                        "f_while1:\n" +
+                        "\tldw             r8, 0(r4)\n" +
+                        "\tadd             r2, r2, r8\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\tbne             r4, r3, f_while1\n",
+                Liveness.functionExit(true),
+                Components.label("f_while1"),
+                instruction("ldw", "r8, 0(r4)"),
+                Components.op("r2", "r2", "+", "r8"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.brOp("r7", "!=", "r3", "f_while1")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Counting down, the end is computed in an unused register
+        test("\tsub             r5, r7, r0\n" +
+                        "\tslli            r5, r5, 2\n" +
+                        "\tadd             r5, r5, r4\n" +
+                        "f_while1:\n" +
+                        "\tstw             r0, 0(r4)\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\tbne             r4, r5, f_while1\n" +
+                        "\tmov             r2, r3\n",
+                Liveness.functionExit(true),
+                Components.label("f_while1"),
+                instruction("stw", "r0, 0(r4)"),
+                Components.opi("r7", "r7", "-", "1"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.brOp("r7", "!=", "r0", "f_while1"),
+                Components.mov("r2", "r3")
+        );
+    }
+
+    @Test
+    void accept4()
+    {
+        // Values read after the counter changes, counters used in the loop, and tests without a pointer are left alone
+        test("main_while1:\n" +
+                        "\tslli            r8, r7, 2\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tadd             r10, r10, r8\n" +
+                        "\tblt             r7, r3, main_while1\n" +
+                        "f_while2:\n" +
+                        "\tadd             r2, r2, r7\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\tblt             r7, r3, f_while2\n",
+                Liveness.functionExit(true),
+                Components.label("main_while1"),
+                Components.opi("r8", "r7", "<<", "2"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.op("r10", "r10", "+", "r8"),
+                Components.brOp("r7", "<", "r3", "main_while1"),
+                Components.label("f_while2"),
+                Components.op("r2", "r2", "+", "r7"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.brOp("r7", "<", "r3", "f_while2")
+        );
+    }
+
+    @Test
+    void accept5()
+    {
+        // Any other test needs the number of iterations, so the end is the last value of the pointer
+        test("\tmovi            r7, 0\n" +
+                        "\tmovi            r3, 100\n" +
+                        "\taddi            r3, r4, 400\n" +
+                        "f_while1:\n" +
+                        "\tldw             r8, 0(r4)\n" +
+                        "\tadd             r2, r2, r8\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\tbne             r4, r3, f_while1\n",
+                Liveness.functionExit(true),
+                Components.movi("r7", "0"),
+                Components.movi("r3", "100"),
+                Components.label("f_while1"),
+                instruction("ldw", "r8, 0(r4)"),
+                Components.op("r2", "r2", "+", "r8"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.brOp("r7", "<", "r3", "f_while1")
+        );
+    }
+
+    @Test
+    void accept6()
+    {
+        // Unknown bounds for a < test (the loop might start past the limit), and a counter which doesn't change, are left alone
+        test("f_while1:\n" +
+                        "\tldw             r8, 0(r4)\n" +
+                        "\tadd             r2, r2, r8\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\tblt             r7, r3, f_while1\n" +
+                        "f_while2:\n" +
+                        "\tldw             r8, 0(r4)\n" +
+                        "\taddi            r4, r4, 4\n" +
+                        "\taddi            r7, r7, 0\n" +
+                        "\tbne             r7, r3, f_while2\n",
+                Liveness.functionExit(true),
+                Components.label("f_while1"),
+                instruction("ldw", "r8, 0(r4)"),
+                Components.op("r2", "r2", "+", "r8"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.brOp("r7", "<", "r3", "f_while1"),
+                Components.label("f_while2"),
+                instruction("ldw", "r8, 0(r4)"),
+                Components.opi("r4", "r4", "+", "4"),
+                Components.opi("r7", "r7", "+", "0"),
+                Components.brOp("r7", "!=", "r3", "f_while2")
+        );
+    }
+
+    @Test
+    void testLoopStartsPastLimit()
+    {
+        // The loop runs once, as the counter starts past the limit, so the pointer can't be compared with an end computed from the limit
+        String source = "compile nios-ii de0\nint[4] v0\nint v1\nmain:\n    r3 = -1000000000\n    r7 = 0\n    r4 = &v0\n    call F\nend\n" +
+                "void function F:\n    r9 = 0\n    while r7 < r3:\n        r8 = &r4\n        r9 += r8\n        r9 += 1\n        r4 += 4\n        r7 ++\n    end\n    v1 = r9\nend\n";
+        for (CompileFlag level : new CompileFlag[] {CompileFlag.OPTIMIZE_NONE, CompileFlag.OPTIMIZE_BASIC, CompileFlag.OPTIMIZE_FULL})
+        {
+            Simulator simulator = new Simulator(AssemblyCompiler.INSTANCE.compile(source, EnumSet.of(level)));
+            assertTrue(simulator.run(10_000));
+            assertEquals(1, simulator.getMemory().load(simulator.getLabel("v1"), 4, false));
+        }
+    }
+
+    private IComponent instruction(String op, String args)
+    {
+        return new ComponentStatic(IComponent.format(op, args + "\n"));
+    }
+
+    private void test(String exp, Set<String> exit, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        InductionVariables.accept(list, exit);
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.EnumSet;
+
+import compiler.AssemblyCompiler;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InlinerTest
+{
+    @Test
+    void testInline()
+    {
+        // A return branches to the end of the copy, and the result is folded into main
+        String source = "compile nios-ii de0\nmain:\n    r2 = 3\n    call Clamp\n    r3 = r2\n    r2 = -5\n    call Clamp\nend\n\n" +
+                "function Clamp:\n    if r2 >= r0:\n        return\n    end\n    r2 = 0\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL);
+        assertFalse(output.contains("call            Clamp\n"));
+        assertEquals(3, run(output).getRegister(3));
+        assertEquals(0, run(output).getRegister(2));
+
+        // Not at -O1 or -Os
+        assertTrue(compile(source, CompileFlag.OPTIMIZE_BASIC).contains("call            Clamp\n"));
+        assertTrue(compile(source, CompileFlag.OPTIMIZE_SIZE).contains("call            Clamp\n"));
+    }
+
+    @Test
+    void testRenameRegisters()
+    {
+        // Inner restores r4, which Outer reads after the call, so the copy uses r3 instead. Outer then doesn't need to save ra
+        String source = "compile nios-ii de0\nmain:\n    r2 = 2\n    call Outer\nend\n\n" +
+                "function Outer:\n    r4 = r2\n    call Inner\n    r2 += r4\nend\n\n" +
+                "function Inner:\n    r4 = r2 * 3\n    r2 = r4 + 1\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL);
+        assertFalse(output.contains("call            Inner\n"));
+        assertFalse(output.contains("stw             ra"));
+        assertTrue(output.contains("addi            r2, r3, 1\n"));
+        assertEquals(9, run(output).getRegister(2));
+    }
+
+    @Test
+    void testNotInlined()
+    {
+        // Recursive, too large, declared with -O0, or writes to a register main reads later
+        String source = "compile nios-ii de0\nmain:\n    r2 = 2\n    call Recursive\n    call Large\n    call Debug\n    call Scratch\n    r2 = r4\nend\n\n" +
+                "function Recursive:\n    if r2 > r0:\n        r2 --\n        call Recursive\n    end\nend\n\n" +
+                "function Large:\n    r2 += 1\n    r2 *= 3\n    r2 ^= 5\n    r2 -= 7\n    r2 |= 9\n    r2 *= 11\n    r2 &= 13\n    r2 += 15\n    r2 -= 17\nend\n\n" +
+                "function Debug -O0:\n    r2 += 1\nend\n\n" +
+                "function Scratch:\n    r4 = r2 + 1\n    r2 = r4\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL);
+        for (String function : new String[] {"Recursive", "Large", "Debug", "Scratch"})
+        {
+            assertTrue(output.contains("call            " + function + "\n"), function);
+        }
+    }
+
+    private String compile(String source, CompileFlag level)
+    {
+        return AssemblyCompiler.INSTANCE.compile(source, EnumSet.of(level));
+    }
+
+    private Simulator run(String output)
+    {
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run(10_000));
+        return simulator;
+    }
+}
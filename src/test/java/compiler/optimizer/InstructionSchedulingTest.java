@@ -0,0 +1,86 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.InstructionScheduling;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstructionSchedulingTest
+{
+    @Test
+    void accept1()
+    {
+        // The second load is moved up, so neither add waits for a load
+        test("\tldw             r3, 0(r2)\n" +
+                        "\tldw             r6, 4(r2)\n" +
+                        "\tadd             r4, r3, r5\n" +
+                        "\tadd             r7, r6, r5\n",
+                Components.instruction("ldw", "r3", "0(r2)"),
+                Components.op("r4", "r3", "+", "r5"),
+                Components.instruction("ldw", "r6", "4(r2)"),
+                Components.op("r7", "r6", "+", "r5")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // A load can't move above a store to the same address, and io loads can't move above any load or store
+        test("\tstw             r5, 0(r2)\n" +
+                        "\tldw             r3, 0(r2)\n" +
+                        "\tldw             r6, 8(r2)\n" +
+                        "\tadd             r4, r3, r3\n",
+                new ComponentStatic(IComponent.format("stw", "r5, 0(r2)\n")),
+                Components.instruction("ldw", "r3", "0(r2)"),
+                Components.op("r4", "r3", "+", "r3"),
+                Components.instruction("ldw", "r6", "8(r2)")
+        );
+        test("\tstw             r5, 0(r2)\n" +
+                        "\tldw             r3, 0(r2)\n" +
+                        "\tldwio           r6, 8(r2)\n" +
+                        "\tadd             r4, r3, r3\n",
+                new ComponentStatic(IComponent.format("stw", "r5, 0(r2)\n")),
+                Components.instruction("ldw", "r3", "0(r2)"),
+                Components.op("r4", "r3", "+", "r3"),
+                Components.instruction("ldwio", "r6", "8(r2)")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Multiplies, and nothing moves past a label
+        test("\tmuli            r3, r4, 3\n" +
+                        "\tmovi            r6, 2\n" +
+                        "\taddi            r5, r3, 1\n" +
+                        "labelA:\n" +
+                        "\tmovi            r7, 3\n",
+                Components.opi("r3", "r4", "*", "3"),
+                Components.opi("r5", "r3", "+", "1"),
+                Components.movi("r6", "2"),
+                Components.label("labelA"),
+                Components.movi("r7", "3")
+        );
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        InstructionScheduling.accept(list);
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
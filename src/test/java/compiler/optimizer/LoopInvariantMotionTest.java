@@ -0,0 +1,139 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.Liveness;
+import compiler.util.optimizer.LoopInvariantMotion;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopInvariantMotionTest
+{
+    @Test
+    void accept1()
+    {
+        // Chains of writes, and values computed from them, move to a new label before the loop
+        test("\tblt             r7, r3, main_while1_p_h\n" +
+                        "\tbr              main_while1_b_f\n" +
+                        "main_while1_p_h:\n" +
+                        "\tsubi            r8, r3, 1\n" +
+                        "\tslli            r8, r8, 2\n" +
+                        "\tadd             r9, r5, r8\n" +
+                        "main_while1_a_t:\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tblt             r7, r3, main_while1_a_t\n" +
+                        "main_while1_b_f:\n",
+                Components.brOp("r7", "<", "r3", "main_while1_a_t"),
+                Components.br("main_while1_b_f"),
+                Components.label("main_while1_a_t"),
+                Components.opi("r8", "r3", "-", "1"),
+                Components.opi("r8", "r8", "<<", "2"),
+                Components.op("r9", "r5", "+", "r8"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while1_a_t"),
+                Components.label("main_while1_b_f")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Registers read before they are written, values which change each iteration, and division all stay in the loop
+        test("main_while1:\n" +
+                        "\tadd             r4, r4, r3\n" +
+                        "\tadd             r5, r7, r3\n" +
+                        "\tdiv             r6, r3, r8\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tblt             r7, r3, main_while1\n",
+                Components.label("main_while1"),
+                Components.op("r4", "r4", "+", "r3"),
+                Components.op("r5", "r7", "+", "r3"),
+                Components.op("r6", "r3", "/", "r8"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while1")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // Loads of globals only move if nothing in the loop can write to memory
+        test("\tldw             r10, x(r0)\n" +
+                        "main_while1:\n" +
+                        "\tadd             r4, r10, r7\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tblt             r7, r3, main_while1\n" +
+                        "main_while2:\n" +
+                        "\tldw             r11, x(r0)\n" +
+                        "\tldwio           r12, 0(r0)\n" +
+                        "\tstw             r7, x(r0)\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tblt             r7, r3, main_while2\n",
+                Components.label("main_while1"),
+                instruction("ldw", "r10, x(r0)"),
+                Components.op("r4", "r10", "+", "r7"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while1"),
+                Components.label("main_while2"),
+                instruction("ldw", "r11, x(r0)"),
+                instruction("ldwio", "r12, 0(r0)"),
+                instruction("stw", "r7, x(r0)"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while2")
+        );
+    }
+
+    @Test
+    void accept4()
+    {
+        // Writes in different blocks, or with a read in between, stay in the loop
+        test("main_while1:\n" +
+                        "\tmovi            r8, 1\n" +
+                        "\tbeq             r3, r0, main_if1\n" +
+                        "\tmovi            r8, 2\n" +
+                        "main_if1:\n" +
+                        "\tmovi            r9, 3\n" +
+                        "\tadd             r4, r9, r3\n" +
+                        "\taddi            r9, r9, 1\n" +
+                        "\tadd             r5, r8, r9\n" +
+                        "\taddi            r7, r7, 1\n" +
+                        "\tblt             r7, r3, main_while1\n",
+                Components.label("main_while1"),
+                Components.movi("r8", "1"),
+                Components.brOp("r3", "==", "r0", "main_if1"),
+                Components.movi("r8", "2"),
+                Components.label("main_if1"),
+                Components.movi("r9", "3"),
+                Components.op("r4", "r9", "+", "r3"),
+                Components.opi("r9", "r9", "+", "1"),
+                Components.op("r5", "r8", "+", "r9"),
+                Components.opi("r7", "r7", "+", "1"),
+                Components.brOp("r7", "<", "r3", "main_while1")
+        );
+    }
+
+    private IComponent instruction(String op, String args)
+    {
+        return new ComponentStatic(IComponent.format(op, args + "\n"));
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        LoopInvariantMotion.accept(list, Liveness.mainExit());
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import compiler.AssemblyCompiler;
+import compiler.simulator.CostModel;
+import compiler.simulator.Profiler;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopUnrollingTest
+{
+    @Test
+    void testUnroll()
+    {
+        // 1000 iterations, which is a multiple of 4, so there is no remainder
+        String source = Helpers.loadResource("sources/test14.s");
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL, CompileFlag.UNROLL_4);
+        assertEquals(1, count(output, "bgt"));
+        assertEquals(4, count(output, "subi            r5, r5, 1"));
+        assertTrue(output.contains("main_if1c:"));
+
+        long[] cycles = new long[2];
+        int i = 0;
+        for (String program : new String[] {compile(source, CompileFlag.OPTIMIZE_FULL), output})
+        {
+            Simulator simulator = new Simulator(program);
+            Profiler profiler = new Profiler(simulator, CostModel.getDefault());
+            assertTrue(simulator.run(100_000));
+            assertEquals(233168, simulator.getRegister(6));
+            cycles[i++] = profiler.getCycles();
+        }
+        assertTrue(cycles[1] < cycles[0]);
+    }
+
+    @Test
+    void testRemainder()
+    {
+        // 10 iterations: two before the loop, then the loop runs twice with four copies
+        String source = "compile nios-ii de0\nmain:\n    r3 = 0\n    r4 = 0\n    r5 = 10\n    while r4 < r5:\n        r4 ++\n        if r4 != r5:\n            r3 += r4\n        end\n    end\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL, CompileFlag.UNROLL_4);
+        assertEquals(1, count(output, "blt"));
+        assertEquals(45, run(output).getRegister(3));
+
+        // Three iterations are replaced entirely
+        source = source.replace("r5 = 10", "r5 = 3");
+        output = compile(source, CompileFlag.OPTIMIZE_FULL, CompileFlag.UNROLL_4);
+        assertEquals(0, count(output, "blt"));
+        assertEquals(3, run(output).getRegister(3));
+    }
+
+    @Test
+    void testNotUnrolled()
+    {
+        // The bound isn't known, the loop would be too large, or the level is -Os
+        String unknown = "compile nios-ii de0\nmain:\n    r3 = 0\n    r4 = 0\n    while r4 < r2:\n        r4 ++\n        r3 += r4\n    end\nend\n";
+        assertEquals(1, count(compile(unknown, CompileFlag.OPTIMIZE_FULL, CompileFlag.UNROLL_4), "blt"));
+
+        StringBuilder large = new StringBuilder("compile nios-ii de0\nmain:\n    r4 = 0\n    r5 = 2\n    while r4 < r5:\n        r4 ++\n");
+        for (int i = 0; i < 40; i++)
+        {
+            large.append("        *r6[").append(4 * i).append("] = r4\n");
+        }
+        large.append("    end\nend\n");
+        assertEquals(1, count(compile(large.toString(), CompileFlag.OPTIMIZE_FULL, CompileFlag.UNROLL_2), "blt"));
+
+        String counted = "compile nios-ii de0\nmain:\n    r3 = 0\n    r4 = 0\n    r5 = 8\n    while r4 < r5:\n        r4 ++\n        r3 += r4\n    end\nend\n";
+        assertEquals(1, count(compile(counted, CompileFlag.OPTIMIZE_SIZE, CompileFlag.UNROLL_4), "blt"));
+        assertEquals(1, count(compile(counted, CompileFlag.OPTIMIZE_FULL), "blt"));
+    }
+
+    private String compile(String source, CompileFlag... flags)
+    {
+        return AssemblyCompiler.INSTANCE.compile(source, EnumSet.copyOf(Arrays.asList(flags)));
+    }
+
+    private int count(String output, String text)
+    {
+        return output.split(text, -1).length - 1;
+    }
+
+    private Simulator run(String output)
+    {
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run(10_000));
+        return simulator;
+    }
+}
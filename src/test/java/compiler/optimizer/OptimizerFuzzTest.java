@@ -0,0 +1,86 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.EnumSet;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import compiler.AssemblyCompiler;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Differential testing of the optimizer: random programs (see {@link ProgramGenerator}) are compiled with -O0 and with every other optimization level, and run in the simulator
+ * Any difference in the final registers or variables is a bug. The number of programs can be set with -DfuzzPrograms=N
+ * The unroll flags are at the default level (-O2)
+ */
+class OptimizerFuzzTest
+{
+    private static final int PROGRAMS = Integer.getInteger("fuzzPrograms", 200);
+    private static final CompileFlag[] LEVELS = {CompileFlag.OPTIMIZE_BASIC, CompileFlag.OPTIMIZE_FULL, CompileFlag.OPTIMIZE_SIZE, CompileFlag.UNROLL_2, CompileFlag.UNROLL_4};
+
+    @TestFactory
+    Stream<DynamicTest> testOptimizationLevels()
+    {
+        return LongStream.range(0, PROGRAMS).mapToObj(seed -> DynamicTest.dynamicTest("seed " + seed, () -> {
+            String program = new ProgramGenerator(seed).generate();
+            Simulator expected = run(program, CompileFlag.OPTIMIZE_NONE);
+            for (CompileFlag level : LEVELS)
+            {
+                Simulator actual = run(program, level);
+                for (int register = 1; register < 26; register++)
+                {
+                    assertEquals(expected.getRegister(register), actual.getRegister(register), "Register r" + register + " differs at " + level + ", for:\n" + program);
+                }
+                for (int i = 0; i < ProgramGenerator.VARIABLES; i++)
+                {
+                    String name = "v" + i;
+                    assertEquals(expected.getMemory().load(expected.getLabel(name), 4, false), actual.getMemory().load(actual.getLabel(name), 4, false), "Variable " + name + " differs at " + level + ", for:\n" + program);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Functions which use locals (at every level) should match the same functions using r13 - r15 (at -O0)
+     */
+    @TestFactory
+    Stream<DynamicTest> testLocals()
+    {
+        return LongStream.range(0, PROGRAMS).mapToObj(seed -> DynamicTest.dynamicTest("seed " + seed, () -> {
+            String program = new ProgramGenerator(seed, true).generate();
+            String locals = ProgramGenerator.withLocals(program);
+            Simulator expected = run(program, CompileFlag.OPTIMIZE_NONE);
+            for (CompileFlag level : new CompileFlag[] {CompileFlag.OPTIMIZE_NONE, CompileFlag.OPTIMIZE_BASIC, CompileFlag.OPTIMIZE_FULL, CompileFlag.OPTIMIZE_SIZE})
+            {
+                Simulator actual = run(locals, level);
+                for (int register = 1; register < 26; register++)
+                {
+                    assertEquals(expected.getRegister(register), actual.getRegister(register), "Register r" + register + " differs at " + level + ", for:\n" + locals);
+                }
+                for (int i = 0; i < ProgramGenerator.VARIABLES; i++)
+                {
+                    String name = "v" + i;
+                    assertEquals(expected.getMemory().load(expected.getLabel(name), 4, false), actual.getMemory().load(actual.getLabel(name), 4, false), "Variable " + name + " differs at " + level + ", for:\n" + locals);
+                }
+            }
+        }));
+    }
+
+    private Simulator run(String program, CompileFlag level)
+    {
+        String output = AssemblyCompiler.INSTANCE.compile(program, EnumSet.of(level));
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run(1_000_000), "Did not halt, for:\n" + program + "\n\nCompiled to:\n" + output);
+        return simulator;
+    }
+}
@@ -8,18 +8,22 @@ package compiler.optimizer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
+import compiler.AssemblyCompiler;
 import compiler.component.ComponentLabel;
 import compiler.component.ComponentStatic;
 import compiler.component.Components;
 import compiler.component.IComponent;
+import compiler.util.CompileFlag;
 import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
 import compiler.util.Optimizer;
 import org.junit.jupiter.api.Test;
 
 import static compiler.component.IComponent.Flag.TYPE;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class OptimizerTest
 {
@@ -89,6 +93,37 @@ class OptimizerTest
         );
     }
 
+    @Test
+    void testOptimizationLevels()
+    {
+        String source = "compile nios-ii de0\nmain:\n    r3 = r4 * 10\n    r5 = r4 * 8\nend\n";
+        assertTrue(compile(source, CompileFlag.OPTIMIZE_NONE).contains("muli            r5, r4, 8\n"));
+        assertTrue(compile(source, CompileFlag.OPTIMIZE_BASIC).contains("muli            r3, r4, 10\n"));
+        assertTrue(compile(source, CompileFlag.OPTIMIZE_FULL).contains("slli            r3, r4, 2\n"));
+        assertEquals(compile(source, CompileFlag.OPTIMIZE_FULL), AssemblyCompiler.INSTANCE.compile(source));
+
+        // Size doesn't expand a multiply into several instructions
+        String size = compile(source, CompileFlag.OPTIMIZE_SIZE);
+        assertTrue(size.contains("muli            r3, r4, 10\n"));
+        assertTrue(size.contains("slli            r5, r4, 3\n"));
+    }
+
+    @Test
+    void testFunctionOptimizationLevel()
+    {
+        String source = "compile nios-ii de0\nmain:\n    r3 = r4 * 8\n    call Hot\nend\n\nfunction Hot -O2:\n    r2 = r4 * 8\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_NONE);
+        assertTrue(output.contains("muli            r3, r4, 8\n"));
+        assertTrue(output.contains("slli            r2, r4, 3\n"));
+
+        assertThrows(InvalidAssemblyException.class, () -> compile(source.replace("-O2", "-O3"), CompileFlag.OPTIMIZE_NONE));
+    }
+
+    private String compile(String source, CompileFlag level)
+    {
+        return AssemblyCompiler.INSTANCE.compile(source, EnumSet.of(level));
+    }
+
     private void test(String exp, IComponent... components)
     {
         List<IComponent> list = new ArrayList<>(Arrays.asList(components));
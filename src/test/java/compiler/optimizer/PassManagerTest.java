@@ -0,0 +1,124 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import compiler.AssemblyCompiler;
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import compiler.util.optimizer.IPass;
+import compiler.util.optimizer.PassManager;
+import compiler.util.optimizer.PassStatistics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PassManagerTest
+{
+    @Test
+    void testFixpoint()
+    {
+        // Removes one nop each run, until there are none left
+        IPass removeNop = IPass.of("remove_nop", list -> list.removeIf(cmp -> cmp.compile().contains("nop")));
+        IPass removeOne = IPass.of("remove_one", list -> {
+            for (int i = 0; i < list.size(); i++)
+            {
+                if (list.get(i).compile().contains("nop"))
+                {
+                    list.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        });
+        List<IComponent> list = new ArrayList<>(Arrays.asList(nop(), nop(), nop(), Components.label("label")));
+        PassStatistics statistics = new PassStatistics();
+        new PassManager().repeat(removeOne).then(removeNop).run("main", list, statistics);
+
+        assertEquals(1, list.size());
+        assertEquals(4, statistics.get("main", "remove_one").getRuns());
+        assertEquals(3, statistics.get("main", "remove_one").getChanges());
+        assertEquals(1, statistics.get("main", "remove_nop").getRuns());
+        assertEquals(0, statistics.get("main", "remove_nop").getChanges());
+        assertNull(statistics.get("other", "remove_one"));
+    }
+
+    @Test
+    void testNoFixpoint()
+    {
+        IPass removeFirst = IPass.of("remove_first", list -> list.remove(0) != null);
+        List<IComponent> list = new ArrayList<>(Arrays.asList(nop(), nop(), nop()));
+        PassStatistics statistics = new PassStatistics();
+        new PassManager().repeat(removeFirst).setFixpoint(false).run("main", list, statistics);
+
+        assertEquals(2, list.size());
+        assertEquals(1, statistics.getTotal("remove_first").getRuns());
+    }
+
+    @Test
+    void testFirst()
+    {
+        // First passes run once, before the repeated passes
+        IPass addNop = IPass.of("add_nop", list -> list.add(nop()));
+        IPass removeOne = IPass.of("remove_one", list -> list.remove(0) != null && !list.isEmpty());
+        List<IComponent> list = new ArrayList<>(Arrays.asList(nop(), nop()));
+        PassStatistics statistics = new PassStatistics();
+        new PassManager().first(addNop).repeat(removeOne).run("main", list, statistics);
+
+        assertEquals(0, list.size());
+        assertEquals(1, statistics.get("main", "add_nop").getRuns());
+        assertEquals(3, statistics.get("main", "remove_one").getRuns());
+    }
+
+    @Test
+    void testRerun()
+    {
+        // Rerun passes run once after the repeated passes, which run again only if something changed
+        IPass addNop = IPass.of("add_nop", list -> list.add(nop()));
+        IPass nothing = IPass.of("nothing", list -> false);
+        IPass removeOne = IPass.of("remove_one", list -> !list.isEmpty() && list.remove(0) != null);
+        List<IComponent> list = new ArrayList<>(Arrays.asList(nop(), nop()));
+        PassStatistics statistics = new PassStatistics();
+        new PassManager().repeat(removeOne).rerun(addNop).run("main", list, statistics);
+
+        assertEquals(0, list.size());
+        assertEquals(1, statistics.get("main", "add_nop").getRuns());
+        assertEquals(5, statistics.get("main", "remove_one").getRuns());
+
+        list = new ArrayList<>(Arrays.asList(nop(), nop()));
+        statistics = new PassStatistics();
+        new PassManager().repeat(removeOne).rerun(nothing).run("main", list, statistics);
+        assertEquals(3, statistics.get("main", "remove_one").getRuns());
+    }
+
+    @Test
+    void testTimePasses()
+    {
+        AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/test21.s"), EnumSet.of(CompileFlag.TIME_PASSES));
+        PassStatistics statistics = AssemblyCompiler.INSTANCE.getPassStatistics();
+        assertNotNull(statistics);
+        assertEquals(1, statistics.get("main", "simplify_names").getRuns());
+        assertTrue(statistics.get("SelectionSort", "branches").getChanges() > 0);
+        assertEquals(2, statistics.getTotal("immediate_encoding").getRuns());
+        assertTrue(statistics.report().contains("SelectionSort"));
+
+        AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/test21.s"));
+        assertNull(AssemblyCompiler.INSTANCE.getPassStatistics());
+    }
+
+    private IComponent nop()
+    {
+        return new ComponentStatic(IComponent.format("nop", "\n"));
+    }
+}
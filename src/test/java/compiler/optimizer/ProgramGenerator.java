@@ -0,0 +1,281 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates random, valid Reduced Assembly programs for {@link OptimizerFuzzTest}
+ * Programs always terminate: each loop has its own counter register (r16 + depth), which the rest of the program never writes
+ * With locals, functions also use r13 - r15, which can be replaced with locals (see {@link #withLocals(String)}) to test register allocation
+ */
+final class ProgramGenerator
+{
+    static final int VARIABLES = 3;
+
+    private static final String[] LOCALS = {"a", "b", "c"};
+    private static final Pattern LOCAL_REGISTER = Pattern.compile("\\br1([3-5])\\b");
+
+    private static final int[] IMMEDIATES = {0, 1, -1, 2, 3, 5, 7, 8, 10, 16, 31, 32, 100, 255, 256, -256, 0x7FFF, 0x8000, -0x8000, 0xFFFF, 0x10000, 0x12345, -100000, 0x12345678};
+    private static final String[] OPERATORS = {"+", "-", "*", "&", "|", "^", "<<", ">>", "?>>", "==", "!=", "<", "<=", ">", ">=", "?<", "?<=", "?>", "?>="};
+    private static final String[] ASSIGNMENT_OPERATORS = {"+", "-", "*", "&", "|", "^", "<<", ">>", "?>>"};
+    private static final String[] IMMEDIATE_OPERATORS = {"+", "-", "*", "/", "?/", "?%", "&", "|", "^", "?&", "?|", "?^", "<<", ">>", "?>>"};
+    private static final String[] LEVELS = {"-O0", "-O1", "-O2", "-Os"};
+    private static final String[] COMPARATORS = {"==", "!=", "<", "<=", ">", ">=", "?<", "?<=", "?>", "?>="};
+
+    private final Random random;
+    private final boolean locals;
+    private final StringBuilder output = new StringBuilder();
+    private int functions;
+    private int currentFunction;
+
+    ProgramGenerator(long seed)
+    {
+        this(seed, false);
+    }
+
+    ProgramGenerator(long seed, boolean locals)
+    {
+        this.random = new Random(seed);
+        this.locals = locals;
+    }
+
+    /**
+     * @return the program, with r13 - r15 in each function replaced by locals
+     */
+    static String withLocals(String program)
+    {
+        int start = program.indexOf("\nvoid function"), other = program.indexOf("\nfunction");
+        start = start == -1 || (other != -1 && other < start) ? other : start;
+        if (start == -1)
+        {
+            return program;
+        }
+        StringBuilder result = new StringBuilder(program.substring(0, start));
+        for (String line : program.substring(start).split("\n", -1))
+        {
+            Matcher matcher = LOCAL_REGISTER.matcher(line);
+            StringBuffer buffer = new StringBuffer();
+            while (matcher.find())
+            {
+                matcher.appendReplacement(buffer, LOCALS[Integer.parseInt(matcher.group(1)) - 3]);
+            }
+            result.append(matcher.appendTail(buffer)).append('\n');
+            if (line.contains("function"))
+            {
+                result.append("    local ").append(String.join(", ", LOCALS)).append('\n');
+            }
+        }
+        return result.substring(0, result.length() - 1);
+    }
+
+    String generate()
+    {
+        output.append("compile nios-ii de0\n\n");
+        for (int i = 0; i < VARIABLES; i++)
+        {
+            output.append(String.format("int v%d = %d\n", i, immediate()));
+        }
+
+        functions = random.nextInt(3);
+        currentFunction = -1;
+        output.append("\nmain:\n");
+        for (int i = 2; i <= 12; i++)
+        {
+            line(1, "r%d = %d", i, immediate());
+        }
+        block(1, 0, 6 + random.nextInt(10));
+        output.append("end\n");
+
+        for (currentFunction = 0; currentFunction < functions; currentFunction++)
+        {
+            String level = random.nextInt(3) == 0 ? " " + pick(LEVELS) : "";
+            output.append(String.format("\n%sfunction F%d%s:\n", random.nextBoolean() ? "void " : "", currentFunction, level));
+            if (locals)
+            {
+                // Locals don't start with any value
+                for (int i = 13; i <= 15; i++)
+                {
+                    line(1, "r%d = 0", i);
+                }
+            }
+            block(1, 0, 3 + random.nextInt(6));
+            output.append("end\n");
+        }
+        return output.toString();
+    }
+
+    private void block(int indent, int depth, int statements)
+    {
+        for (int i = 0; i < statements; i++)
+        {
+            int choice = random.nextInt(depth < 3 ? 20 : 16);
+            if (choice < 12)
+            {
+                expression(indent);
+            }
+            else if (choice < 14)
+            {
+                memory(indent);
+            }
+            else if (choice < 15)
+            {
+                call(indent);
+            }
+            else if (choice < 16)
+            {
+                if (currentFunction >= 0 && depth > 0 && random.nextInt(4) == 0)
+                {
+                    line(indent, "return");
+                }
+                else
+                {
+                    expression(indent);
+                }
+            }
+            else if (choice < 18)
+            {
+                line(indent, "if %s:", condition(0));
+                block(indent + 1, depth + 1, 1 + random.nextInt(4));
+                if (random.nextBoolean())
+                {
+                    line(indent, "else");
+                    block(indent + 1, depth + 1, 1 + random.nextInt(4));
+                }
+                line(indent, "end");
+            }
+            else
+            {
+                // Loops count down, so they always terminate
+                int counter = 16 + depth;
+                line(indent, "r%d = %d", counter, 1 + random.nextInt(5));
+                String extra = random.nextInt(3) == 0 ? " and " + condition(1) : "";
+                line(indent, "%swhile r%d > r0%s:", random.nextBoolean() ? "guarded " : "", counter, extra);
+                line(indent + 1, "r%d -= 1", counter);
+                block(indent + 1, depth + 1, 1 + random.nextInt(4));
+                line(indent, "end");
+            }
+        }
+    }
+
+    private void expression(int indent)
+    {
+        int rX = register(), rY = register(), rZ = register();
+        switch (random.nextInt(7))
+        {
+            case 0:
+                line(indent, "r%d = %d", rX, immediate());
+                break;
+            case 1:
+                line(indent, "r%d = r%d", rX, rY);
+                break;
+            case 2:
+                line(indent, "r%d = r%d %s r%d", rX, rY, pick(OPERATORS), rZ);
+                break;
+            case 3:
+                line(indent, "r%d %s= r%d", rX, pick(ASSIGNMENT_OPERATORS), rY);
+                break;
+            case 4:
+                line(indent, "r%d%s", rX, random.nextBoolean() ? "++" : "--");
+                break;
+            default:
+                // Immediates which don't fit in an instruction need a different destination register
+                if (rX == rY)
+                {
+                    rX = rX == 12 ? 2 : rX + 1;
+                }
+                String op = pick(IMMEDIATE_OPERATORS);
+                int value = immediate();
+                if (op.contains("/"))
+                {
+                    value = value == 0 ? 3 : value;
+                }
+                else if (op.contains("%"))
+                {
+                    // Modulo needs a muli by the value, see Components#divi
+                    value = 1 + (value & 0x7FFE);
+                }
+                else if (op.startsWith("?"))
+                {
+                    value &= 0xFFFF;
+                }
+                line(indent, "r%d = r%d %s %d", rX, rY, op, value);
+        }
+    }
+
+    private void memory(int indent)
+    {
+        int variable = random.nextInt(VARIABLES);
+        if (random.nextBoolean())
+        {
+            line(indent, "r%d = v%d", register(), variable);
+        }
+        else
+        {
+            line(indent, "v%d = r%d", variable, register());
+        }
+    }
+
+    private void call(int indent)
+    {
+        // Only call later functions, so there is no recursion
+        int first = currentFunction + 1;
+        if (first < functions)
+        {
+            line(indent, "call F%d", first + random.nextInt(functions - first));
+        }
+        else
+        {
+            expression(indent);
+        }
+    }
+
+    private String condition(int depth)
+    {
+        String condition = String.format("r%d %s r%d", random.nextInt(13), pick(COMPARATORS), random.nextInt(13));
+        int choice = depth > 2 ? 0 : random.nextInt(6);
+        switch (choice)
+        {
+            case 1:
+                return "not " + condition;
+            case 2:
+                return condition + " and " + condition(depth + 1);
+            case 3:
+                return condition + " or " + condition(depth + 1);
+            case 4:
+                return "(" + condition + " or " + condition(depth + 1) + ") and " + condition(depth + 1);
+            default:
+                return condition;
+        }
+    }
+
+    private int register()
+    {
+        return 2 + random.nextInt(locals && currentFunction >= 0 ? 14 : 11);
+    }
+
+    private int immediate()
+    {
+        return random.nextInt(4) == 0 ? random.nextInt(2001) - 1000 : IMMEDIATES[random.nextInt(IMMEDIATES.length)];
+    }
+
+    private String pick(String[] values)
+    {
+        return values[random.nextInt(values.length)];
+    }
+
+    private void line(int indent, String format, Object... args)
+    {
+        for (int i = 0; i < indent; i++)
+        {
+            output.append("    ");
+        }
+        output.append(String.format(format, args)).append('\n');
+    }
+}
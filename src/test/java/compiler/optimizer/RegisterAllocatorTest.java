@@ -0,0 +1,103 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.EnumSet;
+import java.util.StringJoiner;
+
+import compiler.AssemblyCompiler;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import compiler.util.InvalidAssemblyException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegisterAllocatorTest
+{
+    @Test
+    void testLocals()
+    {
+        // The sum goes in r4, as r2 is still needed by the loop. Only r3 and r4 are saved
+        String source = "compile nios-ii de0\nmain:\n    r2 = 10\n    r3 = 100\n    call Sum\nend\n\n" +
+                "function Sum:\n    local i, total\n    i = 0\n    total = 0\n    while i < r2:\n        total += i\n        i ++\n    end\n    return total\nend\n";
+        for (CompileFlag level : new CompileFlag[] {CompileFlag.OPTIMIZE_NONE, CompileFlag.OPTIMIZE_FULL})
+        {
+            String output = compile(source, level);
+            assertFalse(output.contains("r32"));
+            assertTrue(output.contains("subi            sp, sp, 8\n"));
+            Simulator simulator = run(output);
+            assertEquals(45, simulator.getRegister(2));
+            assertEquals(100, simulator.getRegister(3));
+        }
+    }
+
+    @Test
+    void testAcrossCalls()
+    {
+        // n is live across the call, so it can't be in r2
+        String source = "compile nios-ii de0\nmain:\n    r2 = 5\n    call Fact\nend\n\n" +
+                "function Fact:\n    local n, one\n    one = 1\n    if r2 <= one:\n        r2 = 1\n        return\n    end\n    n = r2\n    r2 --\n    call Fact\n    r2 *= n\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL);
+        assertEquals(120, run(output).getRegister(2));
+    }
+
+    @Test
+    void testSpill()
+    {
+        // More locals than registers are live at once, so some are kept on the stack
+        StringBuilder source = new StringBuilder("compile nios-ii de0\nmain:\n    r2 = 3\n    call Many\nend\n\nfunction Many:\n");
+        StringJoiner locals = new StringJoiner(", ", "    local ", "\n");
+        for (int i = 0; i < 24; i++)
+        {
+            locals.add("x" + i);
+        }
+        source.append(locals);
+        for (int i = 0; i < 24; i++)
+        {
+            source.append(String.format("    x%d = r2 + %d\n", i, i));
+        }
+        source.append("    r2 = 0\n");
+        for (int i = 0; i < 48; i++)
+        {
+            source.append(String.format("    r2 += x%d\n", i % 24));
+        }
+        source.append("end\n");
+
+        for (CompileFlag level : new CompileFlag[] {CompileFlag.OPTIMIZE_NONE, CompileFlag.OPTIMIZE_FULL})
+        {
+            String output = compile(source.toString(), level);
+            assertTrue(output.contains("(sp)\n    add"));
+            assertEquals(696, run(output).getRegister(2));
+        }
+    }
+
+    @Test
+    void testInvalidLocals()
+    {
+        String[] bodies = {"main:\n    local x\nend\n", "main:\nend\n\nfunction F:\n    local x, x\nend\n", "main:\nend\n\nfunction F:\n    local r5\nend\n", "main:\nend\n\nfunction F:\n    local while\nend\n", "main:\n    r32 = 1\nend\n"};
+        String[] keys = {"error.message.local_outside_function", "error.message.duplicate_local", "error.message.invalid_local_name", "error.message.invalid_local_name", "error.message.unknown_register"};
+        for (int i = 0; i < bodies.length; i++)
+        {
+            String source = "compile nios-ii de0\n" + bodies[i];
+            InvalidAssemblyException e = assertThrows(InvalidAssemblyException.class, () -> AssemblyCompiler.INSTANCE.compile(source));
+            assertEquals(keys[i], e.getKey());
+        }
+    }
+
+    private String compile(String source, CompileFlag level)
+    {
+        return AssemblyCompiler.INSTANCE.compile(source, EnumSet.of(level));
+    }
+
+    private Simulator run(String output)
+    {
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run(10_000));
+        return simulator;
+    }
+}
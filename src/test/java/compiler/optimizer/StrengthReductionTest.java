@@ -0,0 +1,111 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.Optimizer;
+import compiler.util.literal.InstructionResult;
+import compiler.util.optimizer.RegisterValues;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StrengthReductionTest
+{
+    private static final int[] VALUES = {0, 1, -1, 7, -7, 8, -8, 9, 1000, -1000, 65535, -65536, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    @Test
+    void accept1()
+    {
+        // Multiplication by powers of two and nearby values
+        test("\tslli            r3, r3, 3\n" +
+                        "\tslli            r4, r5, 2\n" +
+                        "\tadd             r4, r4, r5\n" +
+                        "\tslli            r4, r4, 1\n" +
+                        "\tmuli            r6, r6, 10\n",
+                Components.opi("r3", "r3", "*", "8"),
+                Components.opi("r4", "r5", "*", "10"),
+                Components.opi("r6", "r6", "*", "10")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Division by a register with a known value
+        test("\tmovi            r5, 16\n" +
+                        "\tsrli            r3, r4, 4\n" +
+                        "\tsrai            r6, r4, 31\n" +
+                        "\tsrli            r6, r6, 28\n" +
+                        "\tadd             r6, r6, r4\n" +
+                        "\tsrai            r6, r6, 4\n" +
+                        "\tdiv             r4, r4, r5\n",
+                Components.movi("r5", "16"),
+                Components.op("r3", "r4", "?/", "r5"),
+                Components.op("r6", "r4", "/", "r5"),
+                Components.op("r4", "r4", "/", "r5")
+        );
+    }
+
+    @Test
+    void multiply()
+    {
+        for (int constant : new int[] {0, 1, -1, 2, 3, 5, 7, 8, -8, 10, 24, 31, 33, 132, 1 << 20, Integer.MIN_VALUE})
+        {
+            for (int x : VALUES)
+            {
+                assertEquals(x * constant, (int) evaluate(Components.muli("r3", "r4", constant), x), x + " * " + constant);
+            }
+        }
+    }
+
+    @Test
+    void divide()
+    {
+        for (int constant : new int[] {1, -1, 2, 3, 8, 10, 1 << 20, 1 << 30, Integer.MIN_VALUE})
+        {
+            for (int x : VALUES)
+            {
+                String message = x + " / " + constant;
+                if (constant > 0 || constant == -1)
+                {
+                    assertEquals(x / constant, (int) evaluate(Components.divi("r3", "r4", "/", String.valueOf(constant), constant), x), message);
+                }
+                assertEquals(Integer.divideUnsigned(x, constant), (int) evaluate(Components.divi("r3", "r4", "?/", String.valueOf(constant), constant), x), message);
+                assertEquals(Integer.remainderUnsigned(x, constant), (int) evaluate(Components.divi("r3", "r4", "?%", String.valueOf(constant), constant), x), message);
+            }
+        }
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        // Some of these compute the same value more than once, which would be replaced with a move
+        Optimizer.accept(list, "simplify_names", "common_subexpressions");
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+
+    /**
+     * Evaluates a sequence computing r3 from r4
+     */
+    private Integer evaluate(List<IComponent> sequence, int x)
+    {
+        RegisterValues values = new RegisterValues();
+        values.update(new InstructionResult(Components.instruction("movia", "r4", String.valueOf(x))));
+        for (IComponent cmp : sequence)
+        {
+            values.update(new InstructionResult(cmp));
+        }
+        return values.get("r3");
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.EnumSet;
+
+import compiler.AssemblyCompiler;
+import compiler.simulator.CostModel;
+import compiler.simulator.Profiler;
+import compiler.simulator.Simulator;
+import compiler.util.CompileFlag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TailCallTest
+{
+    @Test
+    void testTailCall()
+    {
+        // The recursive call jumps back to the start, so Count doesn't use any stack
+        String source = "compile nios-ii de0\nmain:\n    r2 = 5\n    call Count\nend\n\n" +
+                "function Count:\n    if r2 > r0:\n        r2 --\n        call Count\n        return\n    end\n    r2 = 7\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_FULL);
+        assertTrue(output.contains("jmpi            Count\n"));
+        assertFalse(output.contains("stw             ra"));
+
+        Simulator simulator = new Simulator(output);
+        Profiler profiler = new Profiler(simulator, CostModel.getDefault());
+        assertTrue(simulator.run(10_000));
+        assertEquals(7, simulator.getRegister(2));
+        assertEquals(6, profiler.getFunction("Count").getCalls());
+
+        // Not at -O0
+        output = compile(source, CompileFlag.OPTIMIZE_NONE);
+        assertTrue(output.contains("call            Count\n"));
+        assertFalse(output.contains("jmpi"));
+    }
+
+    @Test
+    void testRestoreRegisters()
+    {
+        // Outer restores r3 before the jump, and Inner doesn't read it
+        String source = "compile nios-ii de0\nmain:\n    r2 = 4\n    r3 = 1\n    call Outer\nend\n\n" +
+                "function Outer:\n    r3 = r2 * 5\n    r2 = r3 + 1\n    call Inner\nend\n\n" +
+                "function Inner:\n    if r2 > r0:\n        r2 += r2\n    end\n    call Inner2\nend\n\n" +
+                "function Inner2:\n    r2 ^= 1\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_BASIC);
+        assertTrue(output.contains("jmpi            Inner\n"));
+        assertTrue(output.contains("jmpi            Inner2\n"));
+
+        Simulator simulator = run(output);
+        assertEquals(43, simulator.getRegister(2));
+        assertEquals(1, simulator.getRegister(3));
+    }
+
+    @Test
+    void testNotTailCall()
+    {
+        // Reads a register Outer restores, returns a value from a void function, or isn't the last thing in the function
+        String source = "compile nios-ii de0\nmain:\n    r2 = 4\n    call Outer\n    call Void\n    call Middle\nend\n\n" +
+                "function Outer:\n    r3 = r2 + 1\n    call Inner\nend\n\n" +
+                "function Inner:\n    r2 = r3 * 3\n    r2 ^= r3\n    r2 -= 1\n    r2 += r3\n    r2 *= 3\n    r2 |= 9\n    r2 &= r3\n    r2 += 15\n    r2 -= 17\nend\n\n" +
+                "void function Void:\n    call Inner\nend\n\n" +
+                "function Middle:\n    call Inner\n    r2 ++\nend\n";
+        String output = compile(source, CompileFlag.OPTIMIZE_SIZE);
+        assertFalse(output.contains("jmpi"));
+        run(output);
+    }
+
+    private String compile(String source, CompileFlag level)
+    {
+        return AssemblyCompiler.INSTANCE.compile(source, EnumSet.of(level));
+    }
+
+    private Simulator run(String output)
+    {
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run(10_000));
+        return simulator;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import compiler.component.ComponentStatic;
+import compiler.component.Components;
+import compiler.component.IComponent;
+import compiler.util.Helpers;
+import compiler.util.optimizer.ValueNumbering;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValueNumberingTest
+{
+    @Test
+    void accept1()
+    {
+        // Common subexpressions, including swapped operands
+        test("\tadd             r5, r3, r4\n" +
+                        "\tcmplt           r6, r3, r4\n" +
+                        "\tmov             r7, r5\n" +
+                        "\tmov             r8, r6\n" +
+                        "\taddi            r3, r3, 1\n" +
+                        "\tadd             r9, r3, r4\n",
+                Components.op("r5", "r3", "+", "r4"),
+                Components.op("r6", "r3", "<", "r4"),
+                Components.op("r7", "r4", "+", "r3"),
+                Components.op("r8", "r4", ">", "r3"),
+                Components.op("r5", "r3", "+", "r4"),
+                Components.opi("r3", "r3", "+", "1"),
+                Components.op("r9", "r3", "+", "r4")
+        );
+    }
+
+    @Test
+    void accept2()
+    {
+        // Loads from the same address, until a store, call or label
+        test("\tldw             r6, 0(r4)\n" +
+                        "\tldbu            r7, 0(r4)\n" +
+                        "\tmov             r8, r6\n" +
+                        "\tstw             r3, 0(r9)\n" +
+                        "\tldw             r10, 0(r4)\n" +
+                        "labelA:\n" +
+                        "\tldw             r11, 0(r4)\n",
+                Components.instruction("ldw", "r6", "0(r4)"),
+                Components.instruction("ldbu", "r7", "0(r4)"),
+                Components.instruction("ldw", "r8", "0(r4)"),
+                new ComponentStatic(IComponent.format("stw", "r3, 0(r9)\n")),
+                Components.instruction("ldw", "r10", "0(r4)"),
+                Components.label("labelA"),
+                Components.instruction("ldw", "r11", "0(r4)")
+        );
+    }
+
+    @Test
+    void accept3()
+    {
+        // io loads are never reused, and neither is a load straight after the same load
+        test("\tldwio           r6, 0(r4)\n" +
+                        "\tldwio           r7, 0(r4)\n" +
+                        "\tldw             r8, x(r0)\n" +
+                        "\tldw             r9, x(r0)\n",
+                Components.instruction("ldwio", "r6", "0(r4)"),
+                Components.instruction("ldwio", "r7", "0(r4)"),
+                Components.instruction("ldw", "r8", "x(r0)"),
+                Components.instruction("ldw", "r9", "x(r0)")
+        );
+    }
+
+    private void test(String exp, IComponent... components)
+    {
+        List<IComponent> list = new ArrayList<>(Arrays.asList(components));
+        ValueNumbering.accept(list);
+        assertEquals(exp, Helpers.reduceCollection(list, IComponent::compile));
+    }
+}
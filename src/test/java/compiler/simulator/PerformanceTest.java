@@ -0,0 +1,121 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import compiler.AssemblyCompiler;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the compiled test corpus in the simulator, and checks the cycles (with the default cost model) against perf/baselines.json
+ * This fails if a program is slower than the baseline by more than the tolerance, and reports if it is faster
+ * To refresh the baselines, run with -PupdateBaselines (or -DupdateBaselines=true)
+ */
+class PerformanceTest
+{
+    private static final String BASELINES = "perf/baselines.json";
+    private static final boolean UPDATE = Boolean.getBoolean("updateBaselines");
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Baselines EXPECTED = GSON.fromJson(Helpers.loadResource(BASELINES), Baselines.class);
+    private static final Map<String, Result> ACTUAL = new TreeMap<>((x, y) -> x.length() != y.length() ? x.length() - y.length() : x.compareTo(y));
+
+    @AfterAll
+    static void updateBaselines() throws IOException
+    {
+        if (UPDATE)
+        {
+            Baselines baselines = new Baselines();
+            baselines.tolerance = EXPECTED.tolerance;
+            baselines.programs = ACTUAL;
+            Files.write(Paths.get("src/test/resources", BASELINES), (GSON.toJson(baselines) + "\n").getBytes());
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> testCycles()
+    {
+        // test23 and test25 contain infinite loops
+        return IntStream.rangeClosed(1, 31).filter(x -> x != 23 && x != 25).mapToObj(x -> "test" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
+            Simulator simulator = new Simulator(AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/" + x + ".s")));
+            Profiler profiler = new Profiler(simulator, CostModel.getDefault());
+            assertTrue(simulator.run(1_000_000), "Did not halt");
+
+            Result actual = new Result(profiler.getInstructions(), profiler.getCycles());
+            ACTUAL.put(x, actual);
+            if (UPDATE)
+            {
+                return;
+            }
+
+            Result expected = EXPECTED.programs.get(x);
+            assertNotNull(expected, "Missing baseline for " + x);
+            if (actual.cycles < expected.cycles || actual.instructions < expected.instructions)
+            {
+                System.out.printf("Improvement: %s: %d -> %d cycles, %d -> %d instructions. The baselines can be refreshed with -PupdateBaselines\n", x, expected.cycles, actual.cycles, expected.instructions, actual.instructions);
+            }
+            assertTrue(actual.cycles <= expected.cycles * (1 + EXPECTED.tolerance), String.format("Regression: %s: %d -> %d cycles", x, expected.cycles, actual.cycles));
+        }));
+    }
+
+    @Test
+    void testUnroll()
+    {
+        // test31 walks a pointer through a counted loop, which is unrolled after induction variables have replaced the counter
+        for (String x : new String[] {"test14", "test31"})
+        {
+            long cycles = cycles(x, CompileFlag.OPTIMIZE_FULL);
+            for (CompileFlag unroll : new CompileFlag[] {CompileFlag.UNROLL_2, CompileFlag.UNROLL_4, CompileFlag.UNROLL_8})
+            {
+                long unrolled = cycles(x, CompileFlag.OPTIMIZE_FULL, unroll);
+                assertTrue(unrolled < cycles, String.format("Regression: %s with %s: %d -> %d cycles", x, unroll, cycles, unrolled));
+            }
+        }
+    }
+
+    private long cycles(String x, CompileFlag... flags)
+    {
+        Simulator simulator = new Simulator(AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/" + x + ".s"), EnumSet.copyOf(Arrays.asList(flags))));
+        Profiler profiler = new Profiler(simulator, CostModel.getDefault());
+        assertTrue(simulator.run(1_000_000), "Did not halt");
+        return profiler.getCycles();
+    }
+
+    private static final class Baselines
+    {
+        private double tolerance;
+        private Map<String, Result> programs;
+    }
+
+    private static final class Result
+    {
+        private final long instructions, cycles;
+
+        private Result(long instructions, long cycles)
+        {
+            this.instructions = instructions;
+            this.cycles = cycles;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.EnumSet;
+
+import compiler.AssemblyCompiler;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfilerTest
+{
+    private static final CostModel MODEL = CostModel.load("{\"default\": 1, \"cycles\": {\"div\": 10}, \"latency\": {\"ldw\": 2}, \"taken_branch_penalty\": 3}");
+
+    @Test
+    void testCostModel()
+    {
+        String source = String.join("\n",
+                "_start:",
+                "    ldw     r2, 0(r0)",    // 1
+                "    addi    r2, r2, 1",    // 1 + 2 (load-use stall)
+                "    movi    r3, 2",        // 1
+                "    div     r4, r2, r3",   // 10
+                "    ldw     r5, 0(r0)",    // 1
+                "    nop",                  // 1
+                "    nop",                  // 1
+                "    add     r5, r5, r5",   // 1
+                "    call    function",     // 1 + 3 (taken)
+                "_end:",
+                "    br      _end",         // 1 + 3 (taken)
+                "function:",
+                "    beq     r2, r0, skip", // 1 (not taken)
+                "skip:",
+                "    ret"                   // 1 + 3 (taken)
+        );
+        Simulator simulator = new Simulator(source);
+        Profiler profiler = new Profiler(simulator, MODEL);
+        assertTrue(simulator.run());
+
+        assertEquals(12, profiler.getInstructions());
+        assertEquals(32, profiler.getCycles());
+        assertEquals(1, profiler.getFunction("main").getCalls());
+        assertEquals(10, profiler.getFunction("main").getInstructions());
+        assertEquals(1, profiler.getFunction("function").getCalls());
+        assertEquals(2, profiler.getFunction("function").getInstructions());
+        assertEquals(5, profiler.getFunction("function").getCycles());
+        assertNull(profiler.getLine(1));
+    }
+
+    @Test
+    void testFunctionsAndLines()
+    {
+        // Without optimizations, as the results of TestCompareStatements are never used
+        String input = Helpers.loadResource("sources/test22.s");
+        Simulator simulator = new Simulator(AssemblyCompiler.INSTANCE.compile(input, EnumSet.of(CompileFlag.LINE_INFO, CompileFlag.OPTIMIZE_NONE)));
+        Profiler profiler = new Profiler(simulator, CostModel.getDefault());
+        assertTrue(simulator.run());
+
+        assertEquals(simulator.getSteps(), profiler.getInstructions());
+        assertEquals(1, profiler.getFunction("TestCompareStatements").getCalls());
+        assertEquals(profiler.getInstructions(), profiler.getFunction("main").getInstructions() + profiler.getFunction("TestCompareStatements").getInstructions());
+
+        // r3 = 2
+        assertEquals(1, profiler.getLine(8).getInstructions());
+        assertNull(profiler.getLine(1));
+        assertTrue(profiler.report(input).contains("TestCompareStatements"));
+    }
+
+    @Test
+    void testLineInfo()
+    {
+        // Line info is only comments, so it doesn't change the program
+        for (int i = 1; i <= 29; i++)
+        {
+            String input = Helpers.loadResource("sources/test" + i + ".s");
+            String expected = AssemblyCompiler.INSTANCE.compile(input);
+            String actual = AssemblyCompiler.INSTANCE.compile(input, EnumSet.of(CompileFlag.LINE_INFO));
+            assertEquals(expected, actual.replaceAll("    # line \\d+\n", ""), "test" + i);
+        }
+    }
+
+    @Test
+    void testInvalidCostModel()
+    {
+        assertThrows(InvalidAssemblyException.class, () -> CostModel.load("{\"default\": \"fast\"}"));
+        assertThrows(InvalidAssemblyException.class, () -> CostModel.load(""));
+    }
+}
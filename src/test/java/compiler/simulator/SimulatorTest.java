@@ -0,0 +1,140 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.simulator;
+
+import java.util.EnumSet;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import compiler.AssemblyCompiler;
+import compiler.util.CompileFlag;
+import compiler.util.Helpers;
+import compiler.util.InvalidAssemblyException;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatorTest
+{
+    @TestFactory
+    Stream<DynamicTest> testResults()
+    {
+        // test23 and test25 contain infinite loops
+        return IntStream.rangeClosed(1, 31).filter(x -> x != 23 && x != 25).mapToObj(x -> "test" + x).map(x -> DynamicTest.dynamicTest(x, () -> {
+            Simulator simulator = new Simulator(Helpers.loadResource("results/" + x + ".s"));
+            assertTrue(simulator.run(1_000_000));
+            assertEquals(0x007FFFFC, simulator.getRegister("sp"));
+        }));
+    }
+
+    @Test
+    void testLoop()
+    {
+        Simulator simulator = new Simulator(Helpers.loadResource("results/test14.s"));
+        assertTrue(simulator.run());
+        assertEquals(233168, simulator.getRegister("r6"));
+        assertEquals(0, simulator.getRegister("r5"));
+    }
+
+    @Test
+    void testUnsignedCompare()
+    {
+        Simulator simulator = new Simulator(Helpers.loadResource("results/test30.s"));
+        assertTrue(simulator.run());
+        assertEquals(0, simulator.getRegister("r3"));
+        assertEquals(1, simulator.getRegister("r6"));
+    }
+
+    @Test
+    void testGlobalPointer()
+    {
+        String output = AssemblyCompiler.INSTANCE.compile(Helpers.loadResource("sources/gp1.s"), EnumSet.of(CompileFlag.GLOBAL_POINTER));
+        Simulator simulator = new Simulator(output);
+        assertTrue(simulator.run());
+        assertEquals(1, simulator.getRegister("r3"));
+        assertEquals((int) simulator.getLabel("buffer"), simulator.getRegister("r4"));
+        assertEquals((int) simulator.getLabel("after"), simulator.getRegister("r8"));
+        assertEquals(0, simulator.getMemory().load(simulator.getLabel("counter"), 4, false));
+        assertEquals('g', simulator.getMemory().load(simulator.getLabel("name"), 1, false));
+    }
+
+    @Test
+    void testInstructions()
+    {
+        String source = String.join("\n",
+                "    .equ    VALUE, 0x12345678",
+                "    .global _start",
+                "_start:",
+                "    movia   r2, VALUE",
+                "    movi    r3, -5",
+                "    movui   r4, 0xFFFF",
+                "    movhi   r5, 0x8000",
+                "    subi    r6, r3, 1",
+                "    cmpgt   r7, r0, r3",
+                "    cmpltu  r8, r0, r3",
+                "    cmpgei  r9, r3, -5",
+                "    srai    r10, r5, 4",
+                "    srli    r11, r5, 28",
+                "    div     r12, r3, r4",
+                "    divu    r13, r5, r4",
+                "    movia   r14, data",
+                "    ldb     r15, 4(r14)",
+                "    ldbu    r16, 4(r14)",
+                "    sth     r3, 2(r14)",
+                "    ldw     r17, 0(r14)",
+                "    call    function",
+                "_end:",
+                "    br      _end",
+                "function:",
+                "    ble     r3, r0, skip",
+                "    movi    r18, 1",
+                "skip:",
+                "    movi    r19, 'A'",
+                "    ret",
+                "    .org    0x1000",
+                "data:",
+                "    .word   0x0000BEEF",
+                "    .byte   0x80",
+                "    .end"
+        );
+        Simulator simulator = new Simulator(source);
+        assertTrue(simulator.run());
+        assertEquals(0x12345678, simulator.getRegister("r2"));
+        assertEquals(-5, simulator.getRegister("r3"));
+        assertEquals(0xFFFF, simulator.getRegister("r4"));
+        assertEquals(0x80000000, simulator.getRegister("r5"));
+        assertEquals(-6, simulator.getRegister("r6"));
+        assertEquals(1, simulator.getRegister("r7"));
+        assertEquals(1, simulator.getRegister("r8"));
+        assertEquals(1, simulator.getRegister("r9"));
+        assertEquals(0xF8000000, simulator.getRegister("r10"));
+        assertEquals(8, simulator.getRegister("r11"));
+        assertEquals(0, simulator.getRegister("r12"));
+        assertEquals(0x8000, simulator.getRegister("r13"));
+        assertEquals(0x1000, simulator.getRegister("r14"));
+        assertEquals(-128, simulator.getRegister("r15"));
+        assertEquals(0x80, simulator.getRegister("r16"));
+        assertEquals(0xFFFBBEEF, simulator.getRegister("r17"));
+        assertEquals(0, simulator.getRegister("r18"));
+        assertEquals('A', simulator.getRegister("r19"));
+        assertEquals((int) simulator.getLabel("_end"), simulator.getRegister("ra"));
+    }
+
+    @Test
+    void testExceptions()
+    {
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    foo r1, r2"));
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    addi r1, r2, 0x10000"));
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    br missing"));
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("a:\na:\n    break"));
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    movi r2, 1\n    div r3, r2, r0\n    break").run());
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    movi r2, 2\n    ldw r3, 0(r2)\n    break").run());
+        assertThrows(InvalidAssemblyException.class, () -> new Simulator("    movi r2, 12\n    jmp r2\n    break").run(10));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Part of AssemblyCompiler
+ * Copyright (c) 2019 - 2019 Alex O'Neill
+ * See the project LICENCE.md for more information
+ */
+
+package compiler.util;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticsTest
+{
+    private static final Logger LOG = new Logger("Test");
+
+    @Test
+    void testLimit()
+    {
+        StringWriter output = new StringWriter();
+        Diagnostics diagnostics = new Diagnostics(LOG, output);
+        for (int i = 1; i <= 15; i++)
+        {
+            diagnostics.report(Diagnostic.Severity.WARNING, i, "r1 = r2;;", "error.message.extra_semicolon");
+        }
+        diagnostics.report(Diagnostic.Severity.ERROR, 16, "main", "error.message.expected_colon_main");
+
+        // Everything is returned, even if it wasn't shown
+        List<Diagnostic> reported = diagnostics.flush();
+        assertEquals(16, reported.size());
+        assertEquals(Diagnostic.Severity.ERROR, reported.get(15).getSeverity());
+        assertEquals(16, reported.get(15).getLineNumber());
+
+        String[] lines = output.toString().split(System.lineSeparator());
+        assertEquals(Diagnostics.DEFAULT_LIMIT + 2, lines.length);
+        assertEquals(LOG.formatLine("error.level.warn", LOG.format("error.message.extra_semicolon"), 1, "r1 = r2;;"), lines[0]);
+        assertEquals(LOG.formatLine("error.level.suppressed", 5, LOG.format("error.message.extra_semicolon")), lines[lines.length - 1]);
+
+        // The limits are reset after a flush
+        output.getBuffer().setLength(0);
+        diagnostics.report(Diagnostic.Severity.WARNING, 1, "", "error.message.extra_semicolon");
+        diagnostics.flush();
+        assertEquals(1, output.toString().split(System.lineSeparator()).length);
+    }
+
+    @Test
+    void testNoLimit()
+    {
+        StringWriter output = new StringWriter();
+        Diagnostics diagnostics = new Diagnostics(LOG, output);
+        diagnostics.setLimit(0);
+        for (int i = 1; i <= 15; i++)
+        {
+            diagnostics.report(Diagnostic.Severity.WARNING, i, "", "error.message.extra_semicolon");
+        }
+        diagnostics.flush();
+        assertEquals(15, output.toString().split(System.lineSeparator()).length);
+    }
+
+    @Test
+    void testDeferredFormatting()
+    {
+        // Arguments are formatted later, so they must not change after being reported
+        StringWriter output = new StringWriter();
+        Diagnostics diagnostics = new Diagnostics(LOG, output);
+        StringBuilder keyword = new StringBuilder("foo");
+        diagnostics.report(Diagnostic.Severity.ERROR, 1, "foo", "error.message.extra_keyword", keyword);
+        keyword.append("bar");
+        diagnostics.flush();
+        assertTrue(output.toString().contains("foo"));
+        assertFalse(output.toString().contains("foobar"));
+    }
+}
@@ -0,0 +1,16 @@
+compile nios-ii de0
+
+main:
+    r4 = 3
+    call F
+end
+
+void function F:
+    // and, or and not are part of conditions, so they can't be local names
+    local and, not
+    and = r4
+    not = r0
+    if and == r4 and not == r0:
+        r5 = 1
+    end
+end
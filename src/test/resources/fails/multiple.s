@@ -0,0 +1,17 @@
+// Several errors, which should all be reported
+compile nios-ii de0
+
+int x = 3
+
+main:
+    r2 = x
+    r2 = r2 $ 3
+    if (r2 ?? r3):
+        r4 = 1
+        while (r4 < 10):
+            r4 += 1
+        end
+    end
+    r5 = r2 + 1
+    r6 = r7 $ r1
+end
@@ -0,0 +1,59 @@
+# Generated by Assembly Auto-Compiler by Alex O'Neill
+# Setup
+    .equ            LAST_RAM_WORD, 0x007FFFFC
+    .global         _start
+    .org            0x00000000
+    .text
+
+# Entry point
+_start:
+    movia           sp, LAST_RAM_WORD
+    movia           gp, _gp
+    ldw             r3, %gprel(counter)(gp)
+    addi            r4, gp, %gprel(buffer)
+    addi            r6, gp, %gprel(name)
+    addi            r3, r3, 1
+    stw             r3, %gprel(counter)(gp)
+    ldw             r5, %gprel(flag)(gp)
+    addi            r7, gp, %gprel(big)
+    addi            r8, gp, %gprel(after)
+    call            reset
+_end:
+    br              _end
+
+# ========== reset ==========
+reset:
+    subi            sp, sp, 4
+    stw             r2, 0(sp)
+
+    movi            r2, 0
+    stw             r2, %gprel(counter)(gp)
+
+    ldw             r2, 0(sp)
+    addi            sp, sp, 4
+    ret
+
+# Word-Aligned Variables
+    .org            0x00001000
+
+buffer:
+    .skip           40
+counter:
+    .word           0
+
+# Global Pointer
+_gp:
+
+# Random Variables
+
+flag:
+    .skip           1
+name:
+    .asciz          "gp\n"
+after:
+    .skip           8
+big:
+    .skip           100000
+
+# End of Assembly Source
+    .end
\ No newline at end of file
@@ -8,7 +8,6 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    mov             r3, r3
     # This is a comment
 _end:
     br              _end
@@ -8,16 +8,10 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    movi            r2, 1
     # This is true
-    beq             r2, r0, main_if1
-    movi            r2, 2
     # This is also true
-    ble             r2, r0, main_if2
     movi            r2, 3
-main_if2:
     movi            r3, 1
-main_if1:
     movi            r4, 2
 _end:
     br              _end
@@ -16,7 +16,7 @@ _start:
     # move immediate address
     movia           r5, Y
     # move immediate address
-    movia           r6, X
+    movi            r6, X
 _end:
     br              _end
 
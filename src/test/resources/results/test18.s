@@ -8,10 +8,7 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    movi            r2, 0
-    call            EarlyReturn
-    addi            r2, r2, 1
-    call            EarlyReturn
+    movi            r2, -1
 _end:
     br              _end
 
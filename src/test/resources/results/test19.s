@@ -8,8 +8,7 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    call            DoStuff
-    call            DogSrock
+    movi            r2, 1234
 _end:
     br              _end
 
@@ -21,18 +20,9 @@ ds_ret:
 
 # ========== DogSrock ==========
 DogSrock:
-    subi            sp, sp, 4
-    stw             r10, 0(sp)
-
-    movi            r10, 1234
-    ble             r10, r0, ds1_if1
-    mov             r2, r10
+    movi            r2, 1234
     br              ds1_ret
-ds1_if1:
 ds1_ret:
-
-    ldw             r10, 0(sp)
-    addi            sp, sp, 4
     ret
 
 # End of Assembly Source
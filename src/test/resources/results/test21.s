@@ -16,17 +16,16 @@ _end:
 
 # ========== SelectionSort ==========
 SelectionSort:
-    subi            sp, sp, 40
-    stw             r10, 36(sp)
-    stw             r11, 32(sp)
-    stw             r16, 28(sp)
-    stw             r3, 24(sp)
-    stw             r4, 20(sp)
-    stw             r5, 16(sp)
-    stw             r6, 12(sp)
-    stw             r7, 8(sp)
-    stw             r8, 4(sp)
-    stw             r9, 0(sp)
+    subi            sp, sp, 36
+    stw             r10, 32(sp)
+    stw             r11, 28(sp)
+    stw             r16, 24(sp)
+    stw             r3, 20(sp)
+    stw             r4, 16(sp)
+    stw             r5, 12(sp)
+    stw             r6, 8(sp)
+    stw             r7, 4(sp)
+    stw             r8, 0(sp)
 
     # r2 = list pointer
     # r3 = size of list
@@ -38,9 +37,9 @@ ss_while1:
     # r4 = local list pointer
     mov             r4, r2
     # r5 = pointer to the max element
-    mov             r5, r4
+    mov             r5, r2
     # r6 = the max element (starts at the first element)
-    ldw             r6, 0(r4)
+    ldw             r6, 0(r2)
     # counter for loop iteration
     movi            r7, 0
 ss_while2:
@@ -58,31 +57,29 @@ ss_if1:
     # swap the two values (index size-1 and address r5)
     # r8 = memory address of size-1 index
     subi            r8, r3, 1
-    muli            r8, r8, 4
+    slli            r8, r8, 2
     add             r8, r8, r2
     # r9 = memory address of r5
-    mov             r9, r5
     # load values into r10, r11
     ldw             r10, 0(r8)
-    ldw             r11, 0(r9)
+    ldw             r11, 0(r5)
     # save values in opposite order
     stw             r11, 0(r8)
-    stw             r10, 0(r9)
+    stw             r10, 0(r5)
     # decrement the size register and sort again
     subi            r3, r3, 1
     bgt             r3, r16, ss_while1
 
-    ldw             r10, 36(sp)
-    ldw             r11, 32(sp)
-    ldw             r16, 28(sp)
-    ldw             r3, 24(sp)
-    ldw             r4, 20(sp)
-    ldw             r5, 16(sp)
-    ldw             r6, 12(sp)
-    ldw             r7, 8(sp)
-    ldw             r8, 4(sp)
-    ldw             r9, 0(sp)
-    addi            sp, sp, 40
+    ldw             r10, 32(sp)
+    ldw             r11, 28(sp)
+    ldw             r16, 24(sp)
+    ldw             r3, 20(sp)
+    ldw             r4, 16(sp)
+    ldw             r5, 12(sp)
+    ldw             r6, 8(sp)
+    ldw             r7, 4(sp)
+    ldw             r8, 0(sp)
+    addi            sp, sp, 36
     ret
 
 # Word-Aligned Variables
@@ -8,41 +8,11 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    call            TestCompareStatements
 _end:
     br              _end
 
 # ========== TestCompareStatements ==========
 TestCompareStatements:
-    subi            sp, sp, 32
-    stw             r10, 28(sp)
-    stw             r3, 24(sp)
-    stw             r4, 20(sp)
-    stw             r5, 16(sp)
-    stw             r6, 12(sp)
-    stw             r7, 8(sp)
-    stw             r8, 4(sp)
-    stw             r9, 0(sp)
-
-    movi            r3, 2
-    movi            r4, 3
-    cmpgti          r5, r2, 2
-    cmplei          r6, r2, 3
-    cmpleu          r7, r3, r4
-    cmpgtu          r8, r4, r3
-    cmpeq           r8, r3, r4
-    cmpne           r9, r2, r4
-    cmpltu          r10, r2, r3
-
-    ldw             r10, 28(sp)
-    ldw             r3, 24(sp)
-    ldw             r4, 20(sp)
-    ldw             r5, 16(sp)
-    ldw             r6, 12(sp)
-    ldw             r7, 8(sp)
-    ldw             r8, 4(sp)
-    ldw             r9, 0(sp)
-    addi            sp, sp, 32
     ret
 
 # End of Assembly Source
@@ -12,7 +12,11 @@ _start:
     beq             r2, r3, main_if1a
     beq             r4, r5, main_if1
 main_if1a:
-    call            TestLoops
+    bge             r0, r1, main_while2
+    blt             r1, r2, main_if1a
+main_while2:
+    bgt             r3, r4, main_else1
+    ble             r4, r5, main_if1a
     br              main_else1
 main_if1:
     call            TestLoops2
@@ -22,41 +26,31 @@ _end:
 
 # ========== TestLoops ==========
 TestLoops:
-    subi            sp, sp, 4
-    stw             r0, 0(sp)
-
-tl_while1:
-    mov             r0, r0
-    bge             r0, r1, tl_while1a
-    blt             r1, r2, tl_while1
 tl_while1a:
-    bgt             r3, r4, tl_while1b
-    ble             r4, r5, tl_while1
+    bge             r0, r1, tl_while1b
+    blt             r1, r2, tl_while1a
 tl_while1b:
-
-    ldw             r0, 0(sp)
-    addi            sp, sp, 4
+    bgt             r3, r4, tl_while1
+    ble             r4, r5, tl_while1a
+tl_while1:
     ret
 
 # ========== TestLoops2 ==========
 TestLoops2:
-    subi            sp, sp, 12
-    stw             r0, 8(sp)
+    subi            sp, sp, 8
     stw             r3, 4(sp)
     stw             r4, 0(sp)
 
     movi            r3, '0'
     movi            r4, '9'
-tl1_while1:
-    mov             r0, r0
-    bge             r2, r3, tl1_while1a
-    bgt             r2, r4, tl1_while1
 tl1_while1a:
+    bge             r2, r3, tl1_while1
+    bgt             r2, r4, tl1_while1a
+tl1_while1:
 
-    ldw             r0, 8(sp)
     ldw             r3, 4(sp)
     ldw             r4, 0(sp)
-    addi            sp, sp, 12
+    addi            sp, sp, 8
     ret
 
 # End of Assembly Source
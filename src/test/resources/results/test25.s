@@ -8,15 +8,7 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    movi            r3, -234
-    muli            r3, r3, -1
-    addi            r3, r2, -14
 main_while1:
-    movi            r3, 1
-    ble             r0, r1, main_if1
-    movi            r2, 1
-main_if1:
-    movi            r1, 1
     br              main_while1
 _end:
     br              _end
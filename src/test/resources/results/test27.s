@@ -8,10 +8,6 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    movi            r2, 'A'
-    movi            r2, '['
-    movi            r2, ' '
-    movi            r2, '\n'
     movi            r2, '\0'
 _end:
     br              _end
@@ -9,8 +9,6 @@
 _start:
     movia           sp, LAST_RAM_WORD
     # various tests
-    subi            r1, r1, -234
-    addi            r1, r3, -124
     subi            r1, r2, 142
 _end:
     br              _end
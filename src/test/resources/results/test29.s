@@ -0,0 +1,36 @@
+# Generated by Assembly Auto-Compiler by Alex O'Neill
+# Setup
+    .equ            LAST_RAM_WORD, 0x007FFFFC
+    .global         _start
+    .org            0x00000000
+    .text
+
+# Entry point
+_start:
+    movia           sp, LAST_RAM_WORD
+    movi            r2, 0
+    movi            r3, 10
+    # pre-tested loop using an encompassing if
+main_while1:
+    addi            r2, r2, 1
+    blt             r2, r3, main_while1
+    # the same loop, using a guarded while
+    bge             r2, r3, main_while2
+main_while2a:
+    addi            r2, r2, 1
+    blt             r2, r3, main_while2a
+main_while2:
+    bge             r2, r3, main_while3
+    beq             r4, r0, main_while3
+main_while3a:
+    subi            r4, r4, 1
+    bge             r2, r3, main_while3
+    bne             r4, r0, main_while3a
+main_while3:
+    subi            r2, r2, 1
+    bge             r2, r3, main_while3
+_end:
+    br              _end
+
+# End of Assembly Source
+    .end
\ No newline at end of file
@@ -0,0 +1,26 @@
+# Generated by Assembly Auto-Compiler by Alex O'Neill
+# Setup
+    .equ            LAST_RAM_WORD, 0x007FFFFC
+    .global         _start
+    .org            0x00000000
+    .text
+
+# Entry point
+_start:
+    movia           sp, LAST_RAM_WORD
+    ldw             r4, x(r0)
+    movi            r5, -1
+    # unsigned compares with the largest unsigned value, which has no immediate form
+    cmpgtu          r3, r4, r5
+    cmpleu          r6, r4, r5
+_end:
+    br              _end
+
+# Word-Aligned Variables
+    .org            0x00001000
+
+x:
+    .word           5
+
+# End of Assembly Source
+    .end
\ No newline at end of file
@@ -0,0 +1,51 @@
+# Generated by Assembly Auto-Compiler by Alex O'Neill
+# Setup
+    .equ            LAST_RAM_WORD, 0x007FFFFC
+    .global         _start
+    .org            0x00000000
+    .text
+
+# Entry point
+_start:
+    movia           sp, LAST_RAM_WORD
+    movia           r2, list
+    call            Sum
+_end:
+    br              _end
+
+# ========== Sum ==========
+Sum:
+    subi            sp, sp, 16
+    stw             r3, 12(sp)
+    stw             r5, 8(sp)
+    stw             r6, 4(sp)
+    stw             r7, 0(sp)
+
+    # r2 = list pointer, and the sum
+    # r4 = counter, r5 = size of the list
+    movi            r3, 0
+    mov             r6, r2
+    addi            r5, r2, 80
+sum_while1:
+    # address of the element at the counter
+    ldw             r7, 0(r6)
+    addi            r6, r6, 4
+    add             r3, r3, r7
+    bne             r6, r5, sum_while1
+    mov             r2, r3
+
+    ldw             r3, 12(sp)
+    ldw             r5, 8(sp)
+    ldw             r6, 4(sp)
+    ldw             r7, 0(sp)
+    addi            sp, sp, 16
+    ret
+
+# Word-Aligned Variables
+    .org            0x00001000
+
+list:
+    .word           3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8, 9, 7, 9, 3, 2, 3, 8, 4
+
+# End of Assembly Source
+    .end
\ No newline at end of file
@@ -9,12 +9,12 @@
 _start:
     movia           sp, LAST_RAM_WORD
     ldw             r2, x(r0)
-    addi            r2, r2, 3
-    subi            r2, r2, 6
-    muli            r2, r2, 132
     ldw             r3, y(r0)
+    addi            r2, r2, 3
     add             r3, r3, r0
+    subi            r2, r2, 6
     subi            r3, r3, 234
+    muli            r2, r2, 132
     muli            r3, r3, 24
     div             r3, r3, r2
 _end:
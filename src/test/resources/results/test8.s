@@ -8,11 +8,11 @@
 # Entry point
 _start:
     movia           sp, LAST_RAM_WORD
-    movi            r3, 4
-    mov             r4, r3
     ldw             r5, x(r0)
+    movi            r3, 4
+    movi            r4, 4
     stw             r3, x(r0)
-    add             r5, r5, r3
+    addi            r5, r5, 4
 _end:
     br              _end
 
@@ -0,0 +1,18 @@
+# Generated by Assembly Auto-Compiler by Alex O'Neill
+# Setup
+    .equ            LAST_RAM_WORD, 0x007FFFFC
+    .global         _start
+    .org            0x00000000
+    .text
+
+# Entry point
+_start:
+    movia           sp, LAST_RAM_WORD
+    # three iterations, which are replaced entirely with -unroll4, and then fold to a constant
+    movi            r5, 0
+    movi            r9, 27
+_end:
+    br              _end
+
+# End of Assembly Source
+    .end
\ No newline at end of file
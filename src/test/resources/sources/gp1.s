@@ -0,0 +1,25 @@
+compile nios-ii de0
+
+int counter = 0
+int[10] buffer
+byte flag
+string name = "gp\n"
+var[100000] big
+var[8] after
+
+main:
+    r3 = counter
+    r3++
+    counter = r3
+    r4 = &buffer
+    r5 = flag
+    r6 = &name
+    r7 = &big
+    r8 = &after
+    call reset
+end
+
+void function reset:
+    r2 = 0
+    counter = r2
+end
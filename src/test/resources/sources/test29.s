@@ -0,0 +1,26 @@
+compile nios-ii de0
+
+main:
+    r2 = 0
+    r3 = 10
+
+    // pre-tested loop using an encompassing if
+    if r2 < r3:
+        while r2 < r3:
+            r2 ++
+        end
+    end
+
+    // the same loop, using a guarded while
+    guarded while r2 < r3:
+        r2 ++
+    end
+
+    guarded while r2 < r3 and r4 != r0:
+        r4 --
+    end
+
+    while not r2 < r3:
+        r2 --
+    end
+end
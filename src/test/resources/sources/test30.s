@@ -0,0 +1,12 @@
+compile nios-ii de0
+
+int x = 5
+
+main:
+    r4 = x
+    r5 = -1
+
+    // unsigned compares with the largest unsigned value, which has no immediate form
+    r3 = r4 ?> r5
+    r6 = r4 ?<= r5
+end
@@ -0,0 +1,27 @@
+compile nios-ii de0
+
+int list = 3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8, 9, 7, 9, 3, 2, 3, 8, 4
+
+main:
+    r2 = &list
+    call Sum
+end
+
+function Sum:
+
+    // r2 = list pointer, and the sum
+    // r4 = counter, r5 = size of the list
+    r3 = 0
+    r4 = 0
+    r5 = 20
+    while r4 < r5:
+
+        // address of the element at the counter
+        r6 = r4 * 4
+        r6 += r2
+        r7 = &r6
+        r3 += r7
+        r4 ++
+    end
+    r2 = r3
+end
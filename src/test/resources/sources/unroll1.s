@@ -0,0 +1,11 @@
+compile nios-ii de0
+
+main:
+    // three iterations, which are replaced entirely with -unroll4, and then fold to a constant
+    r5 = 3
+    r9 = 1
+    while r5 > r0:
+        r5 -= 1
+        r9 *= 3
+    end
+end